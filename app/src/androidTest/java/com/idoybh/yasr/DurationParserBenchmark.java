@@ -0,0 +1,90 @@
+package com.idoybh.yasr;
+
+import android.content.Context;
+import android.media.MediaFormat;
+import android.media.MediaMetadataRetriever;
+import android.media.MediaMuxer;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link DurationParser} against {@link MediaMetadataRetriever} on recordings made
+ * by our own writers, both must agree while the parser takes a fraction of the time
+ */
+@RunWith(AndroidJUnit4.class)
+public class DurationParserBenchmark {
+    private static final String TAG = "DurationParserBenchmark";
+    private static final int SECONDS = 10;
+    private static final int RUNS = 20;
+    private static final int PARSES = 10000;
+
+    @Test
+    public void parserVsRetriever() throws Exception {
+        final Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        final File dir = context.getCacheDir();
+        final File wav = new File(dir, "bench.wav");
+        final File m4a = new File(dir, "bench.m4a");
+        final File ogg = new File(dir, "bench.ogg");
+        write(new WavWriter(wav, 48000, 1, 16), 48000);
+        write(new EncoderSink(m4a, MediaFormat.MIMETYPE_AUDIO_AAC,
+                MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4, 48000, 1, 128000), 48000);
+        write(new EncoderSink(ogg, MediaFormat.MIMETYPE_AUDIO_OPUS,
+                MediaMuxer.OutputFormat.MUXER_OUTPUT_OGG, 48000, 1, 64000), 48000);
+        for (File file : new File[] { wav, m4a, ogg }) {
+            long parsed = 0, retrieved = 0;
+            long parserNs = Long.MAX_VALUE, retrieverNs = Long.MAX_VALUE;
+            for (int i = 0; i < RUNS; i++) {
+                long start = System.nanoTime();
+                parsed = DurationParser.parse(file);
+                parserNs = Math.min(parserNs, System.nanoTime() - start);
+                start = System.nanoTime();
+                try (MediaMetadataRetriever retriever = new MediaMetadataRetriever()) {
+                    retriever.setDataSource(file.getPath());
+                    //noinspection ConstantConditions
+                    retrieved = Long.parseLong(retriever.extractMetadata(
+                            MediaMetadataRetriever.METADATA_KEY_DURATION));
+                }
+                retrieverNs = Math.min(retrieverNs, System.nanoTime() - start);
+            }
+            // warm, the parser only reads a few bytes whatever the length
+            final long start = System.nanoTime();
+            for (int i = 0; i < PARSES; i++) DurationParser.parse(file);
+            final double averageUs = (System.nanoTime() - start) / 1e3 / PARSES;
+            Log.i(TAG, String.format(
+                    "%s: parser %.3fms (%.1fus warm), retriever %.3fms, %d / %d ms",
+                    file.getName(), parserNs / 1e6, averageUs, retrieverNs / 1e6,
+                    parsed, retrieved));
+            // encoder delay and frame padding make compressed durations differ slightly
+            assertEquals(file.getName(), retrieved, parsed, 100);
+            assertTrue(file.getName(), parserNs < retrieverNs);
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    private static void write(PcmSink sink, int sampleRate) throws Exception {
+        final ByteBuffer second = ByteBuffer.allocateDirect(sampleRate * 2)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        final ByteBuffer[] buffers = { second };
+        try (sink) {
+            for (int s = 0; s < SECONDS; s++) {
+                second.clear();
+                for (int i = 0; i < sampleRate; i++)
+                    second.putShort((short) (Math.sin(i * 0.05) * 8000));
+                second.flip();
+                sink.write(buffers, 0, 1);
+            }
+        }
+    }
+}
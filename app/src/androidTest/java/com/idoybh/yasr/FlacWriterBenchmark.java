@@ -0,0 +1,72 @@
+package com.idoybh.yasr;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * How much faster than real time {@link FlacWriter} encodes 48 kHz / 24 bit stereo on one core
+ */
+@RunWith(AndroidJUnit4.class)
+public class FlacWriterBenchmark {
+    private static final String TAG = "FlacWriterBenchmark";
+    private static final int RATE = 48000;
+    private static final int SECONDS = 20;
+    private static final int CHUNK = 4096;
+
+    @Test
+    public void throughput_48k24Stereo() throws Exception {
+        final File file = new File(InstrumentationRegistry.getInstrumentation()
+                .getTargetContext().getCacheDir(), "bench.flac");
+        final byte[] pcm = signal();
+        encode(pcm, file); // warm up
+        final long start = System.nanoTime();
+        encode(pcm, file);
+        final double elapsed = (System.nanoTime() - start) / 1e9;
+        Log.i(TAG, String.format("FLAC 48k/24/stereo: %.1fx real time, ratio %.2f",
+                SECONDS / elapsed, (double) file.length() / pcm.length));
+        assertTrue(file.length() < pcm.length);
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    /**
+     * A tone with a little noise, 24 bit stereo
+     */
+    private static byte[] signal() {
+        final Random random = new Random(42);
+        final ByteBuffer out = ByteBuffer.allocate(RATE * SECONDS * 2 * 3)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < RATE * SECONDS; i++) {
+            for (int ch = 0; ch < 2; ch++) {
+                final int sample = (int) ((0.3 * Math.sin(2 * Math.PI * (220 + ch * 3) * i / RATE)
+                        + random.nextGaussian() * 0.001) * 0x7FFFFF);
+                out.put((byte) sample).put((byte) (sample >> 8)).put((byte) (sample >> 16));
+            }
+        }
+        return out.array();
+    }
+
+    private static void encode(byte[] pcm, File file) throws Exception {
+        try (FlacWriter writer = new FlacWriter(file, RATE, 2, 24)) {
+            final ByteBuffer[] buffers = new ByteBuffer[1];
+            for (int pos = 0; pos < pcm.length; pos += CHUNK) {
+                final int len = Math.min(CHUNK, pcm.length - pos);
+                buffers[0] = ByteBuffer.allocateDirect(len).order(ByteOrder.LITTLE_ENDIAN);
+                buffers[0].put(pcm, pos, len).flip();
+                writer.write(buffers, 0, 1);
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.idoybh.yasr;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * A warm open of {@link LibraryIndex}, loading it and a lookup for every recording
+ */
+@RunWith(AndroidJUnit4.class)
+public class LibraryIndexBenchmark {
+    private static final String TAG = "LibraryIndexBenchmark";
+    private static final int RECORDINGS = 10000;
+
+    @Test
+    public void warmOpen10k() throws Exception {
+        final File file = new File(InstrumentationRegistry.getInstrumentation()
+                .getTargetContext().getCacheDir(), LibraryIndex.FILE_NAME);
+        final LibraryIndex index = new LibraryIndex(file);
+        final Set<String> names = new HashSet<>();
+        for (int i = 0; i < RECORDINGS; i++) {
+            final String name = "Recording 2023-01-01 " + i + ".m4a";
+            names.add(name);
+            index.put(name, i * 1000L, 1672531200000L + i, i * 10L);
+        }
+        index.save();
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < 10; run++) {
+            final long start = System.nanoTime();
+            final LibraryIndex warm = new LibraryIndex(file);
+            warm.load();
+            int hits = 0;
+            for (String name : names) {
+                final int i = Integer.parseInt(name.substring(21, name.length() - 4));
+                if (warm.get(name, i * 1000L, 1672531200000L + i) != null) hits++;
+            }
+            warm.retain(names);
+            best = Math.min(best, System.nanoTime() - start);
+            assertEquals(RECORDINGS, hits);
+        }
+        Log.i(TAG, String.format("Index warm open, 10k recordings: %.1fms, %d bytes",
+                best / 1e6, file.length()));
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+}
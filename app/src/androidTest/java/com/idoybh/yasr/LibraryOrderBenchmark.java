@@ -0,0 +1,70 @@
+package com.idoybh.yasr;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * The first sort of a {@link LibraryOrder} mode against showing it again and reversing it
+ */
+@RunWith(AndroidJUnit4.class)
+public class LibraryOrderBenchmark {
+    private static final String TAG = "LibraryOrderBenchmark";
+    private static final int RECORDINGS = 100000;
+    private static final int BY_SIZE = 0;
+    private static final int BY_NAME = 1;
+    private static final Collator COLLATOR = Collator.getInstance();
+
+    private static final class Item {
+        final CollationKey nameKey;
+        final long size;
+
+        Item(String name, long size) {
+            this.size = size;
+            nameKey = COLLATOR.getCollationKey(name);
+        }
+    }
+
+    @Test
+    public void sort100k() {
+        final Random random = new Random(2);
+        final List<Item> items = new ArrayList<>();
+        for (int i = 0; i < RECORDINGS; i++) {
+            items.add(new Item("Recording " + random.nextInt(1_000_000), random.nextInt(1 << 30)));
+        }
+        long first = Long.MAX_VALUE, again = Long.MAX_VALUE;
+        for (int run = 0; run < 5; run++) {
+            final LibraryOrder<Item> order = new LibraryOrder<>();
+            order.addLongMode(BY_SIZE, item -> item.size);
+            order.addMode(BY_NAME, item -> item.nameKey);
+            for (Item item : items) order.add(item);
+            long start = System.nanoTime();
+            sort(order, BY_SIZE);
+            sort(order, BY_NAME);
+            first = Math.min(first, System.nanoTime() - start);
+            start = System.nanoTime();
+            for (int i = 0; i < 10; i++) {
+                assertNotNull(order.get(i % 2 == 0 ? BY_SIZE : BY_NAME, i % 4 < 2));
+            }
+            again = Math.min(again, (System.nanoTime() - start) / 10);
+        }
+        Log.i(TAG, String.format("Sort 100k by size and name: first %.1fms, again or reversed %dns",
+                first / 1e6, again));
+    }
+
+    private static void sort(LibraryOrder<Item> order, int mode) {
+        final int version = order.getVersion();
+        assertTrue(order.put(mode, order.sort(mode, order.getItems()), version));
+    }
+}
@@ -0,0 +1,55 @@
+package com.idoybh.yasr;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Every keystroke of a query over 50k names in {@link LibrarySearch}, after the library
+ * changed so the first is a full scan, and a pasted query answered by the trigram index
+ */
+@RunWith(AndroidJUnit4.class)
+public class LibrarySearchBenchmark {
+    private static final String TAG = "LibrarySearchBenchmark";
+    private static final int RECORDINGS = 50000;
+
+    @Test
+    public void typing50k() {
+        final LibrarySearch<String> search = new LibrarySearch<>();
+        final List<String> order = new ArrayList<>();
+        for (int i = 0; i < RECORDINGS; i++) {
+            final String name = String.format("Recording 2023-%02d-%02d %s %05d",
+                    i % 12 + 1, i % 28 + 1, i % 3 == 0 ? "lecture" : "meeting", i);
+            order.add(name);
+            search.add(name, name);
+        }
+        final String query = "lecture 0001";
+        long worst = 0, pasted = 0;
+        for (int run = 0; run < 30; run++) {
+            final boolean measure = run >= 20; // warmed up
+            search.remove(order.get(0));
+            search.add(order.get(0), order.get(0));
+            for (int i = 1; i <= query.length(); i++) {
+                final long start = System.nanoTime();
+                final List<String> found = search.search(query.substring(0, i), order);
+                if (measure) worst = Math.max(worst, System.nanoTime() - start);
+                assertFalse(found.isEmpty());
+            }
+            search.remove(order.get(0));
+            search.add(order.get(0), order.get(0));
+            final long start = System.nanoTime();
+            assertEquals(1, search.search("lecture 00042", order).size());
+            if (measure) pasted = Math.max(pasted, System.nanoTime() - start);
+        }
+        Log.i(TAG, String.format("Search 50k: worst keystroke %.2fms, pasted query %.2fms",
+                worst / 1e6, pasted / 1e6));
+    }
+}
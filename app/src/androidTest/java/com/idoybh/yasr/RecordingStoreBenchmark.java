@@ -0,0 +1,77 @@
+package com.idoybh.yasr;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Heap per recording of {@link RecordingStore} against an object per recording
+ */
+@RunWith(AndroidJUnit4.class)
+public class RecordingStoreBenchmark {
+    private static final String TAG = "RecordingStoreBenchmark";
+    private static final String DIR = "/data/user/0/com.idoybh.yasr/files";
+
+    /**
+     * What an entry used to hold - its file, name, extension, mime type, modification time
+     * as a calendar and a boxed playback position
+     */
+    private record Legacy(File recording, String name, String ext, String mime, long size,
+                          long duration, Calendar lastModified, Long progress) {}
+
+    private static String name(int i) {
+        return String.format("Recording 2023-%02d-%02d %06d", i % 12 + 1, i % 28 + 1, i);
+    }
+
+    private static long usedHeap() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * At 10k and 100k synthetic entries, names included
+     */
+    @Test
+    public void heap() {
+        final int[] counts = { 10_000, 100_000 };
+        final List<String> names = new ArrayList<>();
+        for (int i = 0; i < counts[counts.length - 1]; i++) names.add(name(i));
+        for (int count : counts) {
+            long before = usedHeap();
+            final RecordingStore store = new RecordingStore();
+            for (int i = 0; i < count; i++) {
+                // each string made fresh as when read from the file system
+                store.add(null, new String(DIR), new String(names.get(i)), new String("m4a"),
+                        new String("audio/mp4"), i, i * 1000L, i);
+            }
+            final long storeBytes = usedHeap() - before;
+            assertEquals(count, store.getRows());
+            before = usedHeap();
+            final List<Legacy> entries = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                final Calendar calendar = Calendar.getInstance();
+                calendar.setTimeInMillis(i * 1000L);
+                final String fileName = names.get(i) + ".m4a";
+                entries.add(new Legacy(new File(DIR, fileName),
+                        fileName.substring(0, fileName.length() - 4), new String("m4a"),
+                        new String("audio/mp4"), i, i, calendar, (long) i + 1000));
+            }
+            final long legacyBytes = usedHeap() - before;
+            assertEquals(count, entries.size());
+            Log.i(TAG, String.format(
+                    "Heap %,d entries: store %.1f MB, %d B/entry, objects %d B/entry", count,
+                    storeBytes / 1e6, storeBytes / count, legacyBytes / count));
+        }
+    }
+}
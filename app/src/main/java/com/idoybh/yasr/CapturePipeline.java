@@ -0,0 +1,347 @@
+/*
+ * Copyright (C) 2023 Ido Ben-Hur
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.idoybh.yasr;
+
+import android.media.AudioRecord;
+import android.os.Process;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Producer / consumer capture pipeline.
+ * A dedicated reader thread only pulls PCM out of the {@link AudioRecord} into a {@link PcmRing}
+ * while a writer thread drains the ring to disk in batches,
+ * so storage stalls never delay the next read.
+ * While paused both threads are blocked and burn no CPU until resumed or stopped
+ */
+class CapturePipeline {
+    private static final long MAX_WAIT_NS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final int MAX_GATHER = 256; // stay well below IOV_MAX
+    private static final int STATE_IDLE = 0;
+    private static final int STATE_RUNNING = 1;
+    private static final int STATE_PAUSED = 2;
+    private static final int STATE_STOPPED = 3;
+
+    private final AudioRecord mRecorder;
+    private final PcmSink mWriter;
+    private final SampleClock mClock;
+    private final PcmRing mRing;
+    private final ByteBuffer mScratch;
+    private final ByteBuffer[] mGather;
+    private final int mBatch;
+    private final Listener mListener;
+    private long mLimitFrames = 0;
+    private long mLimitSize = 0;
+    private ByteBuffer mPreRoll;
+    private LevelMeter mMeter;
+    private final Thread mReaderThread = new Thread(this::readLoop, "CaptureReaderThread");
+    private final Thread mWriterThread = new Thread(this::writeLoop, "CaptureWriterThread");
+    private final ReentrantLock mStateLock = new ReentrantLock();
+    private final Condition mStateChanged = mStateLock.newCondition();
+    private volatile int mState = STATE_IDLE;
+    private volatile boolean mWriting = false;
+    private volatile boolean mWriterWaiting = false;
+    private volatile long mResumeRequestNs = 0;
+    private volatile long mMaxResumeLatencyNs = 0;
+
+    interface Listener {
+        /**
+         * Called on the writer thread once everything was written and the file was closed
+         * @param failed whether writing failed at some point
+         * @param limitReached whether the capture ended since the frame limit was reached
+         */
+        void onFinished(boolean failed, boolean limitReached);
+    }
+
+    /**
+     * @param recorder an initialized {@link AudioRecord}, started by the caller
+     * @param writer the sink to write to, closed by the pipeline when done
+     * @param clock advanced with every written frame
+     * @param chunkSize the size of a single read in bytes, should be a multiple of the frame size
+     * @param slots the number of chunks the ring can hold
+     * @param batch the number of chunks to wait for before waking the writer
+     * @param listener receives progress and completion callbacks
+     */
+    CapturePipeline(AudioRecord recorder, PcmSink writer, SampleClock clock,
+                    int chunkSize, int slots, int batch, Listener listener) {
+        mRecorder = recorder;
+        mWriter = writer;
+        mClock = clock;
+        mRing = new PcmRing(slots, chunkSize);
+        mScratch = ByteBuffer.allocateDirect(chunkSize);
+        mGather = new ByteBuffer[Math.min(mRing.getCapacity(), MAX_GATHER)];
+        mBatch = Math.max(1, Math.min(batch, mRing.getCapacity() / 2));
+        mListener = listener;
+    }
+
+    /**
+     * Must be called before {@link #start()}
+     * @param frames the exact number of frames to capture before stopping, 0 for unlimited
+     */
+    void setLimit(long frames) {
+        mLimitFrames = frames;
+    }
+
+    /**
+     * For sinks whose output size isn't a function of the frame count (encoders).
+     * Checked after every batch so it may be overshot by up to a batch.
+     * Must be called before {@link #start()}
+     * @param bytes the output size to stop at, 0 for unlimited
+     */
+    void setSizeLimit(long bytes) {
+        mLimitSize = bytes;
+    }
+
+    /**
+     * Audio captured before the recording started, written ahead of everything else
+     * and counted towards the limits. Must be called before {@link #start()}
+     * @param pcm whole frames in the capture's format
+     */
+    void setPreRoll(ByteBuffer pcm) {
+        mPreRoll = pcm;
+    }
+
+    /**
+     * Must be called before {@link #start()}
+     * @param meter measures every read on the reader thread, null disables
+     */
+    void setLevelMeter(LevelMeter meter) {
+        mMeter = meter;
+    }
+
+    void start() {
+        mState = STATE_RUNNING;
+        mWriting = true;
+        mWriterThread.start();
+        mReaderThread.start();
+    }
+
+    /**
+     * Stops the recorder and parks both threads until {@link #resume()} or {@link #stop()}
+     */
+    void pause() {
+        if (!setState(STATE_RUNNING, STATE_PAUSED)) return;
+        mRecorder.stop(); // unblocks a pending read
+    }
+
+    /**
+     * Restarts the same recorder and wakes the threads, reusing all buffers
+     */
+    void resume() {
+        if (mState != STATE_PAUSED) return;
+        mResumeRequestNs = System.nanoTime();
+        mRecorder.startRecording();
+        setState(STATE_PAUSED, STATE_RUNNING);
+    }
+
+    /**
+     * Stops the recorder, waits for the ring to be drained and the file to be closed.
+     * Must not be called from the listener callbacks
+     */
+    void stop() {
+        setState(-1, STATE_STOPPED);
+        mRecorder.stop(); // unblocks a pending read
+        join(mReaderThread);
+        mWriting = false;
+        LockSupport.unpark(mWriterThread);
+        join(mWriterThread);
+    }
+
+    int getRingCapacity() {
+        return mRing.getCapacity();
+    }
+
+    /**
+     * @return the highest number of chunks that were waiting to be written at once
+     */
+    int getMaxRingFill() {
+        return mRing.getMaxFill();
+    }
+
+    /**
+     * @return the number of chunks dropped since the writer couldn't keep up
+     */
+    long getOverruns() {
+        return mRing.getOverruns();
+    }
+
+    /**
+     * @return the longest a resume took until new audio was captured, in milliseconds
+     */
+    long getMaxResumeLatencyMs() {
+        return TimeUnit.NANOSECONDS.toMillis(mMaxResumeLatencyNs);
+    }
+
+    /**
+     * @param from the expected current state, -1 for any
+     * @param to the new state
+     * @return whether the state was changed
+     */
+    private boolean setState(int from, int to) {
+        mStateLock.lock();
+        try {
+            if (from != -1 && mState != from || mState == STATE_STOPPED) return false;
+            mState = to;
+            mStateChanged.signalAll();
+        } finally {
+            mStateLock.unlock();
+        }
+        LockSupport.unpark(mWriterThread);
+        return true;
+    }
+
+    private void awaitResume() {
+        mStateLock.lock();
+        try {
+            while (mState == STATE_PAUSED)
+                mStateChanged.awaitUninterruptibly();
+        } finally {
+            mStateLock.unlock();
+        }
+    }
+
+    private void readLoop() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+        while (true) {
+            final int state = mState;
+            if (state == STATE_STOPPED) break;
+            if (state == STATE_PAUSED) {
+                awaitResume();
+                continue;
+            }
+            ByteBuffer buffer = mRing.claim();
+            if (buffer == null) {
+                // the writer is behind, keep reading so the platform buffer won't overrun
+                mRing.overrun();
+                buffer = mScratch;
+                buffer.clear();
+            }
+            final int read = mRecorder.read(buffer, buffer.capacity());
+            if (read <= 0 || mState != STATE_RUNNING) continue;
+            if (mMeter != null) {
+                buffer.limit(read);
+                mMeter.measure(buffer);
+            }
+            if (buffer == mScratch) continue;
+            mRing.publish(read);
+            final long resumeRequest = mResumeRequestNs;
+            if (resumeRequest != 0) {
+                final long latency = System.nanoTime() - resumeRequest;
+                if (latency > mMaxResumeLatencyNs) mMaxResumeLatencyNs = latency;
+                mResumeRequestNs = 0;
+            }
+            if (mWriterWaiting && mRing.available() >= mBatch)
+                LockSupport.unpark(mWriterThread);
+        }
+    }
+
+    private void writeLoop() {
+        boolean failed = false;
+        boolean limitReached = false;
+        final int frameSize = mClock.getFrameSize();
+        try (mWriter) {
+            if (mPreRoll != null) limitReached = writePreRoll(frameSize);
+            while (!limitReached) {
+                int available = mRing.available();
+                if (available == 0 && mWriting && mState == STATE_PAUSED) {
+                    // nothing will arrive until resumed or stopped, both unpark us
+                    LockSupport.park(this);
+                    continue;
+                }
+                if (available < mBatch && mWriting) {
+                    mWriterWaiting = true;
+                    if (mRing.available() < mBatch && mWriting)
+                        LockSupport.parkNanos(this, MAX_WAIT_NS);
+                    mWriterWaiting = false;
+                    available = mRing.available();
+                }
+                if (available == 0) {
+                    if (!mWriting) break;
+                    continue;
+                }
+                for (int done = 0; done < available && !limitReached; ) {
+                    int count = Math.min(available - done, mGather.length);
+                    long bytes = 0;
+                    for (int i = 0; i < count; i++) {
+                        final ByteBuffer buffer = mRing.peek(done + i);
+                        mGather[i] = buffer;
+                        bytes += buffer.remaining();
+                        if (mLimitFrames <= 0) continue;
+                        final long left = (mLimitFrames - mClock.getFrames()) * frameSize - bytes;
+                        if (left > 0) continue;
+                        // cut the recording at the exact frame
+                        buffer.limit(buffer.limit() + (int) left);
+                        bytes += left;
+                        count = i + 1;
+                        limitReached = true;
+                    }
+                    mWriter.write(mGather, 0, count);
+                    mClock.advance(bytes / frameSize);
+                    done += count;
+                    if (mLimitSize > 0 && mWriter.getSize() >= mLimitSize)
+                        limitReached = true;
+                }
+                mRing.release(available);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            failed = true;
+        }
+        setState(-1, STATE_STOPPED); // the reader will wind down on its next read
+        mWriting = false;
+        mListener.onFinished(failed, limitReached);
+    }
+
+    /**
+     * @return whether a limit was reached
+     */
+    private boolean writePreRoll(int frameSize) throws IOException {
+        final ByteBuffer pcm = mPreRoll;
+        mPreRoll = null;
+        boolean limitReached = false;
+        if (mLimitFrames > 0 && pcm.remaining() >= mLimitFrames * frameSize) {
+            // the newest audio is the closest to what the user meant to record
+            pcm.position(pcm.limit() - (int) (mLimitFrames * frameSize));
+            limitReached = true;
+        }
+        // in chunks, as sinks expect no more than a single read at once
+        final int end = pcm.limit();
+        for (int pos = pcm.position(); pos < end; ) {
+            final int next = Math.min(end, pos + mScratch.capacity());
+            pcm.limit(next);
+            pcm.position(pos);
+            mGather[0] = pcm;
+            mWriter.write(mGather, 0, 1);
+            mClock.advance((next - pos) / frameSize);
+            pos = next;
+        }
+        return limitReached || mLimitSize > 0 && mWriter.getSize() >= mLimitSize;
+    }
+
+    private static void join(Thread thread) {
+        if (thread == Thread.currentThread()) return;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+}
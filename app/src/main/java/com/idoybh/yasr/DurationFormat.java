@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2023 Ido Ben-Hur
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.idoybh.yasr;
+
+/**
+ * Formats durations as "MM:SS" or "HH:MM:SS" into a caller owned buffer, without allocating
+ */
+final class DurationFormat {
+    /**
+     * The longest text a single duration is formatted to
+     */
+    static final int MAX_LENGTH = 9; // HHH:MM:SS
+    private static final long MAX_SECONDS = 999 * 3600 + 59 * 60 + 59;
+
+    private DurationFormat() {
+    }
+
+    /**
+     * @param seconds the duration to format, capped at 999:59:59
+     * @param dst the buffer to write to
+     * @param offset the index to start writing at
+     * @return the index after the last written char
+     */
+    static int format(long seconds, char[] dst, int offset) {
+        seconds = Math.min(seconds, MAX_SECONDS);
+        final long hours = seconds / 3600;
+        if (hours > 0) {
+            if (hours >= 100) dst[offset++] = (char) ('0' + hours / 100);
+            offset = twoDigits(hours % 100, dst, offset);
+            dst[offset++] = ':';
+        }
+        offset = twoDigits(seconds / 60 % 60, dst, offset);
+        dst[offset++] = ':';
+        return twoDigits(seconds % 60, dst, offset);
+    }
+
+    private static int twoDigits(long value, char[] dst, int offset) {
+        dst[offset++] = (char) ('0' + value / 10);
+        dst[offset++] = (char) ('0' + value % 10);
+        return offset;
+    }
+}
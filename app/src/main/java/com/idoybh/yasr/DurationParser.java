@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2023 Ido Ben-Hur
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.idoybh.yasr;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Finds the duration of the formats we record straight from their headers,
+ * with a few small positioned reads instead of a full media probe:
+ * WAV / RF64 by data size and format, FLAC by STREAMINFO's sample count,
+ * Ogg Opus / Vorbis by the last page's granule position and MP4 by its mvhd / mdhd boxes.
+ * The format is told by the file's magic, not its name
+ */
+final class DurationParser {
+    static final long UNKNOWN = -1;
+    private static final int OGG_MAX_PAGE = 27 + 255 + 255 * 255;
+    private static final int OPUS_RATE = 48000; // Opus granules are always at 48 kHz
+    private static final int MAX_BOXES = 256; // don't walk garbage forever
+
+    private DurationParser() {}
+
+    /**
+     * @return the duration in milliseconds, {@link #UNKNOWN} if the format isn't supported
+     */
+    static long parse(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return parse(channel);
+        } catch (IOException e) {
+            return UNKNOWN;
+        }
+    }
+
+    /**
+     * @param channel the file to parse, its position is left untouched
+     * @return the duration in milliseconds, {@link #UNKNOWN} if the format isn't supported
+     * @throws IOException if reading failed or the file is broken
+     */
+    static long parse(FileChannel channel) throws IOException {
+        final ByteBuffer magic = read(channel, 0, 12, ByteOrder.BIG_ENDIAN);
+        if (magic.remaining() < 12) return UNKNOWN;
+        final int first = magic.getInt(0);
+        if (first == 0x52494646 /* RIFF */ || first == 0x52463634 /* RF64 */)
+            return WavFormat.read(channel).getDurationMs();
+        if (first == 0x664C6143 /* fLaC */) return parseFlac(channel);
+        if (first == 0x4F676753 /* OggS */) return parseOgg(channel);
+        if (magic.getInt(4) == 0x66747970 /* ftyp */) return parseMp4(channel);
+        return UNKNOWN;
+    }
+
+    private static long parseFlac(FileChannel channel) throws IOException {
+        // STREAMINFO always comes first
+        final ByteBuffer info = read(channel, 4, 4 + 18, ByteOrder.BIG_ENDIAN);
+        if (info.remaining() < 22 || (info.get(0) & 0x7F) != 0) return UNKNOWN;
+        final long bits = info.getLong(4 + 10); // rate:20, channels:3, bps:5, samples:36
+        final int sampleRate = (int) (bits >>> 44);
+        final long samples = bits & 0xFFFFFFFFFL;
+        if (sampleRate == 0 || samples == 0) return UNKNOWN;
+        return samples * 1000 / sampleRate;
+    }
+
+    private static long parseOgg(FileChannel channel) throws IOException {
+        // the first page holds the codec's identification header alone
+        final ByteBuffer head = read(channel, 0, 27 + 255 + 30, ByteOrder.LITTLE_ENDIAN);
+        if (head.remaining() < 28) return UNKNOWN;
+        final int packet = 27 + (head.get(26) & 0xFF);
+        final int sampleRate;
+        long preSkip = 0;
+        if (matches(head, packet, "OpusHead") && head.limit() >= packet + 12) {
+            sampleRate = OPUS_RATE;
+            preSkip = head.getShort(packet + 10) & 0xFFFF;
+        } else if (matches(head, packet, "\u0001vorbis") && head.limit() >= packet + 16) {
+            sampleRate = head.getInt(packet + 12);
+        } else {
+            return UNKNOWN;
+        }
+        if (sampleRate <= 0) return UNKNOWN;
+        // the last page is within a page's size of the end
+        final long size = channel.size();
+        final long tailStart = Math.max(0, size - OGG_MAX_PAGE);
+        final ByteBuffer tail = read(channel, tailStart, (int) (size - tailStart),
+                ByteOrder.LITTLE_ENDIAN);
+        for (int pos = tail.limit() - 27; pos >= 0; pos--) {
+            if (tail.get(pos) != 'O' || !matches(tail, pos, "OggS") || tail.get(pos + 4) != 0)
+                continue;
+            final long granule = tail.getLong(pos + 6);
+            if (granule == -1) continue; // no packet ends on this page
+            return Math.max(0, granule - preSkip) * 1000 / sampleRate;
+        }
+        return UNKNOWN;
+    }
+
+    private static long parseMp4(FileChannel channel) throws IOException {
+        final long moov = findBox(channel, 0, channel.size(), "moov");
+        if (moov < 0) return UNKNOWN;
+        final long moovEnd = moov + boxSize(channel, moov);
+        final long mvhd = findBox(channel, moov + 8, moovEnd, "mvhd");
+        if (mvhd >= 0) {
+            final long duration = parseHeaderBox(channel, mvhd);
+            if (duration > 0) return duration;
+        }
+        // no movie duration, take the first track's
+        for (long trak = findBox(channel, moov + 8, moovEnd, "trak"); trak >= 0; ) {
+            final long trakEnd = trak + boxSize(channel, trak);
+            final long mdia = findBox(channel, trak + 8, trakEnd, "mdia");
+            final long mdhd = mdia < 0 ? -1
+                    : findBox(channel, mdia + 8, mdia + boxSize(channel, mdia), "mdhd");
+            if (mdhd >= 0) {
+                final long duration = parseHeaderBox(channel, mdhd);
+                if (duration > 0) return duration;
+            }
+            trak = findBox(channel, trakEnd, moovEnd, "trak");
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * mvhd and mdhd start alike: version, flags, times, then the timescale and duration
+     */
+    private static long parseHeaderBox(FileChannel channel, long box) throws IOException {
+        final ByteBuffer header = read(channel, box + 8, 32, ByteOrder.BIG_ENDIAN);
+        if (header.remaining() < 20) return UNKNOWN;
+        final long timescale;
+        final long duration;
+        if (header.get(0) == 1) {
+            if (header.remaining() < 32) return UNKNOWN;
+            timescale = header.getInt(20) & 0xFFFFFFFFL;
+            duration = header.getLong(24);
+        } else {
+            timescale = header.getInt(12) & 0xFFFFFFFFL;
+            duration = header.getInt(16) & 0xFFFFFFFFL;
+        }
+        if (timescale == 0 || duration <= 0 || duration == 0xFFFFFFFFL) return UNKNOWN;
+        return duration * 1000 / timescale;
+    }
+
+    /**
+     * @return the offset of the first box of that type between the offsets, -1 if none
+     */
+    private static long findBox(FileChannel channel, long from, long to, String type)
+            throws IOException {
+        long pos = from;
+        for (int i = 0; i < MAX_BOXES && pos + 8 <= to; i++) {
+            final ByteBuffer header = read(channel, pos, 8, ByteOrder.BIG_ENDIAN);
+            if (header.remaining() < 8) return -1;
+            if (matches(header, 4, type)) return pos;
+            final long size = boxSize(channel, pos);
+            if (size < 8) return -1;
+            pos += size;
+        }
+        return -1;
+    }
+
+    private static long boxSize(FileChannel channel, long box) throws IOException {
+        final ByteBuffer header = read(channel, box, 16, ByteOrder.BIG_ENDIAN);
+        final long size = header.getInt(0) & 0xFFFFFFFFL;
+        if (size == 1 && header.remaining() == 16) return header.getLong(8); // 64 bit size
+        if (size == 0) return channel.size() - box; // up to the end
+        return size;
+    }
+
+    private static boolean matches(ByteBuffer buffer, int pos, String tag) {
+        if (pos + tag.length() > buffer.limit()) return false;
+        for (int i = 0; i < tag.length(); i++) {
+            if (buffer.get(pos + i) != (byte) tag.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return up to count bytes from pos, fewer at the end of the file
+     */
+    private static ByteBuffer read(FileChannel channel, long pos, int count, ByteOrder order)
+            throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(count).order(order);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, pos + buffer.position()) < 0) break;
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2023 Ido Ben-Hur
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.idoybh.yasr;
+
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Range;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Feeds 16 bit PCM to an asynchronous {@link MediaCodec} encoder and muxes its output.
+ * Input buffers are filled on the pipeline's writer thread,
+ * encoded output is muxed on a dedicated callback thread.
+ * Presentation times are derived from the number of frames fed, so pauses leave no gaps
+ */
+class EncoderSink implements PcmSink {
+    private static final long TIMEOUT_SEC = 5;
+    private static final int FRAME_SIZE_PER_CHANNEL = 2; // 16 bit
+
+    private final MediaCodec mCodec;
+    private final MediaMuxer mMuxer;
+    private final HandlerThread mCallbackThread = new HandlerThread("EncoderCallbackThread");
+    private final BlockingQueue<Integer> mFreeInputs = new LinkedBlockingQueue<>();
+    private final CountDownLatch mDone = new CountDownLatch(1);
+    private final int mSampleRate;
+    private final int mFrameSize;
+    private int mInputIndex = -1;
+    private ByteBuffer mInput;
+    private long mInputFrame = 0; // first frame in the current input buffer
+    private long mFrames = 0;
+    private volatile int mTrack = -1;
+    private volatile long mSize = 0;
+    private volatile Exception mError;
+
+    /**
+     * Creates and starts the encoder, the file is created (or truncated) right away
+     * @param file the file to mux into
+     * @param mime the encoder type, see {@link MediaFormat#MIMETYPE_AUDIO_AAC}
+     * @param container the output format, see {@link MediaMuxer.OutputFormat}
+     * @param sampleRate the requested sampling rate, see {@link #getSampleRate()}
+     * @param channels the number of interleaved channels
+     * @param bitRate the requested bit rate, clamped to what the encoder supports
+     * @throws IOException if the encoder or the file can't be created
+     */
+    EncoderSink(File file, String mime, int container, int sampleRate, int channels,
+                int bitRate) throws IOException {
+        mCodec = MediaCodec.createEncoderByType(mime);
+        final MediaCodecInfo.AudioCapabilities caps = mCodec.getCodecInfo()
+                .getCapabilitiesForType(mime).getAudioCapabilities();
+        mSampleRate = pickSampleRate(caps, sampleRate);
+        mFrameSize = channels * FRAME_SIZE_PER_CHANNEL;
+        MediaFormat format = MediaFormat.createAudioFormat(mime, mSampleRate, channels);
+        format.setInteger(MediaFormat.KEY_BIT_RATE, caps.getBitrateRange().clamp(bitRate));
+        if (MediaFormat.MIMETYPE_AUDIO_AAC.equals(mime)) {
+            format.setInteger(MediaFormat.KEY_AAC_PROFILE,
+                    MediaCodecInfo.CodecProfileLevel.AACObjectLC);
+        }
+        try {
+            mMuxer = new MediaMuxer(file.getAbsolutePath(), container);
+        } catch (IOException e) {
+            mCodec.release();
+            throw e;
+        }
+        mCallbackThread.start();
+        mCodec.setCallback(mCallback, new Handler(mCallbackThread.getLooper()));
+        try {
+            mCodec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+            mCodec.start();
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            release();
+            throw new IOException("Failed configuring " + mime + " encoder", e);
+        }
+    }
+
+    /**
+     * @return the sampling rate the encoder was configured with, PCM must be captured at it
+     */
+    int getSampleRate() {
+        return mSampleRate;
+    }
+
+    @Override
+    public void write(ByteBuffer[] buffers, int offset, int length) throws IOException {
+        for (int i = offset; i < offset + length; i++) {
+            final ByteBuffer buffer = buffers[i];
+            while (buffer.hasRemaining()) {
+                if (mInput == null) dequeueInput();
+                int count = Math.min(mInput.remaining(), buffer.remaining());
+                count -= count % mFrameSize;
+                if (count > 0) {
+                    final ByteBuffer part = buffer.duplicate();
+                    part.limit(part.position() + count);
+                    mInput.put(part);
+                    buffer.position(buffer.position() + count);
+                    mFrames += count / mFrameSize;
+                }
+                if (mInput.remaining() < mFrameSize) queueInput(0);
+            }
+        }
+    }
+
+    /**
+     * @return the number of encoded bytes muxed so far, excluding the container's overhead
+     */
+    @Override
+    public long getSize() {
+        return mSize;
+    }
+
+    /**
+     * Drains the encoder, finalizes the container and releases everything
+     * @throws IOException if encoding failed at any point
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (mError == null) {
+                if (mInput == null) dequeueInput();
+                queueInput(MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                if (!mDone.await(TIMEOUT_SEC, TimeUnit.SECONDS))
+                    throw new IOException("Encoder didn't finish in time");
+            }
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        } finally {
+            release();
+        }
+        if (mError != null) throw new IOException(mError);
+    }
+
+    private void dequeueInput() throws IOException {
+        final Integer index;
+        try {
+            index = mFreeInputs.poll(TIMEOUT_SEC, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+        if (mError != null) throw new IOException(mError);
+        if (index == null) throw new IOException("Encoder stalled");
+        mInputIndex = index;
+        mInput = mCodec.getInputBuffer(index);
+        if (mInput == null) throw new IOException("No encoder input buffer " + index);
+        mInput.clear();
+        mInputFrame = mFrames;
+    }
+
+    private void queueInput(int flags) {
+        final long timeUs = mInputFrame * 1000000L / mSampleRate;
+        mCodec.queueInputBuffer(mInputIndex, 0, mInput.position(), timeUs, flags);
+        mInputIndex = -1;
+        mInput = null;
+    }
+
+    private void release() {
+        try {
+            mCodec.stop();
+        } catch (IllegalStateException ignored) {
+            // never started or already failed
+        }
+        mCodec.release();
+        try {
+            if (mTrack != -1) mMuxer.stop();
+        } catch (IllegalStateException e) {
+            // nothing was written
+            e.printStackTrace();
+        }
+        mMuxer.release();
+        mCallbackThread.quitSafely();
+    }
+
+    private static int pickSampleRate(MediaCodecInfo.AudioCapabilities caps, int rate) {
+        if (caps.isSampleRateSupported(rate)) return rate;
+        final int[] rates = caps.getSupportedSampleRates();
+        if (rates == null || rates.length == 0) {
+            final Range<Integer>[] ranges = caps.getSupportedSampleRateRanges();
+            return ranges[ranges.length - 1].clamp(rate);
+        }
+        // the closest rate above to not lose any spectrum, or the highest
+        for (int supported : rates)
+            if (supported >= rate) return supported;
+        return rates[rates.length - 1];
+    }
+
+    private final MediaCodec.Callback mCallback = new MediaCodec.Callback() {
+        @Override
+        public void onInputBufferAvailable(@NonNull MediaCodec codec, int index) {
+            mFreeInputs.add(index);
+        }
+
+        @Override
+        public void onOutputBufferAvailable(@NonNull MediaCodec codec, int index,
+                                            @NonNull MediaCodec.BufferInfo info) {
+            try {
+                final ByteBuffer output = codec.getOutputBuffer(index);
+                // codec config is already a part of the track format
+                if (output != null && info.size > 0 && mTrack != -1
+                        && (info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) == 0) {
+                    mMuxer.writeSampleData(mTrack, output, info);
+                    //noinspection NonAtomicOperationOnVolatileField single writer
+                    mSize += info.size;
+                }
+                codec.releaseOutputBuffer(index, false);
+            } catch (IllegalStateException | IllegalArgumentException e) {
+                onError(e);
+                return;
+            }
+            if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0)
+                mDone.countDown();
+        }
+
+        @Override
+        public void onError(@NonNull MediaCodec codec, @NonNull MediaCodec.CodecException e) {
+            onError(e);
+        }
+
+        @Override
+        public void onOutputFormatChanged(@NonNull MediaCodec codec,
+                                          @NonNull MediaFormat format) {
+            if (mTrack != -1) return;
+            mTrack = mMuxer.addTrack(format);
+            mMuxer.start();
+        }
+
+        private void onError(Exception e) {
+            e.printStackTrace();
+            mError = e;
+            mFreeInputs.add(-1); // wake a waiting writer
+            mDone.countDown();
+        }
+    };
+}
@@ -20,17 +20,14 @@ import android.animation.AnimatorListenerAdapter;
 import android.animation.AnimatorSet;
 import android.animation.ObjectAnimator;
 import android.animation.ValueAnimator;
-import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.SharedPreferences;
-import android.media.MediaMetadataRetriever;
 import android.media.MediaPlayer;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
-import android.os.HandlerThread;
 import android.os.Looper;
 import android.os.ParcelFileDescriptor;
 import android.text.Editable;
@@ -41,9 +38,9 @@ import android.view.ViewGroup;
 import android.view.animation.AnticipateInterpolator;
 import android.view.animation.OvershootInterpolator;
 import android.view.inputmethod.EditorInfo;
-import android.webkit.MimeTypeMap;
 import android.widget.ArrayAdapter;
 import android.widget.ImageButton;
+import android.widget.ImageView;
 import android.widget.ListView;
 import android.widget.TextView;
 
@@ -52,10 +49,15 @@ import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.MainThread;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.core.content.FileProvider;
 import androidx.fragment.app.Fragment;
 import androidx.navigation.fragment.NavHostFragment;
 import androidx.preference.PreferenceManager;
+import androidx.recyclerview.widget.AdapterListUpdateCallback;
+import androidx.recyclerview.widget.AsyncDifferConfig;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
@@ -73,9 +75,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
@@ -103,6 +103,8 @@ public class FirstFragment extends Fragment {
     private FragmentFirstBinding binding;
     private LinearProgressIndicator mProgressIndicator;
     private RecyclerAdapter mAdapter;
+    private WaveformThumbnails mThumbnails;
+    private RecordingLibrary mLibrary;
     private List<FloatingActionButton> mMultiSelectFabs;
     private int mSortSelection = ListView.INVALID_POSITION;
     private boolean mRememberSort = true;
@@ -131,6 +133,8 @@ public class FirstFragment extends Fragment {
         requireActivity().getOnBackPressedDispatcher().addCallback(onBackCallback);
 
         mProgressIndicator = requireActivity().requireViewById(R.id.progressIndicator);
+        mThumbnails = new WaveformThumbnails(
+                getResources().getDimensionPixelSize(R.dimen.waveform_thumb_height));
 
         mMultiSelectFabs = new ArrayList<>(List.of(
                 binding.fabSelection,
@@ -202,7 +206,7 @@ public class FirstFragment extends Fragment {
             mSavingQueue.addAll(mAdapter.getSelectedRecordings());
             final RecordingData first = mSavingQueue.peek();
             if (first == null) return;
-            mResultLauncher.launch(first.name + "." + first.ext);
+            mResultLauncher.launch(first.getFileName());
         });
         binding.fabShare.setOnClickListener(v -> {
             ArrayList<Uri> uris = new ArrayList<>();
@@ -210,7 +214,7 @@ public class FirstFragment extends Fragment {
                 Uri fileUri = null;
                 try {
                     fileUri = FileProvider.getUriForFile(requireActivity(),
-                            "com.idoybh.yasr.fileprovider", data.recording);
+                            "com.idoybh.yasr.fileprovider", data.getFile());
                 } catch (IllegalArgumentException e) {
                     e.printStackTrace();
                 }
@@ -221,12 +225,12 @@ public class FirstFragment extends Fragment {
             Intent shareIntent = new Intent();
             shareIntent.setAction(Intent.ACTION_SEND_MULTIPLE);
             shareIntent.putParcelableArrayListExtra(Intent.EXTRA_STREAM, uris);
-            shareIntent.setType(data.mime);
+            shareIntent.setType(data.getMime());
             startActivity(Intent.createChooser(shareIntent, null));
         });
         binding.fabDelete.setOnClickListener(v -> displayAreYouSureDialog((dialog, which) -> {
-            for (RecordingData data : mAdapter.getSelectedRecordings())
-                mAdapter.removeRecording(data);
+            for (RecordingData data : new ArrayList<>(mAdapter.getSelectedRecordings()))
+                mLibrary.delete(data);
             animateMultiFab(false);
         }, mAdapter.getSelectedRecordings().size()));
         binding.fab.setOnClickListener(v -> {
@@ -258,6 +262,13 @@ public class FirstFragment extends Fragment {
             onBackCallback.setEnabled(!selectionEmpty);
         });
         binding.recycler.setAdapter(mAdapter);
+        binding.recycler.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                // after layouts as well
+                if (mAdapter != null) mAdapter.fetchVisible();
+            }
+        });
         setSortProgressRunning(false);
 
         final String[] sorts = requireContext().getResources().getStringArray(R.array.sort_by_items);
@@ -311,33 +322,60 @@ public class FirstFragment extends Fragment {
         ArrayAdapter<String> menuAdapter = new ArrayAdapter<>(
                 requireContext(), android.R.layout.simple_dropdown_item_1line, sorts);
         binding.sortMenu.setAdapter(menuAdapter);
-        binding.filterText.setText("");
 
-        List<RecordingData> dataList = Collections.synchronizedList(new ArrayList<>());
+        // the library keeps the list up to date for as long as the view lives
+        if (mAdapter != null) return;
+        binding.filterText.setText("");
         setSortProgressRunning(true);
-        mExecutor.execute(() -> {
-            File fileDir = requireContext().getFilesDir();
-            File[] files = fileDir.listFiles();
-            if (files == null) return;
-            for (File file : files) {
-                if (file.isDirectory()) continue;
-                final String fileName = file.getName();
-                final String ext = fileName.substring(fileName.lastIndexOf(".") + 1);
-                final String mime = MimeTypeMap.getSingleton().getMimeTypeFromExtension(ext);
-                if (mime != null && (mime.contains("audio") || mime.contains("video"))) {
-                    dataList.add(new RecordingData(file));
-                }
-            }
-            mUiHandler.post(() -> onDataFetched(dataList));
-        });
+        mLibrary = RecordingLibrary.get(requireContext());
+        mLibrary.setListener(mLibraryListener);
+    }
+
+    private final RecordingLibrary.Listener mLibraryListener = new RecordingLibrary.Listener() {
+        @Override
+        public void onLoaded(List<RecordingData> recordings) {
+            onDataFetched(recordings);
+        }
+
+        @Override
+        public void onAdded(RecordingData data) {
+            if (mAdapter != null) mAdapter.addRecording(data);
+        }
+
+        @Override
+        public void onRemoved(RecordingData data) {
+            if (mAdapter != null) mAdapter.onRecordingRemoved(data);
+        }
+
+        @Override
+        public void onReplaced(RecordingData old, RecordingData data) {
+            if (mAdapter != null) mAdapter.replaceRecording(old, data);
+        }
+
+        @Override
+        public void onProbed() {
+            if (mAdapter != null) mAdapter.refreshVisibleDetails();
+        }
+
+        @Override
+        public void onProbingDone() {
+            if (mAdapter != null) mAdapter.onProbingDone();
+        }
+    };
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        // keeps renames made meanwhile
+        if (mLibrary != null) mLibrary.save();
     }
 
     @Override
     public void onDestroyView() {
-        if (mAdapter != null && mAdapter.mFilterHT != null && mAdapter.mFilterHT.isAlive()) {
-            mAdapter.mFilterHT.quitSafely();
-            mAdapter.mFilterHT = null;
-        }
+        if (mLibrary != null) mLibrary.setListener(null);
+        mAdapter = null;
+        mThumbnails.release();
+        mThumbnails = null;
         super.onDestroyView();
         binding = null;
     }
@@ -394,12 +432,30 @@ public class FirstFragment extends Fragment {
     }
 
     private class RecyclerAdapter extends RecyclerView.Adapter<RecyclerAdapter.ViewHolder> {
-        private final List<RecordingData> mRecordings;
-        private final List<RecordingData> mOrigRecordings;
+        private static final Object PAYLOAD_DETAILS = new Object();
+        private static final int PREFETCH_ROWS = 20; // read on each side of the visible rows
+        private static final DiffUtil.ItemCallback<RecordingData> DIFF_CALLBACK =
+                new DiffUtil.ItemCallback<>() {
+            @Override
+            public boolean areItemsTheSame(@NonNull RecordingData oldItem,
+                                           @NonNull RecordingData newItem) {
+                return oldItem.id == newItem.id;
+            }
+
+            @Override
+            public boolean areContentsTheSame(@NonNull RecordingData oldItem,
+                                              @NonNull RecordingData newItem) {
+                // changed files are replaced, read and probed details are refreshed with a payload
+                return oldItem == newItem;
+            }
+        };
+        private final AsyncListDiffer<RecordingData> mDiffer;
+        private List<RecordingData> mRecordings; // may be ahead of what the differ shows
+        private final LibraryOrder<RecordingData> mOrder = new LibraryOrder<>();
+        private final LibrarySearch<RecordingData> mSearch = new LibrarySearch<>();
+        private String mFilter; // folded
         private final List<RecordingData> mSelectedRecordings = new ArrayList<>();
-        private final List<Long> mProgresses = new ArrayList<>();
         private RecordingData mPlayingRecording;
-        private int mPlayingAdapterPos = RecyclerView.NO_POSITION;
         private boolean mIsPaused = false;
         private MediaPlayer mMediaPlayer;
 
@@ -420,6 +476,7 @@ public class FirstFragment extends Fragment {
             public final ImageButton shareButton;
             public final ImageButton deleteButton;
             public final Slider playProgress;
+            public final ImageView waveformThumb;
             public final MaterialCardView detailCard;
 
             public ViewHolder(View view) {
@@ -435,15 +492,47 @@ public class FirstFragment extends Fragment {
                 shareButton = view.findViewById(R.id.shareButton);
                 deleteButton = view.findViewById(R.id.deleteButton);
                 playProgress = view.findViewById(R.id.playProgress);
+                waveformThumb = view.findViewById(R.id.waveformThumb);
                 detailCard = view.findViewById(R.id.detailCard);
             }
         }
 
         public RecyclerAdapter(List<RecordingData> recordings) {
+            setHasStableIds(true);
+            mDiffer = new AsyncListDiffer<>(new AdapterListUpdateCallback(this),
+                    new AsyncDifferConfig.Builder<>(DIFF_CALLBACK)
+                            .setBackgroundThreadExecutor(mExecutor).build());
+            mOrder.addMode(SORT_BY_NAME, RecordingData::getNameKey);
+            mOrder.addLongMode(SORT_BY_DATE, RecordingData::getModified);
+            mOrder.addLongMode(SORT_BY_DURATION, RecordingData::getDuration);
+            mOrder.addLongMode(SORT_BY_SIZE, RecordingData::getSize);
+            mOrder.addMode(SORT_BY_TYPE, RecordingData::getExt);
+            for (RecordingData data : recordings) {
+                mOrder.add(data);
+                mSearch.add(data, data.getName());
+            }
+            mRecordings = recordings;
+            mDiffer.submitList(recordings);
+        }
+
+        /**
+         * Shows a new list, the differences are found in the background and only
+         * rows that were added, removed or moved are touched.
+         * The list must not be changed after
+         * @param onShown called once it's shown
+         */
+        private void submit(List<RecordingData> recordings, @Nullable Runnable onShown) {
             mRecordings = recordings;
-            mOrigRecordings = new ArrayList<>(mRecordings);
-            for (RecordingData ignored : mRecordings)
-                mProgresses.add(0L);
+            mDiffer.submitList(recordings, onShown);
+        }
+
+        private RecordingData getItem(int position) {
+            return mDiffer.getCurrentList().get(position);
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return getItem(position).id;
         }
 
         @NonNull
@@ -454,20 +543,37 @@ public class FirstFragment extends Fragment {
             return new RecyclerAdapter.ViewHolder(view);
         }
 
+        @Override
+        public void onBindViewHolder(@NonNull RecyclerAdapter.ViewHolder holder, int position,
+                                     @NonNull List<Object> payloads) {
+            final RecordingData record = getItem(position);
+            if (payloads.isEmpty() || mPlayingRecording == record
+                    || record.getProgress() != 0) {
+                super.onBindViewHolder(holder, position, payloads);
+                return;
+            }
+            // only read or probed details arrived
+            holder.createTimeTxt.setText(record.getLastModStr());
+            holder.sizeTxt.setText(record.getSizeStr(requireContext()));
+            holder.timeTxt.setText(record.getTimeStr());
+            holder.playProgress.setValueTo(record.getDuration() > 0 ? record.getDuration() : 1);
+        }
+
         @Override
         public void onBindViewHolder(@NonNull RecyclerAdapter.ViewHolder holder, int position) {
             // file info
-            final RecordingData record = mRecordings.get(position);
+            final RecordingData record = getItem(position);
             holder.detailCard.setChecked(mSelectedRecordings.contains(record));
-            holder.fileNameTxt.setText(record.name);
-            holder.typeTxt.setText(record.ext.toUpperCase());
+            holder.fileNameTxt.setText(record.getName());
+            holder.typeTxt.setText(record.getExt().toUpperCase());
             holder.createTimeTxt.setText(record.getLastModStr());
             holder.timeTxt.setText(record.getTimeStr());
             holder.sizeTxt.setText(record.getSizeStr(requireContext()));
             holder.playProgress.setValue(0);
-            holder.playProgress.setValueTo(record.duration > 0 ? record.duration : 1);
+            holder.playProgress.setValueTo(record.getDuration() > 0 ? record.getDuration() : 1);
+            mThumbnails.load(record.getFile(), holder.waveformThumb);
 
-            final long progress = mProgresses.get(position); // restore set progress if any
+            final long progress = record.getProgress(); // restore set progress if any
             if (mPlayingRecording == record && mMediaPlayer != null && mMediaPlayer.isPlaying()) {
                 // this is currently playing / paused - reflect progress
                 holder.playProgress.setValue(mMediaPlayer.getCurrentPosition());
@@ -489,7 +595,7 @@ public class FirstFragment extends Fragment {
                 if (mPlayingRecording != null && mPlayingRecording != record && mMediaPlayer != null) {
                     // a different file is playing, stop it before
                     final ViewHolder pHolder = (ViewHolder) binding.recycler
-                            .findViewHolderForAdapterPosition(mPlayingAdapterPos);
+                            .findViewHolderForItemId(mPlayingRecording.id);
                     stopPlaying();
                     holder.timeTxt.setText(record.getTimeStr());
                     mIsPaused = false;
@@ -501,7 +607,7 @@ public class FirstFragment extends Fragment {
                     // this is currently playing / paused
                     final int pos = Math.round(holder.playProgress.getValue());
                     mMediaPlayer.seekTo(pos);
-                    mProgresses.set(holder.getAdapterPosition(), (long) pos);
+                    record.setProgress(pos);
                     if (mMediaPlayer.isPlaying()) {
                         stopPlayingAnimation();
                         mIsPaused = true;
@@ -518,14 +624,12 @@ public class FirstFragment extends Fragment {
                 // play this file
                 mIsPaused = false;
                 mPlayingRecording = record;
-                mPlayingAdapterPos = holder.getAdapterPosition();
-                mMediaPlayer = MediaPlayer.create(requireActivity(), Uri.fromFile(record.recording));
+                mMediaPlayer = MediaPlayer.create(requireActivity(), Uri.fromFile(record.getFile()));
                 mMediaPlayer.setLooping(false);
                 mMediaPlayer.seekTo(Math.round(holder.playProgress.getValue()));
                 mMediaPlayer.setOnCompletionListener(mp -> {
-                    final int index = mRecordings.indexOf(mPlayingRecording);
                     stopPlaying();
-                    if (index != RecyclerView.NO_POSITION) mProgresses.set(index, 0L);
+                    record.setProgress(0);
                     holder.timeTxt.setText(record.getTimeStr());
                     holder.playButton.setImageResource(R.drawable.baseline_play_arrow_24);
                     animateSliderValue(holder.playProgress, 0);
@@ -537,7 +641,7 @@ public class FirstFragment extends Fragment {
             holder.playProgress.addOnChangeListener((slider, value, fromUser) -> {
                 if (!fromUser) return;
                 final int pos = Math.round(value / 1000);
-                mProgresses.set(holder.getAdapterPosition(), (long) value);
+                record.setProgress((long) value);
                 holder.timeTxt.setText(record.getTimeStr(pos / 60, pos % 60));
                 if (mMediaPlayer == null || record != mPlayingRecording || mIsPaused) return;
                 stopPlayingAnimation();
@@ -557,7 +661,7 @@ public class FirstFragment extends Fragment {
 
                 @Override
                 public void onStopTrackingTouch(@NonNull Slider slider) {
-                    mProgresses.set(holder.getAdapterPosition(), (long) slider.getValue());
+                    record.setProgress((long) slider.getValue());
                     if (mMediaPlayer == null || mPlayingRecording != record || mMediaPlayer.isPlaying())
                         return;
                     if (mIsPaused) return;
@@ -583,44 +687,41 @@ public class FirstFragment extends Fragment {
             });
             holder.fileNameTxt.setOnFocusChangeListener((v, hasFocus) -> {
                 if (hasFocus) return;
-                final String oldName = record.name;
+                final String oldName = record.getName();
                 final Editable editable = ((TextInputEditText) v).getText();
                 if (editable == null) return;
                 final String newName = editable.toString();
                 if (oldName.equals(newName)) return;
-                final File newFile = new File(record.recording.getPath().replace(oldName, newName));
-                if (newName.isEmpty() || !record.recording.renameTo(newFile)) return;
-                ((TextInputEditText) v).setText(newName);
-                mRecordings.set(holder.getAdapterPosition(), new RecordingData(newFile));
-                notifyItemRangeChanged(holder.getAdapterPosition(), 1);
+                // the row is rebound through the library
+                mLibrary.rename(record, newName);
             });
             holder.selectButton.setOnClickListener(v -> checkItem(holder.detailCard, holder.getAdapterPosition()));
             holder.saveButton.setOnClickListener(v -> {
                 if (!mSelectedRecordings.isEmpty()) return;
                 mSavingQueue = new LinkedList<>();
                 mSavingQueue.add(record);
-                mResultLauncher.launch(record.name + "." + record.ext);
+                mResultLauncher.launch(record.getFileName());
             });
             holder.shareButton.setOnClickListener(v -> {
                 if (!mSelectedRecordings.isEmpty()) return;
                 Uri fileUri = null;
                 try {
                     fileUri = FileProvider.getUriForFile(requireActivity(),
-                            "com.idoybh.yasr.fileprovider", record.recording);
+                            "com.idoybh.yasr.fileprovider", record.getFile());
                 } catch (IllegalArgumentException e) {
                     e.printStackTrace();
                 }
                 if (fileUri == null) return;
-                if (record.mime == null) return;
+                if (record.getMime() == null) return;
                 Intent shareIntent = new Intent();
                 shareIntent.setAction(Intent.ACTION_SEND);
                 shareIntent.putExtra(Intent.EXTRA_STREAM, fileUri);
-                shareIntent.setType(record.mime);
+                shareIntent.setType(record.getMime());
                 startActivity(Intent.createChooser(shareIntent, null));
             });
             holder.deleteButton.setOnClickListener(v -> {
                 if (!mSelectedRecordings.isEmpty()) return;
-                displayAreYouSureDialog((dialog, which) -> removeRecording(record));
+                displayAreYouSureDialog((dialog, which) -> mLibrary.delete(record));
             });
         }
 
@@ -655,7 +756,7 @@ public class FirstFragment extends Fragment {
                 holder.setIsRecyclable(true);
                 handler.removeCallbacksAndMessages(null);
                 final int pos = mMediaPlayer.getCurrentPosition();
-                mProgresses.set(holder.getAdapterPosition(), (long) pos);
+                if (mPlayingRecording != null) mPlayingRecording.setProgress(pos);
                 animateSliderValue(holder.playProgress, mMediaPlayer.getCurrentPosition());
                 this.cancel();
             }
@@ -666,9 +767,8 @@ public class FirstFragment extends Fragment {
                 handler.post(() -> {
                     if (mIsPaused || mMediaPlayer == null) return;
                     int pos = mMediaPlayer.getCurrentPosition();
-                    final int index = holder.getAdapterPosition();
-                    if (index == RecyclerView.NO_POSITION) return;
-                    mProgresses.set(index, (long) pos);
+                    if (holder.getAdapterPosition() == RecyclerView.NO_POSITION) return;
+                    if (mPlayingRecording != null) mPlayingRecording.setProgress(pos);
                     animateSliderValue(holder.playProgress, pos);
                     pos /= 1000;
                     final int duration = Math.round(holder.playProgress.getValueTo() / 1000);
@@ -727,16 +827,17 @@ public class FirstFragment extends Fragment {
 
         @Override
         public int getItemCount() {
-            return mRecordings.size();
+            return mDiffer.getCurrentList().size();
         }
 
         @Override
         public void onViewRecycled(@NonNull ViewHolder holder) {
             final int position = holder.getAdapterPosition();
-            if (position > 0 && position < mRecordings.size() - 1
-                    && mPlayingRecording == mRecordings.get(position)) {
+            if (position > 0 && position < getItemCount() - 1
+                    && mPlayingRecording == getItem(position)) {
                 stopPlayingAnimation();
             }
+            mThumbnails.cancel(holder.waveformThumb);
             super.onViewRecycled(holder);
         }
 
@@ -745,9 +846,9 @@ public class FirstFragment extends Fragment {
             holder.playProgress.setValue(0);
             super.onViewAttachedToWindow(holder);
             final int position = holder.getAdapterPosition();
-            final RecordingData data = mRecordings.get(position);
-            holder.playProgress.setValueTo(data.duration);
-            holder.playProgress.setValue(mProgresses.get(position));
+            final RecordingData data = getItem(position);
+            holder.playProgress.setValueTo(data.getDuration() > 0 ? data.getDuration() : 1);
+            holder.playProgress.setValue(data.getProgress());
             if (mPlayingRecording == data && mMediaPlayer != null && mMediaPlayer.isPlaying()) {
                 startPlayingAnimation(holder);
             }
@@ -762,8 +863,8 @@ public class FirstFragment extends Fragment {
         public void onViewDetachedFromWindow(@NonNull ViewHolder holder) {
             holder.playProgress.setValue(0);
             final int position = holder.getAdapterPosition();
-            if (position > 0 && position < mRecordings.size() - 1
-                    && mPlayingRecording == mRecordings.get(position)) {
+            if (position > 0 && position < getItemCount() - 1
+                    && mPlayingRecording == getItem(position)) {
                 stopPlayingAnimation();
             }
             super.onViewDetachedFromWindow(holder);
@@ -771,7 +872,7 @@ public class FirstFragment extends Fragment {
 
         private void checkItem(MaterialCardView detailCard, int position) {
             final boolean isChecked = !detailCard.isChecked();
-            final RecordingData file = mRecordings.get(position);
+            final RecordingData file = getItem(position);
             if (isChecked) mSelectedRecordings.add(file);
             else mSelectedRecordings.remove(file);
             detailCard.setChecked(isChecked);
@@ -787,18 +888,103 @@ public class FirstFragment extends Fragment {
             return mSelectedRecordings;
         }
 
-        public void removeRecording(RecordingData data) {
-            if (!data.recording.delete()) return;
+        /**
+         * Shows details read and durations probed since the rows were bound,
+         * offscreen rows get them when bound
+         */
+        void refreshVisibleDetails() {
+            final LinearLayoutManager manager =
+                    (LinearLayoutManager) binding.recycler.getLayoutManager();
+            if (manager == null) return;
+            final int first = manager.findFirstVisibleItemPosition();
+            final int last = manager.findLastVisibleItemPosition();
+            if (first == RecyclerView.NO_POSITION) return;
+            notifyItemRangeChanged(first, last - first + 1, PAYLOAD_DETAILS);
+        }
+
+        /**
+         * Has the library read the visible rows and those around them, the rest is read
+         * when scrolled to or when a sort needs it
+         */
+        void fetchVisible() {
+            final LinearLayoutManager manager =
+                    (LinearLayoutManager) binding.recycler.getLayoutManager();
+            if (manager == null) return;
+            final List<RecordingData> shown = mDiffer.getCurrentList();
+            int first = manager.findFirstVisibleItemPosition();
+            int last = manager.findLastVisibleItemPosition();
+            if (first == RecyclerView.NO_POSITION) first = last = 0;
+            final int from = Math.max(0, first - PREFETCH_ROWS);
+            final int to = Math.min(shown.size(), last + 1 + PREFETCH_ROWS);
+            if (shown == mFetchedList && from == mFetchedFrom && to == mFetchedTo) return;
+            mFetchedList = shown;
+            mFetchedFrom = from;
+            mFetchedTo = to;
+            mLibrary.fetchWindow(shown.subList(from, to));
+        }
+
+        private List<RecordingData> mFetchedList; // the window fetchVisible last asked for
+        private int mFetchedFrom;
+        private int mFetchedTo;
+
+        /**
+         * Inserts a new recording where the current sort and filter put it
+         */
+        void addRecording(RecordingData data) {
+            mSearch.add(data, data.getName());
+            mOrder.add(data);
+            if (!mSearch.matches(data, mFilter)) return;
+            final List<RecordingData> recordings = new ArrayList<>(mRecordings);
+            int position = recordings.size();
+            if (mSortSelection != ListView.INVALID_POSITION) {
+                position = Collections.binarySearch(recordings, data,
+                        mOrder.getComparator(mSortSelection, mReverseSort));
+                if (position < 0) position = -position - 1;
+            }
+            recordings.add(position, data);
+            submit(recordings, null);
+        }
+
+        void onRecordingRemoved(RecordingData data) {
+            mSearch.remove(data);
+            mOrder.remove(data);
+            if (mSelectedRecordings.remove(data) && mOnCheckedListener != null)
+                mOnCheckedListener.onChecked(mSelectedRecordings);
             final int position = mRecordings.indexOf(data);
-            mRecordings.remove(data);
+            if (position == -1) return;
             if (mPlayingRecording == data && mMediaPlayer != null)
                 stopPlaying();
-            notifyItemRemoved(position);
-            notifyItemRangeChanged(position, mRecordings.size() - position);
+            final List<RecordingData> recordings = new ArrayList<>(mRecordings);
+            recordings.remove(position);
+            submit(recordings, null);
+        }
+
+        /**
+         * A recording was renamed or rewritten, its row is rebound in place
+         */
+        void replaceRecording(RecordingData old, RecordingData data) {
+            mSearch.remove(old);
+            mSearch.add(data, data.getName());
+            final int position = mRecordings.indexOf(old);
+            if (position == -1 || !mSearch.matches(data, mFilter)) {
+                // renamed into or out of the filter
+                onRecordingRemoved(old);
+                addRecording(data);
+                return;
+            }
+            mOrder.remove(old);
+            mOrder.add(data);
+            final int selected = mSelectedRecordings.indexOf(old);
+            if (selected != -1) mSelectedRecordings.set(selected, data);
+            if (mPlayingRecording == old) mPlayingRecording = data;
+            data.setProgress(old.getProgress());
+            final List<RecordingData> recordings = new ArrayList<>(mRecordings);
+            recordings.set(position, data);
+            submit(recordings, null);
         }
 
         public boolean isFullySelected() {
-            return mSelectedRecordings.size() == mRecordings.size();
+            return mSelectedRecordings.size() == getItemCount();
         }
 
         public void clearSelection() {
@@ -810,7 +996,7 @@ public class FirstFragment extends Fragment {
         public void selectAll() {
             recursiveSelection(binding.recycler, true);
             mSelectedRecordings.clear();
-            mSelectedRecordings.addAll(mRecordings);
+            mSelectedRecordings.addAll(mDiffer.getCurrentList());
             mOnCheckedListener.onChecked(mSelectedRecordings);
         }
 
@@ -825,147 +1011,82 @@ public class FirstFragment extends Fragment {
         }
 
         public void sortBy(final int sort) {
+            final List<RecordingData> ordered = mOrder.get(sort, mReverseSort);
+            if (ordered != null) {
+                show(mSearch.search(mFilter, ordered));
+                return;
+            }
+            // each order is sorted once and kept sorted after
             setSortProgressRunning(true);
+            // the whole library is only read for sorts that need it, sorted once it is
+            if (isReadKey(sort) && !mLibrary.fetchAll(sort == SORT_BY_DURATION)) return;
+            final List<RecordingData> items = new ArrayList<>(mOrder.getItems());
+            final int version = mOrder.getVersion();
             mExecutor.execute(() -> {
-                switch (sort) {
-                    case SORT_BY_NAME -> mRecordings.sort((o1, o2) -> mReverseSort
-                            ? o2.name.compareTo(o1.name)
-                            : o1.name.compareTo(o2.name));
-                    case SORT_BY_DATE -> mRecordings.sort((o1, o2) -> mReverseSort
-                            ? o2.lastModified.compareTo(o1.lastModified)
-                            : o1.lastModified.compareTo(o2.lastModified));
-                    case SORT_BY_DURATION -> mRecordings.sort((o1, o2) -> mReverseSort
-                            ? Long.compare(o2.duration, o1.duration)
-                            : Long.compare(o1.duration, o2.duration));
-                    case SORT_BY_SIZE -> mRecordings.sort((o1, o2) -> mReverseSort
-                            ? Long.compare(o2.size, o1.size)
-                            : Long.compare(o1.size, o2.size));
-                    case SORT_BY_TYPE -> mRecordings.sort((o1, o2) -> mReverseSort
-                            ? o2.ext.compareTo(o1.ext)
-                            : o1.ext.compareTo(o2.ext));
-                }
+                final List<RecordingData> sorted = mOrder.sort(sort, items);
                 mUiHandler.post(() -> {
-                    restart();
-                    setSortProgressRunning(false);
+                    if (mAdapter != this) return;
+                    // sorted again if the library changed meanwhile
+                    mOrder.put(sort, sorted, version);
+                    if (sort == mSortSelection) sortBy(sort);
                 });
             });
         }
 
-        private HandlerThread mFilterHT;
-        private Handler mFilterHandler;
-        private Handler mFilterUIHandler;
-        public void filter(final String filter) {
-            if (mFilterHT == null) {
-                mFilterHT = new HandlerThread("Filter HandlerThread");
-                mFilterHT.start();
-                mFilterHandler = new Handler(mFilterHT.getLooper());
-                mFilterUIHandler = new Handler(Looper.getMainLooper());
-            }
-            setSortProgressRunning(true);
-            mFilterHandler.removeCallbacksAndMessages(null);
-            mFilterHandler.postAtFrontOfQueue(() -> {
-                mRecordings.clear();
-                if (filter == null || filter.isEmpty()) {
-                    mRecordings.addAll(mOrigRecordings);
-                } else {
-                    for (RecordingData record : mOrigRecordings) {
-                        final String fnl = record.name.toLowerCase(Locale.ENGLISH);
-                        if (fnl.contains(filter.toLowerCase(Locale.ENGLISH)))
-                            mRecordings.add(record);
-                    }
-                }
-                mFilterUIHandler.removeCallbacksAndMessages(null);
-                mFilterUIHandler.postAtFrontOfQueue(() -> {
-                    if (mSortSelection != ListView.INVALID_POSITION) {
-                        sortBy(mSortSelection);
-                        return; // already calls following
-                    }
-                    restart();
-                    setSortProgressRunning(false);
-                });
-            });
-        }
-
-        @SuppressLint("NotifyDataSetChanged")
-        private void restart() {
-            clearSelection();
-            mProgresses.clear();
-            for (RecordingData ignored : mRecordings) mProgresses.add(0L);
-            binding.recycler.setAdapter(null);
-            binding.recycler.setLayoutManager(null);
-            binding.recycler.setAdapter(this);
-            LinearLayoutManager manager = new LinearLayoutManager(requireContext());
-            manager.setOrientation(LinearLayoutManager.VERTICAL);
-            binding.recycler.setLayoutManager(manager);
-            notifyDataSetChanged();
-        }
-    }
-
-    private static class RecordingData {
-        private static final long GB = 1000000000;
-        private static final long MB = 1000000;
-        private static final long KB = 1000;
-
-        final File recording;
-        String name;
-        String ext;
-        String mime;
-        long size;
-        long duration;
-        Calendar lastModified = Calendar.getInstance();
-
-        public RecordingData(File recording) {
-            this.recording = recording;
-            this.size = recording.length();
-            final String fullName = recording.getName();
-            final int dotPos = fullName.lastIndexOf(".");
-            name = fullName.substring(0, dotPos);
-            ext = fullName.substring(dotPos + 1);
-            mime = MimeTypeMap.getSingleton().getMimeTypeFromExtension(ext);
-            fetchLastModified();
-            fetchDuration();
-        }
-
-        private void fetchLastModified() {
-            lastModified.setTimeInMillis(recording.lastModified());
+        /**
+         * @return the whole library in the current order
+         */
+        private List<RecordingData> getOrdered() {
+            if (mSortSelection == ListView.INVALID_POSITION) return mOrder.getItems();
+            final List<RecordingData> ordered = mOrder.get(mSortSelection, mReverseSort);
+            return ordered != null ? ordered : mOrder.getItems(); // still being sorted
         }
 
-        private void fetchDuration() {
-            try (MediaMetadataRetriever retriever = new MediaMetadataRetriever()) {
-                retriever.setDataSource(recording.getPath());
-                duration = Long.parseLong(retriever.extractMetadata(
-                        MediaMetadataRetriever.METADATA_KEY_DURATION));
-            } catch (Exception e) {
-                duration = 1000;
-            }
+        /**
+         * @return whether recordings are sorted by something read from their files
+         */
+        private boolean isReadKey(int sort) {
+            return sort == SORT_BY_DATE || sort == SORT_BY_SIZE || sort == SORT_BY_DURATION;
         }
 
-        public String getSizeStr(Context ctx) {
-            String sizeText = String.valueOf(size); // bytes
-            if (size > GB) {
-                sizeText = size / GB + " " + ctx.getString(R.string.unit_gb);
-            } else if (size > MB) {
-                sizeText = size / MB + " " + ctx.getString(R.string.unit_mb);
-            } else if (size > KB) {
-                sizeText = size / 1000 + " " + ctx.getString(R.string.unit_kb);
-            }
-            return sizeText;
+        /**
+         * Everything queued was read, a sort waiting for it goes on
+         * and the order by durations is sorted again
+         */
+        void onProbingDone() {
+            mOrder.invalidate(SORT_BY_DURATION);
+            // placeholders of new recordings were sorted first
+            if (isReadKey(mSortSelection) && mOrder.get(mSortSelection, mReverseSort) == null)
+                sortBy(mSortSelection);
         }
 
-        public String getLastModStr() {
-            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd kk:mm", Locale.getDefault());
-            return sdf.format(lastModified.getTime());
-        }
-
-        public String getTimeStr() {
-            return getTimeStr(0, 0);
+        /**
+         * Answered right away from the search index, already in the current order
+         */
+        public void filter(final String filter) {
+            mFilter = filter == null || filter.isEmpty() ? null : LibrarySearch.fold(filter);
+            show(mSearch.search(mFilter, getOrdered()));
         }
 
-        public String getTimeStr(int m, int s) {
-            final int dur = Math.round(duration / 1000f);
-            if (dur == 0) return "ERROR";
-            String timeStr = "%02d:%02d/%02d:%02d";
-            return String.format(Locale.ENGLISH, timeStr, m, s, dur / 60, dur % 60);
+        /**
+         * Shows a sorted or filtered list where the current one was scrolled to,
+         * instead of following the rows that moved away
+         */
+        private void show(List<RecordingData> recordings) {
+            clearSelection();
+            final LinearLayoutManager manager =
+                    (LinearLayoutManager) binding.recycler.getLayoutManager();
+            final int first = manager != null
+                    ? manager.findFirstVisibleItemPosition() : RecyclerView.NO_POSITION;
+            final View firstView = first != RecyclerView.NO_POSITION
+                    ? manager.findViewByPosition(first) : null;
+            final int offset = firstView != null
+                    ? firstView.getTop() - binding.recycler.getPaddingTop() : 0;
+            submit(recordings, () -> {
+                if (mAdapter != this || binding == null) return;
+                if (firstView != null) manager.scrollToPositionWithOffset(first, offset);
+                setSortProgressRunning(false);
+            });
         }
     }
 
@@ -1016,7 +1137,7 @@ public class FirstFragment extends Fragment {
         // a sane path in the uri... but it is what it is I guess....
         try (ParcelFileDescriptor descriptor = requireContext().getContentResolver()
                 .openFileDescriptor(uri, "rw")) {
-            final File sourceFile = Objects.requireNonNull(mSavingQueue.poll()).recording;
+            final File sourceFile = Objects.requireNonNull(mSavingQueue.poll()).getFile();
             if (mSavingQueue.size() == 0) mSavingQueue = null;
             try (InputStream in = new FileInputStream(sourceFile);
                  OutputStream out = new FileOutputStream(descriptor.getFileDescriptor())) {
@@ -1033,7 +1154,7 @@ public class FirstFragment extends Fragment {
         if (mSavingQueue == null) return;
         final RecordingData next = mSavingQueue.peek();
         if (next == null) return;
-        mResultLauncher.launch(next.name + "." + next.ext);
+        mResultLauncher.launch(next.getFileName());
     }
 
     private final ActivityResultLauncher<String> mResultLauncher = registerForActivityResult(
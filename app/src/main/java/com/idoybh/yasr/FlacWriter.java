@@ -0,0 +1,692 @@
+/*
+ * Copyright (C) 2023 Ido Ben-Hur
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.idoybh.yasr;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Streaming FLAC encoder fed by interleaved little-endian PCM (8, 16 or 24 bit).
+ * Uses fixed predictors with partitioned Rice coding and stereo decorrelation,
+ * which keeps up in real time on a single core with a small, constant amount of memory.
+ * STREAMINFO and a seek table are reserved up front and patched in place on {@link #close()}
+ * see: https://xiph.org/flac/format.html
+ */
+class FlacWriter implements PcmSink {
+    static final int BLOCK_SIZE = 4096;
+    static final int SEEK_POINTS = 128;
+    private static final int MAX_FIXED_ORDER = 4;
+    private static final int MAX_PARTITION_ORDER = 8;
+    private static final int SEEKTABLE_OFFSET = 4 + 4 + 34 + 4; // "fLaC", STREAMINFO, header
+    private static final int FIRST_FRAME_OFFSET = SEEKTABLE_OFFSET + SEEK_POINTS * 18;
+    private static final int SEEK_INTERVAL_SEC = 10;
+    private static final int CH_INDEPENDENT = 1; // only the stereo value, mono uses 0
+    private static final int CH_LEFT_SIDE = 8;
+    private static final int CH_RIGHT_SIDE = 9;
+    private static final int CH_MID_SIDE = 10;
+
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+    private final int mSampleRate;
+    private final int mChannels;
+    private final int mBitsPerSample;
+    private final int mFrameSize;
+    private final MessageDigest mMd5;
+    private final byte[] mMd5Scratch;
+
+    // current block
+    private final int[][] mBlock;
+    private int mBlockFill = 0;
+    private final byte[] mCarry; // a partial frame left over from the last buffer
+    private int mCarryFill = 0;
+
+    // encoding scratch
+    private final int[] mSide;
+    private final int[] mMid;
+    private final int[] mResidual;
+    private final long[] mOrderSums = new long[MAX_FIXED_ORDER + 1];
+    private final long[] mPartitionSums = new long[1 << MAX_PARTITION_ORDER];
+    private final int[] mRiceParams = new int[1 << MAX_PARTITION_ORDER];
+    private final BitWriter mBits;
+
+    // stream info
+    private long mTotalSamples = 0;
+    private long mFrameNumber = 0;
+    private long mSize;
+    private int mMinFrameSize = Integer.MAX_VALUE;
+    private int mMaxFrameSize = 0;
+    private int mMinBlockSize = Integer.MAX_VALUE;
+    private int mMaxBlockSize = 0;
+
+    // seek points, decimated as the stream grows to always fit the reserved table
+    private final long[] mSeekSamples = new long[SEEK_POINTS];
+    private final long[] mSeekOffsets = new long[SEEK_POINTS];
+    private final int[] mSeekFrameSamples = new int[SEEK_POINTS];
+    private int mSeekCount = 0;
+    private long mSeekInterval;
+    private long mNextSeekSample = 0;
+
+    /**
+     * Creates (or truncates) the target file and reserves its metadata
+     * @param file the FLAC file to write to
+     * @param sampleRate the sampling rate per second
+     * @param channels the number of interleaved channels (1 or 2)
+     * @param bitsPerSample the bit depth of a single sample (8, 16 or 24)
+     * @throws IOException if the file can't be opened or written
+     */
+    FlacWriter(File file, int sampleRate, int channels, int bitsPerSample) throws IOException {
+        if (bitsPerSample != 8 && bitsPerSample != 16 && bitsPerSample != 24)
+            throw new IllegalArgumentException("Unsupported bit depth " + bitsPerSample);
+        if (channels < 1 || channels > 2)
+            throw new IllegalArgumentException("Unsupported channel count " + channels);
+        mSampleRate = sampleRate;
+        mChannels = channels;
+        mBitsPerSample = bitsPerSample;
+        mFrameSize = channels * bitsPerSample / 8;
+        mSeekInterval = (long) sampleRate * SEEK_INTERVAL_SEC;
+        try {
+            mMd5 = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        mMd5Scratch = bitsPerSample == 8 ? new byte[BLOCK_SIZE * channels] : null;
+        mBlock = new int[channels][BLOCK_SIZE];
+        mCarry = new byte[mFrameSize];
+        mSide = new int[BLOCK_SIZE];
+        mMid = new int[BLOCK_SIZE];
+        mResidual = new int[BLOCK_SIZE];
+        mBits = new BitWriter(BLOCK_SIZE * channels * 4 + 64);
+        mFile = new RandomAccessFile(file, "rw");
+        try {
+            mFile.setLength(0);
+            mChannel = mFile.getChannel();
+            writeMetadata();
+            mChannel.position(FIRST_FRAME_OFFSET);
+        } catch (IOException e) {
+            // no instance to close for the caller
+            try {
+                mFile.close();
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        mSize = FIRST_FRAME_OFFSET;
+    }
+
+    @Override
+    public void write(ByteBuffer[] buffers, int offset, int length) throws IOException {
+        for (int i = offset; i < offset + length; i++) {
+            final ByteBuffer buffer = buffers[i];
+            updateMd5(buffer);
+            int pos = buffer.position();
+            final int limit = buffer.limit();
+            if (mCarryFill > 0) {
+                // complete the frame split across buffers
+                while (mCarryFill < mFrameSize && pos < limit)
+                    mCarry[mCarryFill++] = buffer.get(pos++);
+                if (mCarryFill < mFrameSize) continue;
+                decodeFrame(ByteBuffer.wrap(mCarry).order(ByteOrder.LITTLE_ENDIAN), 0);
+                mCarryFill = 0;
+            }
+            for (; pos + mFrameSize <= limit; pos += mFrameSize)
+                decodeFrame(buffer, pos);
+            while (pos < limit)
+                mCarry[mCarryFill++] = buffer.get(pos++);
+            buffer.position(limit);
+        }
+    }
+
+    @Override
+    public long getSize() {
+        return mSize;
+    }
+
+    /**
+     * @return the number of frames (samples per channel) encoded so far
+     */
+    long getTotalSamples() {
+        return mTotalSamples + mBlockFill;
+    }
+
+    /**
+     * Encodes whatever is left, patches the metadata and closes the file
+     * @throws IOException on any write error
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (mBlockFill > 0) encodeBlock();
+            writeMetadata();
+        } finally {
+            mFile.close();
+        }
+    }
+
+    private void updateMd5(ByteBuffer buffer) {
+        if (mMd5Scratch == null) {
+            // 16 & 24 bit PCM is already signed little-endian, as FLAC hashes it
+            mMd5.update(buffer.duplicate());
+            return;
+        }
+        // 8 bit PCM is unsigned, FLAC hashes signed samples
+        for (int pos = buffer.position(); pos < buffer.limit(); ) {
+            final int count = Math.min(mMd5Scratch.length, buffer.limit() - pos);
+            for (int i = 0; i < count; i++)
+                mMd5Scratch[i] = (byte) (buffer.get(pos + i) - 128);
+            mMd5.update(mMd5Scratch, 0, count);
+            pos += count;
+        }
+    }
+
+    private void decodeFrame(ByteBuffer buffer, int pos) throws IOException {
+        for (int ch = 0; ch < mChannels; ch++) {
+            int sample;
+            switch (mBitsPerSample) {
+                case 8 -> sample = (buffer.get(pos) & 0xFF) - 128;
+                case 16 -> sample = (buffer.get(pos) & 0xFF) | buffer.get(pos + 1) << 8;
+                default -> sample = (buffer.get(pos) & 0xFF)
+                        | (buffer.get(pos + 1) & 0xFF) << 8
+                        | buffer.get(pos + 2) << 16;
+            }
+            mBlock[ch][mBlockFill] = sample;
+            pos += mBitsPerSample / 8;
+        }
+        if (++mBlockFill == BLOCK_SIZE) encodeBlock();
+    }
+
+    private void encodeBlock() throws IOException {
+        final int n = mBlockFill;
+        if (mTotalSamples >= mNextSeekSample) addSeekPoint(n);
+        final BitWriter bits = mBits;
+        bits.reset();
+
+        // pick the cheapest channel decorrelation
+        int assignment = 0;
+        if (mChannels == 2) {
+            final int[] left = mBlock[0];
+            final int[] right = mBlock[1];
+            for (int i = 0; i < n; i++) {
+                mSide[i] = left[i] - right[i];
+                mMid[i] = (left[i] + right[i]) >> 1;
+            }
+            final long costL = estimateCost(left, n);
+            final long costR = estimateCost(right, n);
+            final long costS = estimateCost(mSide, n);
+            final long costM = estimateCost(mMid, n);
+            assignment = CH_INDEPENDENT;
+            long best = costL + costR;
+            if (costL + costS < best) {
+                best = costL + costS;
+                assignment = CH_LEFT_SIDE;
+            }
+            if (costR + costS < best) {
+                best = costR + costS;
+                assignment = CH_RIGHT_SIDE;
+            }
+            if (costM + costS < best) assignment = CH_MID_SIDE;
+        }
+
+        // frame header
+        bits.write(16, 0xFFF8); // sync code, fixed block size
+        final int blockSizeCode = n == BLOCK_SIZE ? 12 /* 256 * 2^(12-8) */ : 7;
+        bits.write(4, blockSizeCode);
+        bits.write(4, sampleRateCode(mSampleRate));
+        bits.write(4, assignment);
+        bits.write(3, sampleSizeCode(mBitsPerSample));
+        bits.write(1, 0);
+        bits.writeUtf8(mFrameNumber);
+        if (blockSizeCode == 7) bits.write(16, n - 1);
+        bits.write(8, Crc.crc8(bits.getBuffer(), 0, bits.getBytePosition()));
+
+        // subframes
+        switch (assignment) {
+            case CH_LEFT_SIDE -> {
+                writeSubframe(mBlock[0], n, mBitsPerSample);
+                writeSubframe(mSide, n, mBitsPerSample + 1);
+            }
+            case CH_RIGHT_SIDE -> {
+                writeSubframe(mSide, n, mBitsPerSample + 1);
+                writeSubframe(mBlock[1], n, mBitsPerSample);
+            }
+            case CH_MID_SIDE -> {
+                writeSubframe(mMid, n, mBitsPerSample);
+                writeSubframe(mSide, n, mBitsPerSample + 1);
+            }
+            default -> {
+                for (int ch = 0; ch < mChannels; ch++)
+                    writeSubframe(mBlock[ch], n, mBitsPerSample);
+            }
+        }
+        bits.alignToByte();
+        bits.write(16, Crc.crc16(bits.getBuffer(), 0, bits.getBytePosition()));
+
+        final int frameBytes = bits.getBytePosition();
+        final ByteBuffer out = ByteBuffer.wrap(bits.getBuffer(), 0, frameBytes);
+        while (out.hasRemaining()) mChannel.write(out);
+
+        mSize += frameBytes;
+        mMinFrameSize = Math.min(mMinFrameSize, frameBytes);
+        mMaxFrameSize = Math.max(mMaxFrameSize, frameBytes);
+        if (n == BLOCK_SIZE || mFrameNumber == 0) {
+            // the last block is allowed to be shorter than the minimum
+            mMinBlockSize = Math.min(mMinBlockSize, n);
+            mMaxBlockSize = Math.max(mMaxBlockSize, n);
+        }
+        mTotalSamples += n;
+        mFrameNumber++;
+        mBlockFill = 0;
+    }
+
+    private void addSeekPoint(int frameSamples) {
+        if (mSeekCount == SEEK_POINTS) {
+            // table is full, keep every other point and space them further apart
+            for (int i = 0; i < SEEK_POINTS / 2; i++) {
+                mSeekSamples[i] = mSeekSamples[i * 2];
+                mSeekOffsets[i] = mSeekOffsets[i * 2];
+                mSeekFrameSamples[i] = mSeekFrameSamples[i * 2];
+            }
+            mSeekCount = SEEK_POINTS / 2;
+            mSeekInterval *= 2;
+            mNextSeekSample = mSeekSamples[mSeekCount - 1] + mSeekInterval;
+            if (mTotalSamples < mNextSeekSample) return;
+        }
+        mSeekSamples[mSeekCount] = mTotalSamples;
+        mSeekOffsets[mSeekCount] = mSize - FIRST_FRAME_OFFSET;
+        mSeekFrameSamples[mSeekCount] = frameSamples;
+        mSeekCount++;
+        mNextSeekSample = mTotalSamples + mSeekInterval;
+    }
+
+    /**
+     * Finds the cheapest fixed predictor order for a signal
+     * @return the sum of absolute residuals of the best order, used as a cost estimate
+     */
+    private long estimateCost(int[] x, int n) {
+        return mOrderSums[bestFixedOrder(x, n)];
+    }
+
+    private int bestFixedOrder(int[] x, int n) {
+        final long[] sums = mOrderSums;
+        for (int i = 0; i <= MAX_FIXED_ORDER; i++) sums[i] = 0;
+        if (n <= MAX_FIXED_ORDER * 2) {
+            for (int i = 0; i < n; i++) sums[0] += Math.abs((long) x[i]);
+            return 0;
+        }
+        long s0 = 0, s1 = 0, s2 = 0, s3 = 0, s4 = 0;
+        long last0 = x[3];
+        long last1 = last0 - x[2];
+        long last2 = last1 - (x[2] - (long) x[1]);
+        long last3 = last2 - (x[2] - 2L * x[1] + x[0]);
+        for (int i = MAX_FIXED_ORDER; i < n; i++) {
+            final long e0 = x[i];
+            final long e1 = e0 - last0;
+            final long e2 = e1 - last1;
+            final long e3 = e2 - last2;
+            final long e4 = e3 - last3;
+            last0 = e0;
+            last1 = e1;
+            last2 = e2;
+            last3 = e3;
+            s0 += Math.abs(e0);
+            s1 += Math.abs(e1);
+            s2 += Math.abs(e2);
+            s3 += Math.abs(e3);
+            s4 += Math.abs(e4);
+        }
+        sums[0] = s0;
+        sums[1] = s1;
+        sums[2] = s2;
+        sums[3] = s3;
+        sums[4] = s4;
+        int order = 0;
+        for (int i = 1; i <= MAX_FIXED_ORDER; i++)
+            if (sums[i] < sums[order]) order = i;
+        return order;
+    }
+
+    private void writeSubframe(int[] x, int n, int bps) {
+        final BitWriter bits = mBits;
+        boolean constant = true;
+        for (int i = 1; i < n && constant; i++) constant = x[i] == x[0];
+        if (constant) {
+            bits.write(8, 0); // CONSTANT
+            bits.writeSigned(bps, x[0]);
+            return;
+        }
+
+        final int order = bestFixedOrder(x, n);
+        computeResidual(x, n, order);
+        final long riceBits = planRice(n, order);
+        final long verbatimBits = (long) n * bps;
+        if (riceBits < 0 || riceBits >= verbatimBits) {
+            bits.write(8, 1 << 1); // VERBATIM
+            for (int i = 0; i < n; i++) bits.writeSigned(bps, x[i]);
+            return;
+        }
+
+        bits.write(8, (8 | order) << 1); // FIXED
+        for (int i = 0; i < order; i++) bits.writeSigned(bps, x[i]);
+        writeResidual(n, order);
+    }
+
+    private void computeResidual(int[] x, int n, int order) {
+        final int[] r = mResidual;
+        switch (order) {
+            case 0 -> System.arraycopy(x, 0, r, 0, n);
+            case 1 -> {
+                for (int i = 1; i < n; i++) r[i] = x[i] - x[i - 1];
+            }
+            case 2 -> {
+                for (int i = 2; i < n; i++) r[i] = x[i] - 2 * x[i - 1] + x[i - 2];
+            }
+            case 3 -> {
+                for (int i = 3; i < n; i++)
+                    r[i] = x[i] - 3 * x[i - 1] + 3 * x[i - 2] - x[i - 3];
+            }
+            default -> {
+                for (int i = 4; i < n; i++)
+                    r[i] = x[i] - 4 * x[i - 1] + 6 * x[i - 2] - 4 * x[i - 3] + x[i - 4];
+            }
+        }
+    }
+
+    // chosen by planRice()
+    private int mPartitionOrder;
+    private int mRiceMethod;
+
+    /**
+     * Picks the partition order & Rice parameters for the residual
+     * @return the estimated size of the coded residual in bits
+     */
+    private long planRice(int n, int predictorOrder) {
+        // the largest order that evenly splits the block and leaves room for the warmup
+        int maxOrder = 0;
+        while (maxOrder < MAX_PARTITION_ORDER && (n & ((2 << maxOrder) - 1)) == 0
+                && (n >> (maxOrder + 1)) > predictorOrder) {
+            maxOrder++;
+        }
+
+        // sums of the folded residual in the smallest partitions
+        final int[] r = mResidual;
+        final long[] sums = mPartitionSums;
+        final int partitions = 1 << maxOrder;
+        final int partSize = n >> maxOrder;
+        for (int p = 0; p < partitions; p++) {
+            final int start = p == 0 ? predictorOrder : p * partSize;
+            final int end = (p + 1) * partSize;
+            long sum = 0;
+            for (int i = start; i < end; i++) sum += fold(r[i]);
+            sums[p] = sum;
+        }
+
+        long bestBits = -1;
+        for (int order = maxOrder; order >= 0; order--) {
+            final int count = 1 << order;
+            final int size = n >> order;
+            long total = 0;
+            int maxParam = 0;
+            for (int p = 0; p < count; p++) {
+                if (order != maxOrder) sums[p] = sums[2 * p] + sums[2 * p + 1];
+                final int samples = p == 0 ? size - predictorOrder : size;
+                final int k = riceParam(sums[p], samples);
+                maxParam = Math.max(maxParam, k);
+                total += (long) samples * (k + 1) + (sums[p] >>> k);
+            }
+            total += count * (maxParam > 14 ? 5L : 4L) + 2 + 4;
+            if (bestBits >= 0 && total >= bestBits) continue;
+            bestBits = total;
+            mPartitionOrder = order;
+            mRiceMethod = maxParam > 14 ? 1 : 0;
+            // the sums of this order are overwritten by the next one, keep the params
+            for (int p = 0; p < count; p++) {
+                final int samples = p == 0 ? size - predictorOrder : size;
+                mRiceParams[p] = riceParam(sums[p], samples);
+            }
+        }
+        return bestBits + (long) predictorOrder * 32;
+    }
+
+    private void writeResidual(int n, int predictorOrder) {
+        final BitWriter bits = mBits;
+        final int[] r = mResidual;
+        final int order = mPartitionOrder;
+        final int size = n >> order;
+        bits.write(2, mRiceMethod);
+        bits.write(4, order);
+        final int paramBits = mRiceMethod == 1 ? 5 : 4;
+        for (int p = 0; p < 1 << order; p++) {
+            final int k = mRiceParams[p];
+            bits.write(paramBits, k);
+            final int start = p == 0 ? predictorOrder : p * size;
+            final int end = (p + 1) * size;
+            for (int i = start; i < end; i++) bits.writeRice(fold(r[i]), k);
+        }
+    }
+
+    private static long fold(int residual) {
+        final long value = residual;
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static int riceParam(long sum, int samples) {
+        if (samples <= 0 || sum <= samples) return 0;
+        final long mean = sum / samples;
+        final int k = 63 - Long.numberOfLeadingZeros(mean);
+        return Math.min(k, 30);
+    }
+
+    private void writeMetadata() throws IOException {
+        ByteBuffer meta = ByteBuffer.allocate(FIRST_FRAME_OFFSET).order(ByteOrder.BIG_ENDIAN);
+        meta.put(new byte[] { 'f', 'L', 'a', 'C' });
+
+        /* STREAMINFO */
+        meta.putInt(34); // not last, type 0
+        final int minBlock = mMaxBlockSize == 0 ? BLOCK_SIZE : Math.max(16, mMinBlockSize);
+        final int maxBlock = mMaxBlockSize == 0 ? BLOCK_SIZE : Math.max(16, mMaxBlockSize);
+        meta.putShort((short) minBlock);
+        meta.putShort((short) maxBlock);
+        final int minFrame = mMaxFrameSize == 0 ? 0 : mMinFrameSize;
+        put24(meta, minFrame);
+        put24(meta, mMaxFrameSize);
+        // 20 bits rate, 3 bits channels - 1, 5 bits bps - 1, 36 bits total samples
+        meta.putLong((long) mSampleRate << 44
+                | (long) (mChannels - 1) << 41
+                | (long) (mBitsPerSample - 1) << 36
+                | mTotalSamples & 0xFFFFFFFFFL);
+        // only known once done, the placeholder of zeros means unknown
+        final byte[] md5 = mTotalSamples > 0 ? mMd5.digest() : new byte[16];
+        meta.put(md5);
+
+        /* SEEKTABLE, last metadata block */
+        meta.putInt(1 << 31 | 3 << 24 | SEEK_POINTS * 18);
+        for (int i = 0; i < SEEK_POINTS; i++) {
+            if (i < mSeekCount) {
+                meta.putLong(mSeekSamples[i]);
+                meta.putLong(mSeekOffsets[i]);
+                meta.putShort((short) mSeekFrameSamples[i]);
+                continue;
+            }
+            meta.putLong(-1L); // placeholder
+            meta.putLong(0);
+            meta.putShort((short) 0);
+        }
+        meta.flip();
+        long pos = 0;
+        while (meta.hasRemaining())
+            pos += mChannel.write(meta, pos);
+    }
+
+    private static void put24(ByteBuffer buffer, int value) {
+        buffer.put((byte) (value >> 16));
+        buffer.put((byte) (value >> 8));
+        buffer.put((byte) value);
+    }
+
+    private static int sampleRateCode(int rate) {
+        return switch (rate) {
+            case 88200 -> 1;
+            case 176400 -> 2;
+            case 192000 -> 3;
+            case 8000 -> 4;
+            case 16000 -> 5;
+            case 22050 -> 6;
+            case 24000 -> 7;
+            case 32000 -> 8;
+            case 44100 -> 9;
+            case 48000 -> 10;
+            case 96000 -> 11;
+            default -> 0; // from STREAMINFO
+        };
+    }
+
+    private static int sampleSizeCode(int bps) {
+        return switch (bps) {
+            case 8 -> 1;
+            case 16 -> 4;
+            default -> 6; // 24
+        };
+    }
+
+    /**
+     * MSB first bit writer into a growing byte array
+     */
+    private static class BitWriter {
+        private byte[] mBuffer;
+        private int mBytePos = 0;
+        private long mAcc = 0;
+        private int mAccBits = 0;
+
+        BitWriter(int capacity) {
+            mBuffer = new byte[capacity];
+        }
+
+        void reset() {
+            mBytePos = 0;
+            mAcc = 0;
+            mAccBits = 0;
+        }
+
+        byte[] getBuffer() {
+            return mBuffer;
+        }
+
+        /**
+         * @return the number of whole bytes written, call after aligning
+         */
+        int getBytePosition() {
+            return mBytePos;
+        }
+
+        /**
+         * @param count number of bits, up to 32
+         * @param value the bits to write in the lowest bits
+         */
+        void write(int count, long value) {
+            if (count == 0) return;
+            mAcc = mAcc << count | value & ((1L << count) - 1);
+            mAccBits += count;
+            if (mBytePos + 8 > mBuffer.length) grow();
+            while (mAccBits >= 8) {
+                mAccBits -= 8;
+                mBuffer[mBytePos++] = (byte) (mAcc >>> mAccBits);
+            }
+        }
+
+        void writeSigned(int count, int value) {
+            write(count, value);
+        }
+
+        void writeRice(long folded, int k) {
+            final long q = folded >>> k;
+            if (q + 1 + k <= 32) {
+                write((int) q + 1 + k, 1L << k | folded & ((1L << k) - 1));
+                return;
+            }
+            for (long zeros = q; zeros > 0; ) {
+                final int chunk = (int) Math.min(zeros, 32);
+                write(chunk, 0);
+                zeros -= chunk;
+            }
+            write(1, 1);
+            write(k, folded);
+        }
+
+        void writeUtf8(long value) {
+            if (value < 0x80) {
+                write(8, value);
+                return;
+            }
+            int extra = value < 0x800 ? 1 : value < 0x10000 ? 2 : value < 0x200000 ? 3
+                    : value < 0x4000000 ? 4 : 5;
+            final int lead = (0xFF00 >> (extra + 1)) & 0xFF;
+            write(8, lead | value >>> (6 * extra));
+            while (extra-- > 0)
+                write(8, 0x80 | (value >>> (6 * extra)) & 0x3F);
+        }
+
+        void alignToByte() {
+            if (mAccBits > 0) write(8 - mAccBits, 0);
+        }
+
+        private void grow() {
+            final byte[] bigger = new byte[mBuffer.length * 2];
+            System.arraycopy(mBuffer, 0, bigger, 0, mBytePos);
+            mBuffer = bigger;
+        }
+    }
+
+    /**
+     * FLAC header & frame checksums
+     */
+    static final class Crc {
+        private static final int[] CRC8 = new int[256];
+        private static final int[] CRC16 = new int[256];
+
+        static {
+            for (int i = 0; i < 256; i++) {
+                int c8 = i;
+                int c16 = i << 8;
+                for (int b = 0; b < 8; b++) {
+                    c8 = (c8 & 0x80) != 0 ? (c8 << 1) ^ 0x07 : c8 << 1;
+                    c16 = (c16 & 0x8000) != 0 ? (c16 << 1) ^ 0x8005 : c16 << 1;
+                }
+                CRC8[i] = c8 & 0xFF;
+                CRC16[i] = c16 & 0xFFFF;
+            }
+        }
+
+        static int crc8(byte[] data, int offset, int length) {
+            int crc = 0;
+            for (int i = offset; i < offset + length; i++)
+                crc = CRC8[(crc ^ data[i]) & 0xFF];
+            return crc;
+        }
+
+        static int crc16(byte[] data, int offset, int length) {
+            int crc = 0;
+            for (int i = offset; i < offset + length; i++)
+                crc = ((crc << 8) ^ CRC16[((crc >> 8) ^ data[i]) & 0xFF]) & 0xFFFF;
+            return crc;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2023 Ido Ben-Hur
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.idoybh.yasr;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Peak and RMS level of captured PCM, measured in place right after every read.
+ * Levels accumulate from one {@link #take()} to the next, on a 16 bit scale
+ * like {@link android.media.MediaRecorder#getMaxAmplitude()}.
+ * Measured by a single thread and read from any other without locking or allocating,
+ * a lost update only costs a single meter refresh.
+ * Can also feed a {@link PeakHistory} in the same pass
+ */
+class LevelMeter {
+    static final int MAX = 32768;
+
+    private final int mBits;
+    private int mPeak = 0;
+    private long mSumSquares = 0;
+    private long mSamples = 0;
+    private volatile int mPublishedPeak = 0;
+    private volatile int mPublishedRms = 0;
+    private volatile boolean mTaken = false;
+    private volatile PeakHistory mHistory;
+    private volatile int mColumnSamples = 1;
+    private int mColumnMin = Integer.MAX_VALUE;
+    private int mColumnMax = Integer.MIN_VALUE;
+    private int mColumnCount = 0;
+
+    /**
+     * @param bits the bit depth of the measured PCM, 8 bit is unsigned
+     */
+    LevelMeter(int bits) {
+        mBits = bits;
+    }
+
+    /**
+     * @param history the history to push the measured columns to, null stops
+     * @param columnSamples the number of samples that make a column,
+     *                      see {@link PeakHistory#getColumnSamples(int, int)}
+     */
+    void setHistory(PeakHistory history, int columnSamples) {
+        mColumnSamples = columnSamples;
+        mHistory = history;
+    }
+
+    /**
+     * Capture side - measure a read
+     * @param pcm little-endian PCM, its position is left untouched
+     */
+    void measure(ByteBuffer pcm) {
+        if (mTaken) {
+            mTaken = false;
+            mPeak = 0;
+            mSumSquares = 0;
+            mSamples = 0;
+        }
+        final int bytes = mBits / 8;
+        int peak = mPeak;
+        long sumSquares = mSumSquares;
+        final PeakHistory history = mHistory;
+        final int columnSamples = mColumnSamples;
+        int columnMin = mColumnMin;
+        int columnMax = mColumnMax;
+        int columnCount = mColumnCount;
+        int pos = pcm.position();
+        final int start = pos;
+        for (final int limit = pcm.limit(); pos + bytes <= limit; pos += bytes) {
+            final int sample = getSample(pcm, pos, mBits);
+            final int abs = sample < 0 ? -sample : sample;
+            if (abs > peak) peak = abs;
+            sumSquares += sample * sample;
+            if (history == null) continue;
+            if (sample < columnMin) columnMin = sample;
+            if (sample > columnMax) columnMax = sample;
+            if (++columnCount < columnSamples) continue;
+            history.push(columnMin, columnMax);
+            columnMin = Integer.MAX_VALUE;
+            columnMax = Integer.MIN_VALUE;
+            columnCount = 0;
+        }
+        mPeak = peak;
+        mSumSquares = sumSquares;
+        mColumnMin = columnMin;
+        mColumnMax = columnMax;
+        mColumnCount = columnCount;
+        mSamples += (pos - start) / bytes;
+        if (mSamples == 0) return;
+        mPublishedPeak = peak;
+        mPublishedRms = (int) Math.sqrt((double) sumSquares / mSamples);
+    }
+
+    /**
+     * @param pcm little-endian PCM, 8 bit is unsigned
+     * @param pos the absolute position of the sample
+     * @param bits the bit depth
+     * @return the sample on a 16 bit scale, lower bits don't move a meter
+     */
+    static int getSample(ByteBuffer pcm, int pos, int bits) {
+        return switch (bits) {
+            case 8 -> ((pcm.get(pos) & 0xFF) - 128) << 8;
+            case 16 -> pcm.get(pos) & 0xFF | pcm.get(pos + 1) << 8;
+            case 24 -> pcm.get(pos + 1) & 0xFF | pcm.get(pos + 2) << 8;
+            default -> pcm.get(pos + 2) & 0xFF | pcm.get(pos + 3) << 8;
+        };
+    }
+
+    /**
+     * @return the highest absolute sample value since the last {@link #take()}, up to {@link #MAX}
+     */
+    int getPeak() {
+        return mPublishedPeak;
+    }
+
+    /**
+     * @return the root mean square of the samples since the last {@link #take()}
+     */
+    int getRms() {
+        return mPublishedRms;
+    }
+
+    /**
+     * Reader side - start a new measuring period, levels read 0 until something is measured
+     */
+    void take() {
+        mPublishedPeak = 0;
+        mPublishedRms = 0;
+        mTaken = true;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2023 Ido Ben-Hur
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.idoybh.yasr;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Persistent metadata of the recordings library, so a recording is only probed
+ * when it's new or changed. Entries are keyed by file name and valid as long as
+ * the file's size and modification time match what they were probed with.
+ * Loaded once and saved only when something changed
+ */
+final class LibraryIndex {
+    static final String FILE_NAME = "library.idx";
+    private static final int MAGIC = 0x59494458; // "YIDX"
+    private static final int VERSION = 1;
+
+    private final File mFile;
+    private final Map<String, Entry> mEntries = new HashMap<>();
+    private boolean mLoaded = false;
+    private boolean mDirty = false;
+
+    static final class Entry {
+        final long size;
+        final long lastModified;
+        final long duration; // ms
+
+        Entry(long size, long lastModified, long duration) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.duration = duration;
+        }
+    }
+
+    /**
+     * @param file where the index is kept, e.g. in {@link android.content.Context#getNoBackupFilesDir()}
+     */
+    LibraryIndex(File file) {
+        mFile = file;
+    }
+
+    /**
+     * Reads the index if not done yet, an unreadable one starts empty
+     */
+    synchronized void load() {
+        if (mLoaded) return;
+        mLoaded = true;
+        if (!mFile.exists()) return;
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(mFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                mDirty = true;
+                return;
+            }
+            final int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                final String name = in.readUTF();
+                mEntries.put(name, new Entry(in.readLong(), in.readLong(), in.readLong()));
+            }
+        } catch (EOFException | UTFDataFormatException e) {
+            System.err.println("Corrupt library index, starting empty: " + e);
+            mEntries.clear();
+            mDirty = true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            mEntries.clear();
+            mDirty = true;
+        }
+    }
+
+    /**
+     * @param name the recording's file name
+     * @param size its current size
+     * @param lastModified its current modification time
+     * @return its entry, null if unknown or the file changed since
+     */
+    synchronized Entry get(String name, long size, long lastModified) {
+        final Entry entry = mEntries.get(name);
+        if (entry == null || entry.size != size || entry.lastModified != lastModified)
+            return null;
+        return entry;
+    }
+
+    synchronized void put(String name, long size, long lastModified, long duration) {
+        mEntries.put(name, new Entry(size, lastModified, duration));
+        mDirty = true;
+    }
+
+    /**
+     * Keeps a renamed recording's entry, renaming doesn't change the file
+     */
+    synchronized void rename(String from, String to) {
+        final Entry entry = mEntries.remove(from);
+        if (entry == null) return;
+        mEntries.put(to, entry);
+        mDirty = true;
+    }
+
+    synchronized void remove(String name) {
+        if (mEntries.remove(name) != null) mDirty = true;
+    }
+
+    /**
+     * Drops the entries of recordings that no longer exist
+     * @param names the file names of all existing recordings
+     */
+    synchronized void retain(Set<String> names) {
+        if (mEntries.keySet().retainAll(names)) mDirty = true;
+    }
+
+    synchronized int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * Writes the index if it changed, replacing the old one at once
+     * @throws IOException if writing failed, the old index is left as is
+     */
+    synchronized void save() throws IOException {
+        if (!mDirty) return;
+        final File tmp = new File(mFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(mEntries.size());
+            for (Map.Entry<String, Entry> e : mEntries.entrySet()) {
+                final Entry entry = e.getValue();
+                out.writeUTF(e.getKey());
+                out.writeLong(entry.size);
+                out.writeLong(entry.lastModified);
+                out.writeLong(entry.duration);
+            }
+        }
+        if (!tmp.renameTo(mFile)) throw new IOException("Can't replace " + mFile);
+        mDirty = false;
+    }
+}
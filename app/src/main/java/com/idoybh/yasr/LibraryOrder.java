@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2023 Ido Ben-Hur
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.idoybh.yasr;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * The library's items sorted by each sort mode, each order is sorted once and then kept
+ * sorted as items come and go. Items are sorted by keys read once per item and sort,
+ * a number or a comparable such as a collation key, so they may change while sorting.
+ * A reversed order is a view of the sorted one.
+ * Not thread safe but {@link #sort(int, List)}
+ * @param <T> the sorted items, told apart by identity
+ */
+final class LibraryOrder<T> {
+    private final Map<Integer, Mode<T>> mModes = new HashMap<>();
+    private final List<T> mItems = new ArrayList<>();
+    private int mVersion = 0;
+
+    private abstract static class Mode<T> {
+        final Comparator<T> comparator;
+        List<T> sorted; // null until sorted
+        List<T> reversed;
+
+        Mode(Comparator<T> comparator) {
+            this.comparator = comparator;
+        }
+
+        /**
+         * Reads the key of every item once
+         * @return compares the items at two indices by their keys
+         */
+        abstract IndexComparator readKeys(List<T> items);
+    }
+
+    private static final class LongMode<T> extends Mode<T> {
+        private final ToLongFunction<T> mKey;
+
+        LongMode(ToLongFunction<T> key) {
+            super(Comparator.comparingLong(key));
+            mKey = key;
+        }
+
+        @Override
+        IndexComparator readKeys(List<T> items) {
+            final long[] keys = new long[items.size()];
+            for (int i = 0; i < keys.length; i++) keys[i] = mKey.applyAsLong(items.get(i));
+            return (a, b) -> Long.compare(keys[a], keys[b]);
+        }
+    }
+
+    private static final class KeyMode<T, K extends Comparable<K>> extends Mode<T> {
+        private final Function<T, K> mKey;
+
+        KeyMode(Function<T, K> key) {
+            super(Comparator.comparing(key));
+            mKey = key;
+        }
+
+        @Override
+        IndexComparator readKeys(List<T> items) {
+            final List<K> keys = new ArrayList<>(items.size());
+            for (T item : items) keys.add(mKey.apply(item));
+            return (a, b) -> keys.get(a).compareTo(keys.get(b));
+        }
+    }
+
+    /**
+     * @param key the item's key for that sort mode
+     */
+    void addLongMode(int mode, ToLongFunction<T> key) {
+        mModes.put(mode, new LongMode<>(key));
+    }
+
+    /**
+     * @param key the item's key for that sort mode
+     */
+    <K extends Comparable<K>> void addMode(int mode, Function<T, K> key) {
+        mModes.put(mode, new KeyMode<>(key));
+    }
+
+    /**
+     * @return all items in the order they were added, changed as they come and go
+     */
+    List<T> getItems() {
+        return mItems;
+    }
+
+    /**
+     * @return a number changing whenever items come or go
+     */
+    int getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * @return the items sorted by the mode, null if they aren't yet. The list is kept
+     * sorted as items come and go until the mode is invalidated, never change it
+     */
+    List<T> get(int mode, boolean reverse) {
+        final Mode<T> m = mModes.get(mode);
+        if (m == null || m.sorted == null) return null;
+        return reverse ? m.reversed : m.sorted;
+    }
+
+    /**
+     * @return an order by the mode's current keys
+     */
+    Comparator<T> getComparator(int mode, boolean reverse) {
+        final Comparator<T> comparator = mModes.get(mode).comparator;
+        return reverse ? comparator.reversed() : comparator;
+    }
+
+    /**
+     * Sorts items by the mode, any thread
+     * @param items the items, not changed
+     * @return the items sorted, stable
+     */
+    List<T> sort(int mode, List<T> items) {
+        final int size = items.size();
+        final int[] order = new int[size];
+        for (int i = 0; i < size; i++) order[i] = i;
+        mergeSort(order, mModes.get(mode).readKeys(items));
+        final List<T> sorted = new ArrayList<>(size);
+        for (int i : order) sorted.add(items.get(i));
+        return sorted;
+    }
+
+    /**
+     * Keeps an order made by {@link #sort(int, List)}
+     * @param version the {@link #getVersion()} of the items it sorted
+     * @return whether it was kept, not if items came or went since
+     */
+    boolean put(int mode, List<T> sorted, int version) {
+        if (version != mVersion) return false;
+        final Mode<T> m = mModes.get(mode);
+        m.sorted = sorted;
+        m.reversed = new Reversed<>(sorted);
+        return true;
+    }
+
+    /**
+     * Drops an order whose keys changed
+     */
+    void invalidate(int mode) {
+        final Mode<T> m = mModes.get(mode);
+        m.sorted = null;
+        m.reversed = null;
+    }
+
+    void add(T item) {
+        mItems.add(item);
+        for (Mode<T> m : mModes.values()) {
+            if (m.sorted == null) continue;
+            int position = Collections.binarySearch(m.sorted, item, m.comparator);
+            if (position < 0) position = -position - 1;
+            m.sorted.add(position, item);
+        }
+        mVersion++;
+    }
+
+    void remove(T item) {
+        if (!removeIdentical(mItems, item)) return;
+        for (Mode<T> m : mModes.values()) {
+            if (m.sorted != null) removeIdentical(m.sorted, item);
+        }
+        mVersion++;
+    }
+
+    private static <T> boolean removeIdentical(List<T> list, T item) {
+        for (int i = list.size() - 1; i >= 0; i--) {
+            if (list.get(i) != item) continue;
+            list.remove(i);
+            return true;
+        }
+        return false;
+    }
+
+    private interface IndexComparator {
+        int compare(int a, int b);
+    }
+
+    private static void mergeSort(int[] order, IndexComparator comparator) {
+        final int[] buffer = new int[order.length];
+        int[] from = order, to = buffer;
+        for (int width = 1; width < order.length; width *= 2) {
+            for (int lo = 0; lo < order.length; lo += width * 2) {
+                final int mid = Math.min(lo + width, order.length);
+                final int hi = Math.min(lo + width * 2, order.length);
+                int i = lo, j = mid, k = lo;
+                while (i < mid && j < hi)
+                    to[k++] = comparator.compare(from[j], from[i]) < 0 ? from[j++] : from[i++];
+                while (i < mid) to[k++] = from[i++];
+                while (j < hi) to[k++] = from[j++];
+            }
+            final int[] swap = from;
+            from = to;
+            to = swap;
+        }
+        if (from != order) System.arraycopy(from, 0, order, 0, order.length);
+    }
+
+    private static final class Reversed<T> extends AbstractList<T> implements RandomAccess {
+        private final List<T> mList;
+
+        Reversed(List<T> list) {
+            mList = list;
+        }
+
+        @Override
+        public T get(int index) {
+            return mList.get(mList.size() - 1 - index);
+        }
+
+        @Override
+        public int size() {
+            return mList.size();
+        }
+    }
+}
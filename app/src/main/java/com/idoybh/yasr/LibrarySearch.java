@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2023 Ido Ben-Hur
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.idoybh.yasr;
+
+import java.text.Normalizer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Substring search over the names of the library for the filter box.
+ * Names are folded once when added, fresh queries look up the rarest of their trigrams
+ * and a query extending the previous one only narrows its results, the results of
+ * the queries it extended are kept so deleting characters is free as well.
+ * Results come in the order given to {@link #search(String, List)}
+ * @param <T> the searched items, told apart by identity
+ */
+final class LibrarySearch<T> {
+    private static final int GRAM = 3;
+
+    private final Map<T, Integer> mSlots = new IdentityHashMap<>();
+    private final List<T> mItems = new ArrayList<>(); // by slot, null once removed
+    private final List<String> mNames = new ArrayList<>(); // folded, by slot
+    private GramIndex mIndex; // built on the first query that needs it
+    private int mVersion = 0;
+
+    // the last queries, each extending the one below it
+    private final Deque<Result<T>> mHistory = new ArrayDeque<>();
+    private List<T> mOrder;
+    private int[] mOrderSlots; // slots of mOrder, -1 for unknown items
+    private int mOrderVersion;
+
+    /**
+     * @param slots the matching slots in order
+     */
+    private record Result<T>(String query, int[] slots, List<T> items) {}
+
+    /**
+     * Case and accent insensitive form of a name or query
+     */
+    static String fold(String s) {
+        boolean ascii = true;
+        for (int i = 0; i < s.length() && ascii; i++) ascii = s.charAt(i) < 0x80;
+        if (ascii) return s.toLowerCase(Locale.ROOT);
+        return Normalizer.normalize(s, Normalizer.Form.NFD)
+                .replaceAll("\\p{M}", "").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Adds an item or renames it if it's there
+     */
+    void add(T item, String name) {
+        remove(item);
+        final int slot = mItems.size();
+        final String folded = fold(name);
+        mSlots.put(item, slot);
+        mItems.add(item);
+        mNames.add(folded);
+        if (mIndex != null) mIndex.add(slot, folded);
+        mVersion++;
+    }
+
+    void remove(T item) {
+        final Integer slot = mSlots.remove(item);
+        if (slot == null) return;
+        // stale postings are skipped, an item isn't found under a removed slot
+        mItems.set(slot, null);
+        mNames.set(slot, null);
+        mVersion++;
+    }
+
+    /**
+     * @param query folded with {@link #fold(String)}, null matches all
+     */
+    boolean matches(T item, String query) {
+        if (query == null) return true;
+        final Integer slot = mSlots.get(item);
+        return slot != null && mNames.get(slot).contains(query);
+    }
+
+    /**
+     * @param query folded with {@link #fold(String)}, null matches all
+     * @param order the items to search in the order they're wanted, kept as the same list
+     *              while it doesn't change so later queries can narrow earlier results
+     * @return the matching items in that order, a new list never changed after
+     */
+    List<T> search(String query, List<T> order) {
+        if (query == null || query.isEmpty()) return new ArrayList<>(order);
+        if (order != mOrder || mVersion != mOrderVersion) {
+            mHistory.clear();
+            mOrder = order;
+            mOrderVersion = mVersion;
+            mOrderSlots = new int[order.size()];
+            for (int i = 0; i < mOrderSlots.length; i++) {
+                final Integer slot = mSlots.get(order.get(i));
+                mOrderSlots[i] = slot != null ? slot : -1;
+            }
+        }
+        while (!mHistory.isEmpty() && !query.contains(mHistory.peek().query())) mHistory.pop();
+        final Result<T> last = mHistory.peek();
+        if (last != null && last.query().equals(query)) return last.items();
+        final int[] slots = last != null ? narrow(last.slots(), query) : find(query);
+        final List<T> items = new ArrayList<>(slots.length);
+        for (int slot : slots) items.add(mItems.get(slot));
+        mHistory.push(new Result<>(query, slots, items));
+        return items;
+    }
+
+    private int[] narrow(int[] slots, String query) {
+        final int[] narrowed = new int[slots.length];
+        int count = 0;
+        for (int slot : slots) {
+            if (mNames.get(slot).contains(query)) narrowed[count++] = slot;
+        }
+        return Arrays.copyOf(narrowed, count);
+    }
+
+    private int[] find(String query) {
+        final int[] found = new int[mOrderSlots.length];
+        int count = 0;
+        if (query.length() < GRAM) {
+            for (int slot : mOrderSlots) {
+                if (slot != -1 && mNames.get(slot).contains(query)) found[count++] = slot;
+            }
+            return Arrays.copyOf(found, count);
+        }
+        if (mIndex == null) {
+            mIndex = new GramIndex();
+            for (int slot = 0; slot < mNames.size(); slot++) {
+                if (mNames.get(slot) != null) mIndex.add(slot, mNames.get(slot));
+            }
+        }
+        // only names holding the rarest trigram of the query are checked
+        int rarest = -1;
+        int rarestCount = Integer.MAX_VALUE;
+        for (int i = 0; i + GRAM <= query.length(); i++) {
+            final int gram = mIndex.find(GramIndex.key(query, i), false);
+            if (gram == -1) return new int[0]; // no name has it
+            if (mIndex.mCounts[gram] < rarestCount) {
+                rarest = gram;
+                rarestCount = mIndex.mCounts[gram];
+            }
+        }
+        final boolean[] matched = new boolean[mItems.size()];
+        final int[] postings = mIndex.mPostings[rarest];
+        for (int i = 0; i < rarestCount; i++) {
+            final String name = mNames.get(postings[i]);
+            if (name != null && name.contains(query)) matched[postings[i]] = true;
+        }
+        for (int slot : mOrderSlots) {
+            if (slot != -1 && matched[slot]) found[count++] = slot;
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    /**
+     * Slots of the names holding each trigram, in an open addressed table
+     */
+    private static final class GramIndex {
+        private static final long EMPTY = -1;
+        private long[] mKeys = new long[1 << 10];
+        private int[] mGrams = new int[1 << 10];
+        private int[][] mPostings = new int[1 << 9][];
+        private int[] mCounts = new int[1 << 9];
+        private int mSize = 0;
+
+        GramIndex() {
+            Arrays.fill(mKeys, EMPTY);
+        }
+
+        static long key(String s, int pos) {
+            return (long) s.charAt(pos) << 32 | (long) s.charAt(pos + 1) << 16 | s.charAt(pos + 2);
+        }
+
+        void add(int slot, String name) {
+            for (int i = 0; i + GRAM <= name.length(); i++) {
+                final int gram = find(key(name, i), true);
+                final int count = mCounts[gram];
+                if (count > 0 && mPostings[gram][count - 1] == slot) continue; // repeated
+                if (count == mPostings[gram].length)
+                    mPostings[gram] = Arrays.copyOf(mPostings[gram], count * 2);
+                mPostings[gram][count] = slot;
+                mCounts[gram]++;
+            }
+        }
+
+        /**
+         * @return the trigram's number, -1 if it isn't there and not created
+         */
+        int find(long key, boolean create) {
+            final int mask = mKeys.length - 1;
+            int i = Long.hashCode(key * 0x9E3779B97F4A7C15L) & mask;
+            while (mKeys[i] != EMPTY) {
+                if (mKeys[i] == key) return mGrams[i];
+                i = (i + 1) & mask;
+            }
+            if (!create) return -1;
+            if (mSize == mPostings.length) {
+                mPostings = Arrays.copyOf(mPostings, mSize * 2);
+                mCounts = Arrays.copyOf(mCounts, mSize * 2);
+            }
+            mPostings[mSize] = new int[4];
+            mKeys[i] = key;
+            mGrams[i] = mSize;
+            if (++mSize * 2 > mKeys.length) grow();
+            return mSize - 1;
+        }
+
+        private void grow() {
+            final long[] keys = mKeys;
+            final int[] grams = mGrams;
+            mKeys = new long[keys.length * 2];
+            mGrams = new int[keys.length * 2];
+            Arrays.fill(mKeys, EMPTY);
+            final int mask = mKeys.length - 1;
+            for (int j = 0; j < keys.length; j++) {
+                if (keys[j] == EMPTY) continue;
+                int i = Long.hashCode(keys[j] * 0x9E3779B97F4A7C15L) & mask;
+                while (mKeys[i] != EMPTY) i = (i + 1) & mask;
+                mKeys[i] = keys[j];
+                mGrams[i] = grams[j];
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2023 Ido Ben-Hur
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.idoybh.yasr;
+
+import android.annotation.SuppressLint;
+import android.media.AudioDeviceInfo;
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+import android.os.Process;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Keeps the microphone open while idle to show its level
+ * and to keep a {@link PreRollBuffer} of the moments before recording starts.
+ * A single thread reads into one reused buffer and measures it in place,
+ * so monitoring runs no encoder, writes no file and allocates nothing per read.
+ * Should be released once recording starts, the capture has its own {@link LevelMeter}
+ */
+class MicMonitor {
+    private static final int READ_MS = 20;
+
+    private final AudioRecord mRecorder;
+    private final PreRollBuffer mPreRoll;
+    private final LevelMeter mMeter = new LevelMeter(PreRollBuffer.BITS);
+    private final ByteBuffer mBuffer;
+    private final Thread mThread = new Thread(this::readLoop, "MicMonitorThread");
+    private volatile boolean mRunning = false;
+
+    /**
+     * @param device the device to monitor
+     * @param sampleRate the sampling rate to monitor at, should match the recording's
+     * @param channels the number of channels, should match the recording's
+     * @param preRollSeconds the duration of audio to keep, 0 to only measure the level
+     * @throws UnsupportedOperationException if the microphone can't be opened
+     */
+    @SuppressLint("MissingPermission")
+    MicMonitor(AudioDeviceInfo device, int sampleRate, int channels, int preRollSeconds) {
+        final int mask = channels > 1
+                ? AudioFormat.CHANNEL_IN_STEREO : AudioFormat.CHANNEL_IN_MONO;
+        final int encoding = AudioFormat.ENCODING_PCM_16BIT;
+        mPreRoll = new PreRollBuffer(preRollSeconds, sampleRate, channels);
+        final int frameSize = mPreRoll.getFrameSize();
+        final int readSize = Math.max(frameSize, sampleRate * READ_MS / 1000 * frameSize);
+        final int bufferSize = Math.max(readSize * 2,
+                AudioRecord.getMinBufferSize(sampleRate, mask, encoding));
+        mRecorder = new AudioRecord.Builder()
+                .setAudioSource(MediaRecorder.AudioSource.MIC)
+                .setAudioFormat(new AudioFormat.Builder()
+                        .setSampleRate(sampleRate)
+                        .setChannelMask(mask)
+                        .setEncoding(encoding).build())
+                .setBufferSizeInBytes(bufferSize)
+                .build();
+        mRecorder.setPreferredDevice(device);
+        mBuffer = ByteBuffer.allocateDirect(readSize).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * @throws IllegalStateException if the microphone is in use
+     */
+    void start() {
+        mRecorder.startRecording();
+        if (mRecorder.getRecordingState() != AudioRecord.RECORDSTATE_RECORDING) {
+            mRecorder.release();
+            throw new IllegalStateException("Microphone is in use");
+        }
+        mRunning = true;
+        mThread.start();
+    }
+
+    void release() {
+        mRunning = false;
+        mRecorder.stop(); // unblocks a pending read
+        try {
+            mThread.join();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+        mRecorder.release();
+    }
+
+    LevelMeter getLevelMeter() {
+        return mMeter;
+    }
+
+    PreRollBuffer getPreRoll() {
+        return mPreRoll;
+    }
+
+    private void readLoop() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_AUDIO);
+        while (mRunning) {
+            mBuffer.clear();
+            final int read = mRecorder.read(mBuffer, mBuffer.capacity());
+            if (read < 0) break; // the device is gone
+            mBuffer.limit(read);
+            mMeter.measure(mBuffer);
+            mPreRoll.write(mBuffer);
+        }
+    }
+}
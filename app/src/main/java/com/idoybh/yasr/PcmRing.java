@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2023 Ido Ben-Hur
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.idoybh.yasr;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single-producer / single-consumer lock-free ring of pooled PCM buffers.
+ * The producer claims a free slot, fills it and publishes it.
+ * The consumer peeks published slots in order and releases them once written.
+ * All slots are slices of one direct buffer allocated on construction
+ */
+class PcmRing {
+    private final ByteBuffer[] mSlots;
+    private final int mMask;
+    private final AtomicLong mHead = new AtomicLong(); // next slot to publish, producer owned
+    private final AtomicLong mTail = new AtomicLong(); // next slot to consume, consumer owned
+    private volatile int mMaxFill = 0;
+    private volatile long mOverruns = 0;
+
+    /**
+     * @param slots number of buffers in the ring, rounded up to a power of 2
+     * @param slotSize size of each buffer in bytes
+     */
+    PcmRing(int slots, int slotSize) {
+        final int capacity = slots <= 2 ? 2 : Integer.highestOneBit(slots - 1) << 1;
+        final ByteBuffer memory = ByteBuffer.allocateDirect(capacity * slotSize);
+        mSlots = new ByteBuffer[capacity];
+        for (int i = 0; i < capacity; i++) {
+            memory.limit((i + 1) * slotSize).position(i * slotSize);
+            mSlots[i] = memory.slice().order(ByteOrder.LITTLE_ENDIAN);
+        }
+        mMask = capacity - 1;
+    }
+
+    int getCapacity() {
+        return mSlots.length;
+    }
+
+    int getSlotSize() {
+        return mSlots[0].capacity();
+    }
+
+    /**
+     * Producer side - get the next free buffer
+     * @return the cleared buffer to fill or null when the ring is full
+     */
+    ByteBuffer claim() {
+        final long head = mHead.get();
+        if (head - mTail.get() >= mSlots.length) return null;
+        final ByteBuffer slot = mSlots[(int) (head & mMask)];
+        slot.clear();
+        return slot;
+    }
+
+    /**
+     * Producer side - publish the last claimed buffer
+     * @param length number of valid bytes in it, starting at 0
+     */
+    void publish(int length) {
+        final long head = mHead.get();
+        mSlots[(int) (head & mMask)].limit(length).position(0);
+        mHead.lazySet(head + 1);
+        final int fill = (int) (head + 1 - mTail.get());
+        if (fill > mMaxFill) mMaxFill = fill;
+    }
+
+    /**
+     * Producer side - count a buffer of data that was dropped since the ring was full
+     */
+    void overrun() {
+        //noinspection NonAtomicOperationOnVolatileField single writer
+        mOverruns++;
+    }
+
+    /**
+     * Consumer side
+     * @return the number of published buffers waiting to be consumed
+     */
+    int available() {
+        return (int) (mHead.get() - mTail.get());
+    }
+
+    /**
+     * Consumer side - get a published buffer without consuming it
+     * @param index the index relative to the oldest published buffer
+     * @return the buffer, its remaining bytes are the published data
+     */
+    ByteBuffer peek(int index) {
+        return mSlots[(int) ((mTail.get() + index) & mMask)];
+    }
+
+    /**
+     * Consumer side - return buffers to the producer
+     * @param count number of buffers consumed
+     */
+    void release(int count) {
+        mTail.lazySet(mTail.get() + count);
+    }
+
+    /**
+     * @return the highest number of buffers that were waiting to be consumed at once
+     */
+    int getMaxFill() {
+        return mMaxFill;
+    }
+
+    /**
+     * @return the number of buffers dropped since the ring was full
+     */
+    long getOverruns() {
+        return mOverruns;
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2023 Ido Ben-Hur
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.idoybh.yasr;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A destination for captured interleaved PCM frames
+ */
+interface PcmSink extends Closeable {
+    /**
+     * Consumes PCM data, buffers hold whole frames
+     * @param buffers the buffers holding the samples, their remaining bytes are consumed
+     * @param offset the index of the first buffer to consume
+     * @param length number of buffers to consume
+     * @throws IOException on any write error
+     */
+    void write(ByteBuffer[] buffers, int offset, int length) throws IOException;
+
+    /**
+     * @return the number of bytes written to the output so far
+     */
+    long getSize();
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2023 Ido Ben-Hur
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.idoybh.yasr;
+
+/**
+ * Fixed size history of min / max sample columns for a scrolling waveform,
+ * kept in a single primitive ring so long sessions never grow memory.
+ * Columns are pushed from the capture thread and read from the UI without locking,
+ * a reader must only read the newest {@link #getCapacity()} columns
+ */
+class PeakHistory {
+    static final int COLUMNS_PER_SECOND = 20;
+
+    private final short[] mColumns; // min, max pairs
+    private final int mCapacity;
+    private volatile long mCount = 0;
+
+    /**
+     * @param seconds the duration to keep
+     */
+    PeakHistory(int seconds) {
+        mCapacity = seconds * COLUMNS_PER_SECOND;
+        mColumns = new short[mCapacity * 2];
+    }
+
+    int getCapacity() {
+        return mCapacity;
+    }
+
+    /**
+     * @param sampleRate the sampling rate of the measured PCM
+     * @param channels the number of interleaved channels
+     * @return the number of samples that make a column
+     */
+    static int getColumnSamples(int sampleRate, int channels) {
+        return Math.max(1, sampleRate * channels / COLUMNS_PER_SECOND);
+    }
+
+    /**
+     * Capture side - add the next column. Synchronized only to keep columns whole
+     * while the mic is handed from one capture to the next
+     * @param min the lowest sample in the column on a 16 bit scale
+     * @param max the highest sample in the column on a 16 bit scale
+     */
+    synchronized void push(int min, int max) {
+        final long count = mCount;
+        final int index = (int) (count % mCapacity) * 2;
+        mColumns[index] = (short) Math.max(min, Short.MIN_VALUE);
+        mColumns[index + 1] = (short) Math.min(max, Short.MAX_VALUE);
+        mCount = count + 1;
+    }
+
+    /**
+     * @return the number of columns pushed so far, the next column's index
+     */
+    long getCount() {
+        return mCount;
+    }
+
+    /**
+     * @param column the index of a column among the newest {@link #getCapacity()}
+     */
+    int getMin(long column) {
+        return mColumns[(int) (column % mCapacity) * 2];
+    }
+
+    /**
+     * @param column the index of a column among the newest {@link #getCapacity()}
+     */
+    int getMax(long column) {
+        return mColumns[(int) (column % mCapacity) * 2 + 1];
+    }
+}
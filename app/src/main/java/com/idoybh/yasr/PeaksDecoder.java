@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2023 Ido Ben-Hur
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.idoybh.yasr;
+
+import android.media.AudioFormat;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Builds the {@link PeaksFile} of a recording that has none, e.g. one made before they existed.
+ * WAV PCM is read through memory maps, anything else is decoded by {@link MediaCodec}.
+ * The sidecar is written so it's done once per recording.
+ * Stops with an {@link InterruptedIOException} once the calling thread is interrupted
+ */
+final class PeaksDecoder {
+    private static final int MAP_SIZE = 8 << 20; // 8MB windows
+    private static final long TIMEOUT_US = 10000;
+
+    private PeaksDecoder() {}
+
+    /**
+     * @param recording the recording to measure
+     * @return its overview, also written as its sidecar
+     * @throws IOException if it can't be decoded or the thread was interrupted
+     */
+    static PeaksFile decode(File recording) throws IOException {
+        final PeaksSink peaks = recording.getName().endsWith(".wav")
+                ? decodeWav(recording) : decodeMedia(recording);
+        final PeaksFile file = peaks.finish();
+        try {
+            file.write(PeaksFile.getFile(recording));
+        } catch (IOException e) {
+            // still good for now
+            e.printStackTrace();
+        }
+        return file;
+    }
+
+    private static PeaksSink decodeWav(File recording) throws IOException {
+        try (FileChannel channel = FileChannel.open(recording.toPath(), StandardOpenOption.READ)) {
+            final WavFormat format = WavFormat.read(channel);
+            final PeaksSink peaks = new PeaksSink(new DiscardSink(),
+                    PeaksFile.getFile(recording), format.bits, format.sampleRate, format.channels);
+            final ByteBuffer[] buffers = new ByteBuffer[1];
+            final int window = MAP_SIZE / format.getFrameSize() * format.getFrameSize();
+            for (long pos = 0; pos < format.dataSize; pos += window) {
+                checkInterrupted();
+                final long size = Math.min(window, format.dataSize - pos);
+                buffers[0] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        format.dataOffset + pos, size).order(ByteOrder.LITTLE_ENDIAN);
+                peaks.write(buffers, 0, 1);
+            }
+            return peaks;
+        }
+    }
+
+    private static PeaksSink decodeMedia(File recording) throws IOException {
+        final MediaExtractor extractor = new MediaExtractor();
+        MediaCodec codec = null;
+        try {
+            extractor.setDataSource(recording.getPath());
+            MediaFormat format = null;
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                final MediaFormat trackFormat = extractor.getTrackFormat(i);
+                final String mime = trackFormat.getString(MediaFormat.KEY_MIME);
+                if (mime == null || !mime.startsWith("audio/")) continue;
+                extractor.selectTrack(i);
+                format = trackFormat;
+                break;
+            }
+            if (format == null) throw new IOException("No audio in " + recording);
+            //noinspection ConstantConditions
+            codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+            codec.configure(format, null, null, 0);
+            codec.start();
+            final MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+            final ByteBuffer[] buffers = new ByteBuffer[1];
+            PeaksSink peaks = null;
+            boolean inputDone = false;
+            while (true) {
+                checkInterrupted();
+                if (!inputDone) {
+                    final int index = codec.dequeueInputBuffer(TIMEOUT_US);
+                    if (index >= 0) {
+                        //noinspection ConstantConditions
+                        final int size = extractor.readSampleData(codec.getInputBuffer(index), 0);
+                        if (size < 0) {
+                            codec.queueInputBuffer(index, 0, 0, 0,
+                                    MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                            inputDone = true;
+                        } else {
+                            codec.queueInputBuffer(index, 0, size, extractor.getSampleTime(), 0);
+                            extractor.advance();
+                        }
+                    }
+                }
+                final int index = codec.dequeueOutputBuffer(info, TIMEOUT_US);
+                if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    final MediaFormat output = codec.getOutputFormat();
+                    if (output.containsKey(MediaFormat.KEY_PCM_ENCODING) && output.getInteger(
+                            MediaFormat.KEY_PCM_ENCODING) != AudioFormat.ENCODING_PCM_16BIT)
+                        throw new IOException("Unsupported decoder output " + output);
+                    if (peaks == null) {
+                        peaks = new PeaksSink(new DiscardSink(), PeaksFile.getFile(recording), 16,
+                                output.getInteger(MediaFormat.KEY_SAMPLE_RATE),
+                                output.getInteger(MediaFormat.KEY_CHANNEL_COUNT));
+                    }
+                    continue;
+                }
+                if (index < 0) continue;
+                if (info.size > 0 && peaks != null) {
+                    //noinspection ConstantConditions
+                    buffers[0] = codec.getOutputBuffer(index).order(ByteOrder.LITTLE_ENDIAN);
+                    buffers[0].limit(info.offset + info.size).position(info.offset);
+                    peaks.write(buffers, 0, 1);
+                }
+                codec.releaseOutputBuffer(index, false);
+                if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) break;
+            }
+            if (peaks == null) throw new IOException("Nothing decoded from " + recording);
+            return peaks;
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            throw new IOException("Can't decode " + recording, e);
+        } finally {
+            if (codec != null) {
+                try {
+                    codec.stop();
+                } catch (IllegalStateException ignored) {
+                    // never started
+                }
+                codec.release();
+            }
+            extractor.release();
+        }
+    }
+
+    private static void checkInterrupted() throws InterruptedIOException {
+        if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException();
+    }
+
+    /**
+     * Only the measuring matters
+     */
+    private static class DiscardSink implements PcmSink {
+        private long mSize = 0;
+
+        @Override
+        public void write(ByteBuffer[] buffers, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                mSize += buffers[i].remaining();
+                buffers[i].position(buffers[i].limit());
+            }
+        }
+
+        @Override
+        public long getSize() {
+            return mSize;
+        }
+
+        @Override
+        public void close() {
+            // nothing to close
+        }
+    }
+}
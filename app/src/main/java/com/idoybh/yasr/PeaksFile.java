@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2023 Ido Ben-Hur
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.idoybh.yasr;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * A compact overview of a recording's amplitude, kept in a sidecar file next to it
+ * so a waveform of any length loads without decoding the audio.
+ * Holds min / max pairs at a few resolutions, each level halving the previous one,
+ * plus the peak, RMS and number of clipped samples of the whole recording.
+ * Values are on an 8 bit scale, plenty for drawing.
+ * Layout, little-endian:
+ * magic "YPKS", version, sample rate, channels, frames, frames per finest bucket,
+ * peak, RMS (float), clipped samples, level count, then every level as
+ * bucket count followed by signed min / max byte pairs
+ */
+final class PeaksFile {
+    static final String DIR = "peaks";
+    static final String EXT = ".peaks";
+    private static final int MAGIC = 0x534B5059; // "YPKS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 56;
+    private static final int MAX_SIZE = 1 << 20; // anything bigger isn't ours
+
+    final int sampleRate;
+    final int channels;
+    final long frames;
+    final long bucketFrames;
+    final int peak; // 16 bit scale
+    final float rms; // 16 bit scale
+    final long clips;
+    final byte[][] levels; // finest first
+
+    PeaksFile(int sampleRate, int channels, long frames, long bucketFrames, int peak, float rms,
+              long clips, byte[][] levels) {
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.frames = frames;
+        this.bucketFrames = bucketFrames;
+        this.peak = peak;
+        this.rms = rms;
+        this.clips = clips;
+        this.levels = levels;
+    }
+
+    /**
+     * @param recording the recording file
+     * @return where the recording's sidecar is kept, it may not exist
+     */
+    static File getFile(File recording) {
+        return new File(new File(recording.getParentFile(), DIR), recording.getName() + EXT);
+    }
+
+    /**
+     * Moves the sidecar along with its recording, does nothing if it has none
+     */
+    static void rename(File from, File to) {
+        final File peaks = getFile(from);
+        //noinspection ResultOfMethodCallIgnored
+        if (peaks.exists()) peaks.renameTo(getFile(to));
+    }
+
+    static void delete(File recording) {
+        //noinspection ResultOfMethodCallIgnored
+        getFile(recording).delete();
+    }
+
+    /**
+     * @param columns the number of columns to draw
+     * @return the coarsest level with at least that many buckets, or the finest one
+     */
+    byte[] getLevel(int columns) {
+        for (int i = levels.length - 1; i > 0; i--) {
+            if (levels[i].length / 2 >= columns) return levels[i];
+        }
+        return levels[0];
+    }
+
+    /**
+     * @return the duration of the recording in milliseconds
+     */
+    long getDurationMs() {
+        return sampleRate == 0 ? 0 : frames * 1000 / sampleRate;
+    }
+
+    /**
+     * @param file the sidecar to write, its directory is created if needed
+     * @throws IOException if writing failed
+     */
+    void write(File file) throws IOException {
+        int size = HEADER_SIZE;
+        for (byte[] level : levels) size += 4 + level.length;
+        final ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(sampleRate);
+        buffer.putInt(channels);
+        buffer.putLong(frames);
+        buffer.putLong(bucketFrames);
+        buffer.putInt(peak);
+        buffer.putFloat(rms);
+        buffer.putLong(clips);
+        buffer.putInt(levels.length);
+        for (byte[] level : levels) {
+            buffer.putInt(level.length / 2);
+            buffer.put(level);
+        }
+        buffer.flip();
+        final File dir = file.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("Can't create " + dir);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(0);
+            final FileChannel channel = raf.getChannel();
+            while (buffer.hasRemaining()) channel.write(buffer);
+        }
+    }
+
+    /**
+     * @param file a sidecar written by {@link #write(File)}
+     * @return its content
+     * @throws IOException if it can't be read or isn't a valid sidecar
+     */
+    static PeaksFile read(File file) throws IOException {
+        final ByteBuffer buffer;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            final long length = raf.length();
+            if (length < HEADER_SIZE || length > MAX_SIZE)
+                throw new IOException("Not a peaks file " + file);
+            buffer = ByteBuffer.allocate((int) length).order(ByteOrder.LITTLE_ENDIAN);
+            final FileChannel channel = raf.getChannel();
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) throw new IOException("Truncated " + file);
+            }
+        }
+        buffer.flip();
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+            throw new IOException("Unknown peaks file " + file);
+        final int sampleRate = buffer.getInt();
+        final int channels = buffer.getInt();
+        final long frames = buffer.getLong();
+        final long bucketFrames = buffer.getLong();
+        final int peak = buffer.getInt();
+        final float rms = buffer.getFloat();
+        final long clips = buffer.getLong();
+        final int count = buffer.getInt();
+        if (count <= 0 || count > 64) throw new IOException("Corrupt peaks file " + file);
+        final byte[][] levels = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            if (buffer.remaining() < 4) throw new IOException("Truncated " + file);
+            final int buckets = buffer.getInt();
+            if (buckets < 0 || buckets * 2L > buffer.remaining())
+                throw new IOException("Truncated " + file);
+            levels[i] = new byte[buckets * 2];
+            buffer.get(levels[i]);
+        }
+        return new PeaksFile(sampleRate, channels, frames, bucketFrames, peak, rms, clips,
+                levels);
+    }
+}
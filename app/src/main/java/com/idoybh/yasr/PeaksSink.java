@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2023 Ido Ben-Hur
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.idoybh.yasr;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Measures the PCM passed to a sink and writes its {@link PeaksFile} once the sink is closed.
+ * Memory is fixed no matter the length: once all buckets are used neighbours are merged
+ * and every bucket spans twice the frames from then on
+ */
+class PeaksSink implements PcmSink {
+    static final int MAX_BUCKETS = 2048;
+    private static final int MIN_BUCKETS = 16; // coarsest level
+    private static final int FIRST_BUCKET_FRAMES = 16;
+    private static final int CLIP = 32767; // 16 bit scale
+
+    private final PcmSink mSink;
+    private final File mPeaksFile;
+    private final int mBits;
+    private final int mSampleRate;
+    private final int mChannels;
+    private final byte[] mBuckets = new byte[MAX_BUCKETS * 2];
+    private int mBucketCount = 0;
+    private long mBucketFrames = FIRST_BUCKET_FRAMES;
+    private long mFramesInBucket = 0;
+    private int mChannel = 0;
+    private int mMin = Integer.MAX_VALUE;
+    private int mMax = Integer.MIN_VALUE;
+    private long mFrames = 0;
+    private int mPeak = 0;
+    private long mSumSquares = 0;
+    private long mClips = 0;
+
+    /**
+     * @param sink the sink to pass everything to
+     * @param peaksFile the sidecar to write on close, see {@link PeaksFile#getFile(File)}
+     * @param bits the bit depth of the PCM written
+     * @param sampleRate the sampling rate of the PCM written
+     * @param channels the number of interleaved channels
+     */
+    PeaksSink(PcmSink sink, File peaksFile, int bits, int sampleRate, int channels) {
+        mSink = sink;
+        mPeaksFile = peaksFile;
+        mBits = bits;
+        mSampleRate = sampleRate;
+        mChannels = channels;
+    }
+
+    @Override
+    public void write(ByteBuffer[] buffers, int offset, int length) throws IOException {
+        // the sink consumes the buffers
+        for (int i = offset; i < offset + length; i++) measure(buffers[i]);
+        mSink.write(buffers, offset, length);
+    }
+
+    @Override
+    public long getSize() {
+        return mSink.getSize();
+    }
+
+    /**
+     * Closes the sink, then writes the sidecar. Failing the latter only loses the overview
+     * @throws IOException if the sink failed closing
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            mSink.close();
+        } finally {
+            try {
+                finish().write(mPeaksFile);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * @return the overview of everything written so far, a partial bucket included
+     */
+    PeaksFile finish() {
+        while (mFramesInBucket > 0) endBucket();
+        final long samples = mFrames * mChannels;
+        final float rms = samples == 0 ? 0 : (float) Math.sqrt((double) mSumSquares / samples);
+        int count = 1;
+        for (int buckets = mBucketCount; buckets > MIN_BUCKETS; buckets = (buckets + 1) / 2)
+            count++;
+        final byte[][] levels = new byte[count][];
+        levels[0] = new byte[mBucketCount * 2];
+        System.arraycopy(mBuckets, 0, levels[0], 0, levels[0].length);
+        for (int i = 1; i < count; i++) {
+            final byte[] finer = levels[i - 1];
+            final int buckets = (finer.length / 2 + 1) / 2;
+            final byte[] level = new byte[buckets * 2];
+            for (int b = 0; b < buckets; b++) {
+                final int a = b * 4;
+                final int c = Math.min(a + 2, finer.length - 2); // an odd bucket stands alone
+                level[b * 2] = (byte) Math.min(finer[a], finer[c]);
+                level[b * 2 + 1] = (byte) Math.max(finer[a + 1], finer[c + 1]);
+            }
+            levels[i] = level;
+        }
+        return new PeaksFile(mSampleRate, mChannels, mFrames, mBucketFrames, mPeak, rms, mClips,
+                levels);
+    }
+
+    private void measure(ByteBuffer pcm) {
+        final int bytes = mBits / 8;
+        int min = mMin;
+        int max = mMax;
+        int peak = mPeak;
+        long sumSquares = mSumSquares;
+        long clips = mClips;
+        for (int pos = pcm.position(), limit = pcm.limit(); pos + bytes <= limit; pos += bytes) {
+            final int sample = LevelMeter.getSample(pcm, pos, mBits);
+            if (sample < min) min = sample;
+            if (sample > max) max = sample;
+            final int abs = sample < 0 ? -sample : sample;
+            if (abs > peak) peak = abs;
+            if (abs >= CLIP) clips++;
+            sumSquares += sample * sample;
+            if (++mChannel < mChannels) continue;
+            mChannel = 0;
+            mFrames++;
+            if (++mFramesInBucket < mBucketFrames) continue;
+            mMin = min;
+            mMax = max;
+            endBucket();
+            min = mMin;
+            max = mMax;
+        }
+        mMin = min;
+        mMax = max;
+        mPeak = peak;
+        mSumSquares = sumSquares;
+        mClips = clips;
+    }
+
+    /**
+     * Stores the current bucket, or keeps it open when making room doubled its span
+     */
+    private void endBucket() {
+        if (mBucketCount == MAX_BUCKETS) {
+            // halve the resolution to make room
+            for (int i = 0; i < MAX_BUCKETS / 2; i++) {
+                mBuckets[i * 2] = (byte) Math.min(mBuckets[i * 4], mBuckets[i * 4 + 2]);
+                mBuckets[i * 2 + 1] = (byte) Math.max(mBuckets[i * 4 + 1], mBuckets[i * 4 + 3]);
+            }
+            mBucketCount = MAX_BUCKETS / 2;
+            mBucketFrames *= 2;
+            if (mFramesInBucket < mBucketFrames) return;
+        }
+        mBuckets[mBucketCount * 2] = (byte) (mMin >> 8);
+        mBuckets[mBucketCount * 2 + 1] = (byte) (mMax >> 8);
+        mBucketCount++;
+        mFramesInBucket = 0;
+        mMin = Integer.MAX_VALUE;
+        mMax = Integer.MIN_VALUE;
+    }
+}
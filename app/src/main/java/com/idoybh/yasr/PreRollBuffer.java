@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2023 Ido Ben-Hur
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.idoybh.yasr;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Keeps the last few seconds of monitored 16 bit PCM in a fixed size direct buffer,
+ * overwriting the oldest audio once full.
+ * Writing allocates nothing, only taking a {@link #snapshot(int)} does
+ */
+class PreRollBuffer {
+    static final int BITS = 16;
+
+    private final ByteBuffer mRing;
+    private final int mSampleRate;
+    private final int mChannels;
+    private int mHead = 0; // next byte to write
+    private boolean mFull = false;
+
+    /**
+     * @param seconds the duration to keep
+     * @param sampleRate the sampling rate of the monitored PCM
+     * @param channels the number of interleaved channels
+     */
+    PreRollBuffer(int seconds, int sampleRate, int channels) {
+        mSampleRate = sampleRate;
+        mChannels = channels;
+        mRing = ByteBuffer.allocateDirect(seconds * sampleRate * getFrameSize())
+                .order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    int getSampleRate() {
+        return mSampleRate;
+    }
+
+    int getChannels() {
+        return mChannels;
+    }
+
+    int getFrameSize() {
+        return mChannels * BITS / 8;
+    }
+
+    int getCapacity() {
+        return mRing.capacity();
+    }
+
+    /**
+     * Monitor side - keeps a chunk
+     * @param pcm little-endian PCM, whole frames. Its remaining bytes are consumed
+     */
+    synchronized void write(ByteBuffer pcm) {
+        final int end = pcm.limit();
+        final int capacity = mRing.capacity();
+        if (capacity == 0) {
+            pcm.position(end);
+            return;
+        }
+        if (pcm.remaining() > capacity) {
+            // only the newest audio fits
+            pcm.position(end - capacity);
+        }
+        while (pcm.hasRemaining()) {
+            final int count = Math.min(pcm.remaining(), capacity - mHead);
+            pcm.limit(pcm.position() + count);
+            mRing.limit(mHead + count);
+            mRing.position(mHead);
+            mRing.put(pcm);
+            pcm.limit(end);
+            mHead += count;
+            if (mHead == capacity) {
+                mHead = 0;
+                mFull = true;
+            }
+        }
+    }
+
+    /**
+     * @return the number of frames currently kept
+     */
+    synchronized long getFrames() {
+        return (mFull ? mRing.capacity() : mHead) / getFrameSize();
+    }
+
+    /**
+     * Copies the kept audio in order, monitoring may continue meanwhile
+     * @param bits the bit depth to convert to
+     * @return a new direct buffer ready to be read, empty when nothing was kept
+     */
+    synchronized ByteBuffer snapshot(int bits) {
+        final int size = (int) (getFrames() * getFrameSize());
+        final ByteBuffer copy = ByteBuffer.allocateDirect(size / (BITS / 8) * (bits / 8))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        final ByteBuffer src = mRing.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (mFull) {
+            src.limit(src.capacity());
+            src.position(mHead);
+            TeeSink.convert(src, copy, BITS, bits);
+        }
+        src.limit(mHead);
+        src.position(0);
+        TeeSink.convert(src, copy, BITS, bits);
+        copy.flip();
+        return copy;
+    }
+
+    /**
+     * Drops everything kept so far, e.g. when the monitored device changes
+     */
+    synchronized void clear() {
+        mHead = 0;
+        mFull = false;
+    }
+}
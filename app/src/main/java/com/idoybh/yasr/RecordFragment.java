@@ -30,11 +30,11 @@ import android.content.SharedPreferences;
 import android.media.AudioDeviceInfo;
 import android.media.AudioFormat;
 import android.media.AudioManager;
-import android.media.MediaRecorder;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.IBinder;
 import android.text.Editable;
+import android.view.Choreographer;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -47,20 +47,18 @@ import androidx.activity.OnBackPressedCallback;
 import androidx.annotation.NonNull;
 import androidx.fragment.app.Fragment;
 import androidx.navigation.fragment.NavHostFragment;
+import androidx.preference.PreferenceManager;
 
 import com.google.android.material.progressindicator.LinearProgressIndicator;
 import com.idoybh.yasr.databinding.FragmentRecordBinding;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.List;
 import java.util.Locale;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.concurrent.Executor;
 
 public class RecordFragment extends Fragment {
@@ -90,12 +88,15 @@ public class RecordFragment extends Fragment {
 
     public static final int LIMIT_MODE_SIZE = 0;
     public static final int LIMIT_MODE_TIME = 1;
+    private static final float LEVEL_FALL_PER_SEC = 20000f;
+    private static final int WAVEFORM_SECONDS = 45;
 
     private final Handler mUiHandler = FirstFragment.mUiHandler;
     private final Executor mExecutor = FirstFragment.mExecutor;
     private FragmentRecordBinding binding;
     private LinearProgressIndicator mProgressIndicator;
-    private MediaRecorder mRecorder;
+    private volatile MicMonitor mMonitor;
+    private int mMonitorGeneration = 0; // bumped on release, drops registrations of older ones
     private SharedPreferences mSharedPrefs;
     private List<AudioDeviceInfo> mAudioDevices;
     private int mSelectedDeviceIndex = 0;
@@ -104,16 +105,13 @@ public class RecordFragment extends Fragment {
     private int mLimitMode = LIMIT_MODE_SIZE;
     private List<View> mOptionViews;
     private File mCurrentRecordingFile;
-    private File mTempAudioFile;
     private String mDefaultName;
-    private String mTotalDurationStr;
+    private int mTotalSeconds = 0;
     private RecordingService mService;
-    private RawRecordingService mRawService;
     private boolean isStarted = false;
-    private boolean isRawStarted = false;
     private boolean isResumed = false;
-    private Timer mNoiseTimer;
-    private TimerTask mNoiseTimerTask;
+    private final UiTicker mTicker = new UiTicker();
+    private final PeakHistory mPeakHistory = new PeakHistory(WAVEFORM_SECONDS);
 
     @Override
     public View onCreateView(
@@ -128,6 +126,7 @@ public class RecordFragment extends Fragment {
         super.onViewCreated(view, savedInstanceState);
 
         mProgressIndicator = requireActivity().requireViewById(R.id.progressIndicator);
+        binding.waveformView.setHistory(mPeakHistory);
 
         mOptionViews = Arrays.asList(
                 binding.deviceMenu,
@@ -170,7 +169,12 @@ public class RecordFragment extends Fragment {
         binding.discardButton.setOnClickListener(this::onDiscardClicked);
         binding.mediaButton.setOnClickListener(this::onMediaClicked);
         binding.outputToggle.addOnButtonCheckedListener((group, checkedId, isChecked) -> updateInfoText());
-        binding.qualityToggle.addOnButtonCheckedListener((group, checkedId, isChecked) -> updateInfoText());
+        binding.qualityToggle.addOnButtonCheckedListener((group, checkedId, isChecked) -> {
+            updateInfoText();
+            refreshMicMonitor();
+        });
+        binding.channelToggle.addOnButtonCheckedListener((group, checkedId, isChecked) ->
+                refreshMicMonitor());
         requireActivity().getOnBackPressedDispatcher().addCallback(onBackCallback);
 
         // loading shared prefs / defaults
@@ -180,6 +184,8 @@ public class RecordFragment extends Fragment {
             outID = binding.outputBtnOGG.getId();
         else if (outPref.equals(RecordingService.WAV_EXT))
             outID = binding.outputBtnWAV.getId();
+        else if (outPref.equals(RecordingService.FLAC_EXT))
+            outID = binding.outputBtnFLAC.getId();
         binding.outputToggle.check(outID);
         final int qualityPref = getPrefs().getInt(PREF_OUTPUT_QUALITY, 0);
         binding.qualityToggle.check(binding.qualityToggle.getChildAt(qualityPref).getId());
@@ -199,11 +205,10 @@ public class RecordFragment extends Fragment {
         if (bundle == null) return;
         final String extra = bundle.getString(BUNDLE_ARG1, null);
         if (extra == null || extra.isEmpty()) return;
-        if (isStarted || isRawStarted) return;
+        if (isStarted) return;
         // resume showing progress by connecting to the service again
         isResumed = true;
-        Intent intent = new Intent(requireContext(), extra.equals(RecordingService.EXTRA_INTENT)
-                ? RecordingService.class : RawRecordingService.class);
+        Intent intent = new Intent(requireContext(), RecordingService.class);
         requireContext().bindService(intent, connection, Context.BIND_ABOVE_CLIENT);
     }
 
@@ -313,22 +318,16 @@ public class RecordFragment extends Fragment {
         return maxSamples2 > maxSamples1; // 2nd device has a higher sample rate
     }
 
+    @Override
+    public void onStart() {
+        super.onStart();
+        mTicker.start();
+    }
+
     @Override
     public void onStop() {
-        registerToDuration(false);
-        mExecutor.execute(() -> {
-            if (mNoiseTimer != null) {
-                mNoiseTimer.cancel();
-                mNoiseTimer.purge();
-            }
-            if (mNoiseTimerTask != null)
-                mNoiseTimerTask.cancel();
-            if (mRecorder != null) {
-                mRecorder.stop();
-                mRecorder.release();
-            }
-            mRecorder = null;
-        });
+        mTicker.stop();
+        releaseMicMonitor();
         saveUserPrefs();
         super.onStop();
     }
@@ -336,24 +335,18 @@ public class RecordFragment extends Fragment {
     @Override
     public void onDestroyView() {
         onBackCallback.setEnabled(false);
-        if (mRawService != null && isRawStarted || mService != null && isStarted) {
-            if (mRawService != null) mRawService.removeListener(mStatusListener);
-            if (mService != null) mService.removeListener(mStatusListener);
-            if (isStarted || isRawStarted) {
-                requireContext().unbindService(connection);
-            }
+        if (mService != null && isStarted) {
+            mService.removeListener(mStatusListener);
+            mService.setPeakHistory(null);
+            requireContext().unbindService(connection);
         }
-        if (mTempAudioFile != null && mTempAudioFile.exists() && mTempAudioFile.delete())
-            mTempAudioFile = null;
         binding = null;
         super.onDestroyView();
     }
 
     private void onRecordingClicked(View view) {
-        final int checkedOutputID = binding.outputToggle.getCheckedButtonId();
-        if (!isStarted && !isRawStarted) {
-            Intent intent = new Intent(requireContext(), checkedOutputID != R.id.outputBtnWAV
-                    ? RecordingService.class : RawRecordingService.class);
+        if (!isStarted) {
+            Intent intent = new Intent(requireContext(), RecordingService.class);
             requireContext().startForegroundService(intent); // run until we stop it
             requireContext().bindService(intent, connection, Context.BIND_ABOVE_CLIENT);
 
@@ -361,23 +354,17 @@ public class RecordFragment extends Fragment {
             saveUserPrefs();
             return;
         }
-        if (mService != null) {
-            mService.pauseResumeRecording();
-            return;
-        }
-        mRawService.pauseResumeRecording();
+        if (mService != null) mService.pauseResumeRecording();
     }
 
     private void onSaveClicked(View view) {
-        if (isStarted || isRawStarted) {
-            Intent intent = new Intent(requireContext(),
-                    isStarted ? RecordingService.class : RawRecordingService.class);
+        if (isStarted) {
+            Intent intent = new Intent(requireContext(), RecordingService.class);
             requireContext().unbindService(connection);
             requireContext().stopService(intent);
         }
-        registerToDuration(false);
+        mTicker.showDuration(false);
         isStarted = false;
-        isRawStarted = false;
         binding.timeText.setText("");
         mProgressIndicator.setVisibility(View.INVISIBLE);
     }
@@ -385,7 +372,6 @@ public class RecordFragment extends Fragment {
     public void onDiscardClicked(View view) {
         DialogInterface.OnClickListener listener = (dialog, which) -> {
             if (isStarted) mService.eraseRecording();
-            else mRawService.eraseRecording();
             onSaveClicked(view);
         };
         Context ctx = requireContext();
@@ -404,7 +390,7 @@ public class RecordFragment extends Fragment {
         final float stepSize = mode == LIMIT_MODE_TIME ? 5f : 100f;
         binding.limitSlider.setLabelFormatter(value -> {
             if (value < 1) {
-                mTotalDurationStr = null;
+                mTotalSeconds = 0;
                 mProgressIndicator.setIndeterminate(true);
                 return getString(R.string.unlimited_txt);
             }
@@ -412,16 +398,15 @@ public class RecordFragment extends Fragment {
             mProgressIndicator.setIndeterminate(false);
             mProgressIndicator.setMax(val);
             if (mLimitMode == LIMIT_MODE_TIME) {
+                mTotalSeconds = val;
                 if (value < 60) {
-                    mTotalDurationStr = String.format(Locale.getDefault(),
+                    return String.format(Locale.getDefault(),
                             "%d%s", val, getString(R.string.unit_seconds));
-                    return mTotalDurationStr;
                 }
-                mTotalDurationStr = String.format(Locale.getDefault(),
+                return String.format(Locale.getDefault(),
                         "%02d:%02d", val / 60, val % 60);
-                return mTotalDurationStr;
             }
-            mTotalDurationStr = null;
+            mTotalSeconds = 0;
             if (value >= 1000) {
                 return String.format(Locale.getDefault(),
                         "%d.%d%s", val / 1000, (val % 1000) / 100, getString(R.string.unit_mb));
@@ -438,19 +423,12 @@ public class RecordFragment extends Fragment {
         @Override
         public void onServiceConnected(ComponentName className, IBinder service) {
             // We've bound to LocalService, cast the IBinder and get LocalService instance.
-            if (className.getClassName().equals(RawRecordingService.class.getName())) {
-                RawRecordingService.LocalBinder binder = (RawRecordingService.LocalBinder) service;
-                mRawService = binder.getService();
-                isRawStarted = true;
-            } else {
-                RecordingService.LocalBinder binder = (RecordingService.LocalBinder) service;
-                mService = binder.getService();
-                isStarted = true;
-            }
+            RecordingService.LocalBinder binder = (RecordingService.LocalBinder) service;
+            mService = binder.getService();
+            isStarted = true;
             final AudioDeviceInfo info = mAudioDevices.get(mSelectedDeviceIndex);
             updateInfoText(info);
-            final int channels = binding.channelToggle.getCheckedButtonId() ==
-                    R.id.channelBtn1 ? 1 : 2;
+            final int channels = getChannels();
             int[] limit = null;
             final int limitValue = (int) binding.limitSlider.getValue();
             if (limitValue > 0) {
@@ -464,26 +442,28 @@ public class RecordFragment extends Fragment {
                 ext = RecordingService.OGG_EXT;
             else if (checkedOutputID == R.id.outputBtnWAV)
                 ext = RecordingService.WAV_EXT;
+            else if (checkedOutputID == R.id.outputBtnFLAC)
+                ext = RecordingService.FLAC_EXT;
             final Editable editText = binding.recordingNameInputText.getText();
-            final String fileName = (editText == null || editText.toString().isEmpty()
-                    ? mDefaultName : editText.toString()) + "." + ext;
-            mCurrentRecordingFile = new File(requireContext().getFilesDir(), fileName);
-            RecordingService.RecordOptions opts = new RecordingService.RecordOptions(
-                    mCurrentRecordingFile, info, mSampleRate, mEncodeRate, channels, limit);
-            if (mRawService != null) {
-                if (isResumed) {
-                    mRawService.clearListeners();
-                    String fn = mRawService.getOptions().getFile().getName();
-                    fn = fn.substring(0, fn.lastIndexOf("."));
-                    mDefaultName = fn;
-                    binding.recordingNameInputText.setText(fn);
-                } else {
-                    mRawService.setOptions(opts);
-                }
-                mRawService.addListener(mStatusListener);
-                mRawService.startRecording();
-                return;
+            final String baseName = editText == null || editText.toString().isEmpty()
+                    ? mDefaultName : editText.toString();
+            final File dir = requireContext().getFilesDir();
+            mCurrentRecordingFile = new File(dir, baseName + "." + ext);
+            File[] copies = null;
+            final SharedPreferences defPrefs =
+                    PreferenceManager.getDefaultSharedPreferences(requireContext());
+            final String copyExt = defPrefs.getString(SettingsFragment.LOSSLESS_COPY_KEY,
+                    SettingsFragment.LOSSLESS_COPY_NONE);
+            if (isLosslessOutput(checkedOutputID)
+                    && !copyExt.equals(SettingsFragment.LOSSLESS_COPY_NONE)) {
+                // a compressed copy to share, written from the same capture
+                copies = new File[] { new File(dir, baseName + "." + copyExt) };
             }
+            final boolean split = SettingsFragment.LIMIT_ACTION_SPLIT.equals(defPrefs.getString(
+                    SettingsFragment.LIMIT_ACTION_KEY, null));
+            RecordingService.RecordOptions opts = new RecordingService.RecordOptions(
+                    mCurrentRecordingFile, info, mSampleRate, mEncodeRate, channels, limit, copies,
+                    split);
             if (isResumed) {
                 mService.clearListeners();
                 String fn = mService.getOptions().getFile().getName();
@@ -494,20 +474,18 @@ public class RecordFragment extends Fragment {
                 mService.setOptions(opts);
             }
             mService.addListener(mStatusListener);
+            // the audio from right before the button was pressed goes first
+            mService.setPreRoll(isResumed || mMonitor == null ? null : mMonitor.getPreRoll());
+            mService.setPeakHistory(mPeakHistory);
             mService.startRecording();
         }
 
         @Override
         public void onServiceDisconnected(ComponentName arg0) {
-            if (mService != null) {
-                mService.removeListener(mStatusListener);
-                mService = null;
-                isStarted = false;
-                return;
-            }
-            mRawService.removeListener(mStatusListener);
-            mRawService = null;
-            isRawStarted = false;
+            if (mService == null) return;
+            mService.removeListener(mStatusListener);
+            mService = null;
+            isStarted = false;
         }
     };
 
@@ -598,29 +576,18 @@ public class RecordFragment extends Fragment {
             mEncodeRate = eRates.get(0);
         }
         final int selectedFormat = binding.outputToggle.getCheckedButtonId();
-        final String encoderTxt = selectedFormat == binding.outputBtnWAV.getId() ?
+        final String encoderTxt = isLosslessOutput(selectedFormat) ?
                 getString(R.string.info_txt_lossless) : getString(R.string.info_txt_lossy);
         binding.infoTxt.setText(String.format(getString(R.string.info_txt),
                 mSampleRate / 1000f, mEncodeRate, encoderTxt));
     }
 
-    private void registerToDuration(final boolean register) {
-        mExecutor.execute(() -> {
-            if (register && mDurationTimer == null && mDurationTimerTask == null) {
-                mDurationTimer = new Timer();
-                mDurationTimerTask = new DurationTimerTask();
-                mDurationTimer.scheduleAtFixedRate(mDurationTimerTask, 0, 250);
-                return;
-            }
-            if (mDurationTimer == null || mDurationTimerTask == null)
-                return;
-            updateDurationText();
-            mDurationTimer.cancel();
-            mDurationTimer.purge();
-            mDurationTimer = null;
-            mDurationTimerTask.cancel();
-            mDurationTimerTask = null;
-        });
+    /**
+     * @param checkedOutputID the selected output button
+     * @return whether the output keeps every captured sample as is
+     */
+    private static boolean isLosslessOutput(int checkedOutputID) {
+        return checkedOutputID == R.id.outputBtnWAV || checkedOutputID == R.id.outputBtnFLAC;
     }
 
     private SharedPreferences getPrefs() {
@@ -629,54 +596,47 @@ public class RecordFragment extends Fragment {
         return mSharedPrefs;
     }
 
+    /**
+     * Restarts the monitor when the selected format no longer matches it,
+     * so the pre-roll can be used as is
+     */
+    private void refreshMicMonitor() {
+        final MicMonitor monitor = mMonitor;
+        if (isStarted || monitor == null) return;
+        final PreRollBuffer preRoll = monitor.getPreRoll();
+        if (preRoll.getSampleRate() != mSampleRate || preRoll.getChannels() != getChannels())
+            registerToMicAmp();
+    }
+
     private synchronized void registerToMicAmp() {
         mProgressIndicator.setIndeterminate(true);
         mProgressIndicator.setVisibility(View.VISIBLE);
         for (View v : mOptionViews) v.setEnabled(false);
         binding.recordButton.setEnabled(false);
-        if (mRecorder != null) {
-            mRecorder.stop();
-            mRecorder.release();
-            mRecorder = null;
-            if (mNoiseTimer != null) mNoiseTimer.cancel();
-            if (mNoiseTimerTask != null) mNoiseTimerTask.cancel();
-            if (mTempAudioFile != null && mTempAudioFile.exists() && mTempAudioFile.delete())
-                mTempAudioFile = null;
-        }
-        mNoiseTimer = new Timer();
-        mNoiseTimerTask = new TimerTask() {
-            @Override
-            public void run() {
-                if (mRecorder == null) {
-                    return;
-                }
-                try {
-                    final int noise = mRecorder.getMaxAmplitude();
-                    binding.audioBar.getHandler().post(() -> {
-                        if (binding != null) binding.audioBar.setProgress(noise, true);
-                    });
-                } catch (Exception ignored) { }
-            }
-        };
+        releaseMicMonitor();
+        final int generation = mMonitorGeneration;
         final AudioDeviceInfo info = mAudioDevices.get(mSelectedDeviceIndex);
-        mRecorder = new MediaRecorder(requireContext());
-        mRecorder.setAudioSource(MediaRecorder.AudioSource.MIC);
-        mRecorder.setPreferredDevice(info);
-        mRecorder.setOutputFormat(MediaRecorder.OutputFormat.MPEG_4);
-        mRecorder.setAudioEncoder(MediaRecorder.AudioEncoder.AAC);
+        final int sampleRate = mSampleRate;
+        final int channels = getChannels();
+        final int preRollSeconds = Integer.parseInt(PreferenceManager
+                .getDefaultSharedPreferences(requireContext())
+                .getString(SettingsFragment.PRE_ROLL_KEY, "2"));
         mExecutor.execute(() -> {
             boolean notified = false;
             int count = 0;
             while (true) {
+                if (isSuperseded(generation)) return;
                 try {
-                    mTempAudioFile = File.createTempFile("tmp-noise", ".m4a", null);
-                    mTempAudioFile.deleteOnExit();
-                    mRecorder.setOutputFile(mTempAudioFile);
-                    mRecorder.prepare();
-                    mRecorder.start();
-                    //noinspection ResultOfMethodCallIgnored
-                    mTempAudioFile.delete(); // delete when we stop writing to it
-                } catch (RuntimeException | IOException e) {
+                    final MicMonitor monitor =
+                            new MicMonitor(info, sampleRate, channels, preRollSeconds);
+                    monitor.getLevelMeter().setHistory(mPeakHistory,
+                            PeakHistory.getColumnSamples(sampleRate, channels));
+                    monitor.start();
+                    if (!publishMicMonitor(monitor, generation)) {
+                        monitor.release();
+                        return;
+                    }
+                } catch (RuntimeException e) {
                     e.printStackTrace();
                     if (!notified) {
                         mUiHandler.post(() -> {
@@ -693,17 +653,20 @@ public class RecordFragment extends Fragment {
                     if (count < 10) {
                         continue;
                     }
-                    mRecorder = null;
+                    if (isSuperseded(generation)) return;
                     mUiHandler.post(() -> {
                         Toast.makeText(requireContext(), getString(R.string.mic_in_use_timeout), Toast.LENGTH_LONG).show();
                         updateAudioDevices();
                     });
                 }
                 mUiHandler.post(() -> {
-                    if (mRecorder != null) {
-                        binding.audioBar.setMin(mRecorder.getMaxAmplitude() /* 0 */);
+                    // released or registered again meanwhile, that one updates the views
+                    if (isSuperseded(generation)) return;
+                    if (mMonitor != null) {
+                        binding.audioBar.setMin(0);
                         binding.audioBar.setMax(10000); // consider making dynamic again
-                        mNoiseTimer.scheduleAtFixedRate(mNoiseTimerTask, 0, 75);
+                        binding.audioPeakBar.setMin(0);
+                        binding.audioPeakBar.setMax(10000);
                     } else {
                         int next = mSelectedDeviceIndex - 1;
                         if (next < 0) next = mAudioDevices.size() - 1;
@@ -718,6 +681,45 @@ public class RecordFragment extends Fragment {
         });
     }
 
+    /**
+     * Publishes a started monitor unless it was released or registered again meanwhile
+     * @return whether it was, if not the caller releases it
+     */
+    private synchronized boolean publishMicMonitor(MicMonitor monitor, int generation) {
+        if (generation != mMonitorGeneration) return false;
+        mMonitor = monitor;
+        return true;
+    }
+
+    private synchronized boolean isSuperseded(int generation) {
+        return generation != mMonitorGeneration;
+    }
+
+    /**
+     * Closes the monitor's mic and drops a registration in flight,
+     * the capture measures the level while recording
+     */
+    private synchronized void releaseMicMonitor() {
+        mMonitorGeneration++;
+        final MicMonitor monitor = mMonitor;
+        mMonitor = null;
+        if (monitor != null) mExecutor.execute(monitor::release);
+    }
+
+    /**
+     * @return the meter of the running recording or of the monitor, null if neither is open
+     */
+    private LevelMeter getLevelMeter() {
+        final RecordingService service = mService;
+        if (isStarted && service != null) return service.getLevelMeter();
+        final MicMonitor monitor = mMonitor;
+        return monitor != null ? monitor.getLevelMeter() : null;
+    }
+
+    private int getChannels() {
+        return binding.channelToggle.getCheckedButtonId() == R.id.channelBtn1 ? 1 : 2;
+    }
+
     private void setBackEnabled(final boolean enabled) {
         onBackCallback.setEnabled(!enabled); // callback should be enabled when back is disabled
     }
@@ -734,23 +736,26 @@ public class RecordFragment extends Fragment {
                         updateRecordAndProgress(status);
                         showSaveButton(false);
                         enableOptionViews(true);
-                        registerToDuration(false);
+                        mTicker.showDuration(false);
                         setBackEnabled(true);
                         refreshDefaultName();
                         binding.timeText.setText("");
+                        if (mMonitor == null) registerToMicAmp();
                     }
                     case RecordingService.Status.STARTED -> {
                         updateRecordAndProgress(status);
                         showSaveButton(true);
                         enableOptionViews(false);
-                        registerToDuration(true);
+                        mTicker.showDuration(true);
                         setBackEnabled(false);
+                        // a single mic client, the recording measures the level from now on
+                        releaseMicMonitor();
                     }
                     case RecordingService.Status.PAUSED -> {
                         updateRecordAndProgress(status);
                         showSaveButton(true);
                         enableOptionViews(false);
-                        registerToDuration(false);
+                        mTicker.showDuration(false);
                         setBackEnabled(false);
                     }
                 }
@@ -758,47 +763,98 @@ public class RecordFragment extends Fragment {
         }
     }
 
-    private Timer mDurationTimer;
-    private TimerTask mDurationTimerTask;
-    private class DurationTimerTask extends TimerTask {
+    /**
+     * Refreshes the level bars and the duration once per frame while the screen is shown.
+     * Reads the latest values without locking and formats into a reused buffer,
+     * so no timer thread runs and no garbage is made per frame
+     */
+    private class UiTicker implements Choreographer.FrameCallback {
+        private final char[] mText = new char[DurationFormat.MAX_LENGTH * 2 + 1];
+        private boolean mRunning = false;
+        private boolean mShowDuration = false;
+        private long mLastFrameNs = 0;
+        private float mPeak = 0;
+        private float mRms = 0;
+        private int mShownPeak = -1;
+        private int mShownRms = -1;
+        private long mShownSec = -1;
+
+        void start() {
+            if (mRunning) return;
+            mRunning = true;
+            mLastFrameNs = 0;
+            mShownSec = -1;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        void stop() {
+            mRunning = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+
+        /**
+         * @param show whether the recording is running, the last duration stays when stopping
+         */
+        void showDuration(boolean show) {
+            if (!show && mShowDuration && mRunning) updateDuration();
+            mShowDuration = show;
+            mShownSec = -1;
+        }
+
         @Override
-        public void run() {
-            updateDurationText();
+        public void doFrame(long frameTimeNanos) {
+            if (!mRunning || binding == null) return;
+            final float elapsed = mLastFrameNs == 0 ? 0 : (frameTimeNanos - mLastFrameNs) / 1e9f;
+            mLastFrameNs = frameTimeNanos;
+            updateLevels(elapsed);
+            binding.waveformView.update();
+            if (mShowDuration) updateDuration();
+            Choreographer.getInstance().postFrameCallback(this);
         }
-    }
 
-    private synchronized void updateDurationText() {
-        if (binding == null) return;
-        long sec = -1;
-        if (isStarted && mService != null)
-            sec = mService.getDuration() / 1000;
-        else if (isRawStarted && mRawService != null)
-            sec = mRawService.getDuration() / 1000;
-        if (sec == -1) return;
-        String text = "";
-        if (sec > 3600 /* 1 hour */) {
-            text += String.format(Locale.ENGLISH, "%02d:%02d", sec / 3600, sec % 3600);
-        } else {
-            text += String.format(Locale.ENGLISH, "%02d", sec / 60);
+        /**
+         * Levels fall gradually so frames without a new read don't flicker
+         */
+        private void updateLevels(float elapsed) {
+            final LevelMeter meter = getLevelMeter();
+            int peak = 0;
+            int rms = 0;
+            if (meter != null) {
+                peak = meter.getPeak();
+                rms = meter.getRms();
+                meter.take();
+            }
+            final float fall = LEVEL_FALL_PER_SEC * elapsed;
+            mPeak = Math.max(peak, mPeak - fall);
+            mRms = Math.max(rms, mRms - fall);
+            if ((int) mPeak != mShownPeak) {
+                mShownPeak = (int) mPeak;
+                binding.audioPeakBar.setProgress(mShownPeak);
+            }
+            if ((int) mRms != mShownRms) {
+                mShownRms = (int) mRms;
+                binding.audioBar.setProgress(mShownRms);
+            }
         }
-        text += String.format(Locale.ENGLISH, ":%02d", sec % 60);
-        if (mTotalDurationStr != null) {
-            String totalStr = mTotalDurationStr;
-            if (totalStr.contains("s"))
-                totalStr = "00:" + String.format(Locale.ENGLISH,
-                        "%02d", Integer.valueOf(totalStr.replace("s", "")));
-            text += "/" + totalStr;
-            final int finalSec = (int) sec;
-            mUiHandler.post(() ->
-                    mProgressIndicator.setProgress(finalSec, true));
-        } else if (mLimitMode == LIMIT_MODE_SIZE) {
-            int size = Math.round(mCurrentRecordingFile.length() / 1000f /* bytes to kB */);
-            mUiHandler.post(() ->
-                    mProgressIndicator.setProgress(size, true));
+
+        private void updateDuration() {
+            final RecordingService service = mService;
+            if (!isStarted || service == null) return;
+            final long sec = service.getDuration() / 1000;
+            if (sec == mShownSec) return;
+            mShownSec = sec;
+            int length = DurationFormat.format(sec, mText, 0);
+            if (mTotalSeconds > 0) {
+                mText[length++] = '/';
+                length = DurationFormat.format(mTotalSeconds, mText, length);
+                mProgressIndicator.setProgress((int) sec, true);
+            } else if (mLimitMode == LIMIT_MODE_SIZE) {
+                mProgressIndicator.setProgress(
+                        Math.round(mCurrentRecordingFile.length() / 1000f /* bytes to kB */),
+                        true);
+            }
+            binding.timeText.setText(mText, 0, length);
         }
-        final String res = text;
-        mUiHandler.post(() ->
-                binding.timeText.setText(res));
     }
 
     private void saveUserPrefs() {
@@ -811,6 +867,8 @@ public class RecordFragment extends Fragment {
             editor.putString(PREF_OUTPUT_EXT, RecordingService.OGG_EXT);
         else if (checkedOutputID == R.id.outputBtnWAV)
             editor.putString(PREF_OUTPUT_EXT, RecordingService.WAV_EXT);
+        else if (checkedOutputID == R.id.outputBtnFLAC)
+            editor.putString(PREF_OUTPUT_EXT, RecordingService.FLAC_EXT);
         for (int i = 0; i < binding.qualityToggle.getChildCount(); i++) {
             final int id = binding.qualityToggle.getChildAt(i).getId();
             if (id == binding.qualityToggle.getCheckedButtonId()) {
@@ -818,8 +876,7 @@ public class RecordFragment extends Fragment {
                 break;
             }
         }
-        editor.putInt(PREF_CHANNELS,
-                binding.channelToggle.getCheckedButtonId() == R.id.channelBtn1 ? 1 : 2);
+        editor.putInt(PREF_CHANNELS, getChannels());
         editor.putInt(PREF_LIMIT_MODE, mLimitMode);
         editor.putInt(PREF_LIMIT_VALUE, (int) binding.limitSlider.getValue());
         editor.apply();
@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2023 Ido Ben-Hur
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.idoybh.yasr;
+
+import android.content.Context;
+import android.media.MediaMetadataRetriever;
+import android.webkit.MimeTypeMap;
+
+import java.io.File;
+import java.text.CollationKey;
+import java.text.Collator;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A recording in the library, everything but its duration comes from the file system.
+ * The duration is looked up in the {@link LibraryIndex} or probed later.
+ * Only a view of its row in the {@link RecordingStore}, the row is freed once this is
+ * collected. Reading its fields allocates nothing, its file and file name are made when asked for
+ */
+class RecordingData {
+    private static final long GB = 1000000000;
+    private static final long MB = 1000000;
+    private static final long KB = 1000;
+    private static final long DURATION_PENDING = -1;
+    private static final long UNREAD = -1;
+    private static final AtomicLong sNextId = new AtomicLong(0);
+    private static final Collator sCollator = Collator.getInstance();
+    private static final RecordingStore sStore = new RecordingStore();
+
+    private final int mRow;
+    private CollationKey mNameKey;
+    long id = sNextId.getAndIncrement(); // kept by the recording replacing this one
+
+    /**
+     * Only knows the name until {@link #read(LibraryIndex)}
+     * @param dir the path of its directory
+     */
+    RecordingData(String dir, String fileName) {
+        final int dotPos = fileName.lastIndexOf(".");
+        final String ext = fileName.substring(dotPos + 1);
+        mRow = sStore.add(this, dir, fileName.substring(0, dotPos), ext,
+                MimeTypeMap.getSingleton().getMimeTypeFromExtension(ext),
+                UNREAD, UNREAD, DURATION_PENDING);
+    }
+
+    /**
+     * Only reads what the file system has, see {@link #probe(LibraryIndex)}
+     * @param index where the duration is looked up
+     */
+    public RecordingData(File recording, LibraryIndex index) {
+        this(recording.getParent(), recording.getName());
+        read(index);
+    }
+
+    /**
+     * Frees the row right away, for a recording that was never handed out
+     */
+    void release() {
+        sStore.free(mRow);
+    }
+
+    /**
+     * Reads the size and modification time and looks the duration up. Any thread
+     * @param index where the duration is looked up
+     */
+    void read(LibraryIndex index) {
+        final File recording = getFile();
+        final long size = recording.length();
+        final long modified = recording.lastModified();
+        final LibraryIndex.Entry entry = index.get(recording.getName(), size, modified);
+        if (entry != null) sStore.setDuration(mRow, entry.duration);
+        sStore.setFileInfo(mRow, size, modified);
+    }
+
+    /**
+     * @return whether the size and modification time were read
+     */
+    boolean isRead() {
+        return getModified() != UNREAD;
+    }
+
+    /**
+     * @return the recording's file, a new object each time
+     */
+    File getFile() {
+        return new File(sStore.getDir(mRow), getFileName());
+    }
+
+    String getFileName() {
+        return getName() + "." + getExt();
+    }
+
+    /**
+     * @return the file name without its extension
+     */
+    String getName() {
+        return sStore.getName(mRow);
+    }
+
+    String getExt() {
+        return sStore.getExt(mRow);
+    }
+
+    String getMime() {
+        return sStore.getMime(mRow);
+    }
+
+    long getSize() {
+        return sStore.getSize(mRow);
+    }
+
+    /**
+     * @return the modification time in epoch millis
+     */
+    long getModified() {
+        return sStore.getModified(mRow);
+    }
+
+    /**
+     * @return the duration in ms, 0 if it couldn't be read. Set by probing threads
+     */
+    long getDuration() {
+        return sStore.getDuration(mRow);
+    }
+
+    /**
+     * @return the playback position to resume from in ms, 0 if none
+     */
+    long getProgress() {
+        return sStore.getProgress(mRow);
+    }
+
+    void setProgress(long progress) {
+        sStore.setProgress(mRow, progress);
+    }
+
+    /**
+     * @return whether the duration is still unknown
+     */
+    boolean isPending() {
+        return getDuration() == DURATION_PENDING;
+    }
+
+    /**
+     * Reads the duration from the file and keeps it in the index, once read
+     */
+    void probe(LibraryIndex index) {
+        final File recording = getFile();
+        final long probed = fetchDuration(recording);
+        index.put(recording.getName(), getSize(), getModified(), probed);
+        sStore.setDuration(mRow, probed);
+    }
+
+    private static long fetchDuration(File recording) {
+        // our own formats are read from their headers, a full probe is for anything else
+        final long parsed = DurationParser.parse(recording);
+        if (parsed != DurationParser.UNKNOWN) return parsed;
+        try (MediaMetadataRetriever retriever = new MediaMetadataRetriever()) {
+            retriever.setDataSource(recording.getPath());
+            return Long.parseLong(retriever.extractMetadata(
+                    MediaMetadataRetriever.METADATA_KEY_DURATION));
+        } catch (Exception e) {
+            return 0; // shown as an error
+        }
+    }
+
+    /**
+     * @return the name's sort key for the current locale, made on first use. Any thread
+     */
+    CollationKey getNameKey() {
+        synchronized (sCollator) {
+            if (mNameKey == null) mNameKey = sCollator.getCollationKey(getName());
+            return mNameKey;
+        }
+    }
+
+    public String getSizeStr(Context ctx) {
+        final long size = getSize();
+        if (size == UNREAD) return "--";
+        String sizeText = String.valueOf(size); // bytes
+        if (size > GB) {
+            sizeText = size / GB + " " + ctx.getString(R.string.unit_gb);
+        } else if (size > MB) {
+            sizeText = size / MB + " " + ctx.getString(R.string.unit_mb);
+        } else if (size > KB) {
+            sizeText = size / 1000 + " " + ctx.getString(R.string.unit_kb);
+        }
+        return sizeText;
+    }
+
+    public String getLastModStr() {
+        if (!isRead()) return "--";
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd kk:mm", Locale.getDefault());
+        return sdf.format(getModified());
+    }
+
+    public String getTimeStr() {
+        return getTimeStr(0, 0);
+    }
+
+    public String getTimeStr(int m, int s) {
+        final long duration = getDuration();
+        if (duration == DURATION_PENDING) return "--:--";
+        final int dur = Math.round(duration / 1000f);
+        if (dur == 0) return "ERROR";
+        String timeStr = "%02d:%02d/%02d:%02d";
+        return String.format(Locale.ENGLISH, timeStr, m, s, dur / 60, dur % 60);
+    }
+}
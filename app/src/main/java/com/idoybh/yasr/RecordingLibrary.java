@@ -0,0 +1,407 @@
+/*
+ * Copyright (C) 2023 Ido Ben-Hur
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.idoybh.yasr;
+
+import android.content.Context;
+import android.os.FileObserver;
+import android.os.Handler;
+import android.webkit.MimeTypeMap;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The recordings library of the app, scanned once per process and then kept up to date
+ * by watching the recordings directory, so showing it again costs nothing.
+ * Changes are applied one recording at a time and reported to a single listener.
+ * The scan only lists names, recordings are read and their durations the {@link LibraryIndex}
+ * doesn't know probed on a pool of their own in the background as the list shows them, or all of them
+ * when sorting needs it, so a large library shows as fast as a small one.
+ * State is only touched on the main thread. Reads and probes run on the probe pool,
+ * the scan, file events and index saves on the shared executor
+ */
+class RecordingLibrary {
+    private static final int WATCH_EVENTS = FileObserver.CLOSE_WRITE | FileObserver.MOVED_TO
+            | FileObserver.MOVED_FROM | FileObserver.DELETE;
+    private static final long PUBLISH_INTERVAL_MS = 100;
+    // a pool of its own, the shared executor stays free for diffs, sorts and the recorder
+    private static final int PROBE_THREADS =
+            Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+    private static RecordingLibrary sInstance;
+
+    private final Handler mUiHandler = FirstFragment.mUiHandler;
+    private final Executor mExecutor = FirstFragment.mExecutor;
+    private final Executor mProbeExecutor = Executors.newFixedThreadPool(PROBE_THREADS);
+    private final File mDir;
+    private final LibraryIndex mIndex;
+    private final FileObserver mObserver;
+    private final List<RecordingData> mRecordings = new ArrayList<>();
+    private final Map<String, RecordingData> mByName = new HashMap<>();
+    private final List<String> mEarlyEvents = new ArrayList<>();
+    // to read and probe, the rows around the visible ones first
+    private volatile Queue<RecordingData> mWindow = new ConcurrentLinkedQueue<>();
+    private final Queue<RecordingData> mPending = new ConcurrentLinkedQueue<>();
+    private final Queue<RecordingData> mUnread = new ConcurrentLinkedQueue<>(); // only to read
+    private final AtomicInteger mProbing = new AtomicInteger(0);
+    private final AtomicBoolean mPublishPosted = new AtomicBoolean(false);
+    private Listener mListener;
+    private boolean mLoading = false;
+    private boolean mLoaded = false;
+
+    /**
+     * Called on the main thread
+     */
+    interface Listener {
+        /**
+         * @param recordings a copy of the whole library
+         */
+        void onLoaded(List<RecordingData> recordings);
+
+        void onAdded(RecordingData data);
+
+        void onRemoved(RecordingData data);
+
+        /**
+         * @param old the replaced recording, e.g. before it was renamed or changed
+         */
+        void onReplaced(RecordingData old, RecordingData data);
+
+        /**
+         * Some recordings were read or probed since the last call
+         */
+        void onProbed();
+
+        /**
+         * The last queued recording was read or probed
+         */
+        void onProbingDone();
+    }
+
+    @MainThread
+    static RecordingLibrary get(Context context) {
+        if (sInstance == null) sInstance = new RecordingLibrary(context.getApplicationContext());
+        return sInstance;
+    }
+
+    private RecordingLibrary(Context context) {
+        mDir = context.getFilesDir();
+        mIndex = new LibraryIndex(new File(context.getNoBackupFilesDir(), LibraryIndex.FILE_NAME));
+        mObserver = new FileObserver(mDir, WATCH_EVENTS) {
+            @Override
+            public void onEvent(int event, @Nullable String path) {
+                if (path == null || !isRecording(path)) return;
+                onFileEvent(path);
+            }
+        };
+    }
+
+    /**
+     * @param fileName a file name in the recordings directory
+     * @return whether it's a recording by its extension
+     */
+    static boolean isRecording(String fileName) {
+        final int dot = fileName.lastIndexOf('.');
+        if (dot <= 0) return false;
+        final String mime = MimeTypeMap.getSingleton()
+                .getMimeTypeFromExtension(fileName.substring(dot + 1));
+        return mime != null && (mime.contains("audio") || mime.contains("video"));
+    }
+
+    /**
+     * Sets the listener and reports the library to it right away if loaded, loads it otherwise
+     * @param listener the listener, null stops reporting
+     */
+    @MainThread
+    void setListener(@Nullable Listener listener) {
+        mListener = listener;
+        if (listener == null) return;
+        if (mLoaded) {
+            listener.onLoaded(new ArrayList<>(mRecordings));
+            return;
+        }
+        load();
+    }
+
+    /**
+     * Deletes a recording with everything kept about it
+     * @return whether it was deleted
+     */
+    @MainThread
+    boolean delete(RecordingData data) {
+        final File file = data.getFile();
+        if (!file.delete()) return false;
+        PeaksFile.delete(file);
+        mIndex.remove(data.getFileName());
+        remove(data.getFileName());
+        return true;
+    }
+
+    /**
+     * @param name the new name without the extension
+     * @return the renamed recording, null if renaming failed
+     */
+    @MainThread
+    RecordingData rename(RecordingData data, String name) {
+        final File file = data.getFile();
+        final File newFile = new File(mDir, name + "." + data.getExt());
+        if (name.isEmpty() || newFile.exists() || !file.renameTo(newFile)) return null;
+        PeaksFile.rename(file, newFile);
+        mIndex.rename(data.getFileName(), newFile.getName());
+        final RecordingData renamed = new RecordingData(newFile, mIndex);
+        // reported as replacing the old one
+        mByName.remove(data.getFileName());
+        mByName.put(renamed.getFileName(), data);
+        put(renamed);
+        // was still being probed under its old name
+        if (renamed.isPending()) {
+            mPending.add(renamed);
+            startWorkers(1);
+        }
+        return renamed;
+    }
+
+    /**
+     * Reads and probes the recordings the list shows and those around them.
+     * What's left of the previous window is dropped, it scrolled away
+     */
+    @MainThread
+    void fetchWindow(List<RecordingData> window) {
+        final Queue<RecordingData> queue = new ConcurrentLinkedQueue<>();
+        for (RecordingData data : window) {
+            if (!data.isRead() || data.isPending()) queue.add(data);
+        }
+        mWindow = queue;
+        startWorkers(queue.size());
+    }
+
+    /**
+     * Reads every recording, e.g. to sort by what's read. {@link Listener#onProbingDone()}
+     * is called once it's done
+     * @param durations whether durations are probed as well
+     * @return whether it's all there already, nothing was queued
+     */
+    @MainThread
+    boolean fetchAll(boolean durations) {
+        final Queue<RecordingData> queue = durations ? mPending : mUnread;
+        int queued = 0;
+        for (RecordingData data : mRecordings) {
+            if (data.isRead() && (!durations || !data.isPending())) continue;
+            queue.add(data);
+            queued++;
+        }
+        startWorkers(queued);
+        return queued == 0;
+    }
+
+    /**
+     * Saves the index in the background if it changed
+     */
+    void save() {
+        mExecutor.execute(this::saveIndex);
+    }
+
+    @MainThread
+    private void load() {
+        if (mLoading) return;
+        mLoading = true;
+        // watch first so nothing is missed between the scan and the first event
+        mObserver.startWatching();
+        mExecutor.execute(() -> {
+            mIndex.load();
+            final List<RecordingData> recordings = new ArrayList<>();
+            // only names, nothing is stat'ed until shown
+            final String[] names = mDir.list();
+            if (names != null) {
+                for (String name : names) {
+                    if (isRecording(name)) recordings.add(new RecordingData(mDir.getPath(), name));
+                }
+            }
+            mUiHandler.post(() -> onScanned(recordings));
+        });
+    }
+
+    @MainThread
+    private void onScanned(List<RecordingData> recordings) {
+        for (RecordingData data : recordings) {
+            mRecordings.add(data);
+            mByName.put(data.getFileName(), data);
+        }
+        mLoaded = true;
+        if (mListener != null) mListener.onLoaded(new ArrayList<>(mRecordings));
+        final Set<String> names = new HashSet<>(mByName.keySet());
+        mExecutor.execute(() -> mIndex.retain(names));
+        // the scan may have missed these, stat them again
+        for (String name : mEarlyEvents) onFileEvent(name);
+        mEarlyEvents.clear();
+    }
+
+    /**
+     * Watcher or executor thread - a recording was written, moved or deleted
+     */
+    private void onFileEvent(@NonNull String name) {
+        mExecutor.execute(() -> {
+            final File file = new File(mDir, name);
+            final RecordingData data = file.isFile() ? new RecordingData(file, mIndex) : null;
+            mUiHandler.post(() -> apply(name, data));
+        });
+    }
+
+    /**
+     * @param data the recording as it is now, null if it's gone
+     */
+    @MainThread
+    private void apply(String name, @Nullable RecordingData data) {
+        if (!mLoaded) {
+            if (data != null) data.release();
+            mEarlyEvents.add(name);
+            return;
+        }
+        if (data == null) {
+            remove(name);
+            return;
+        }
+        final RecordingData old = mByName.get(name);
+        if (old != null && old.getSize() == data.getSize()
+                && old.getModified() == data.getModified()) {
+            data.release();
+            return; // e.g. our own rename
+        }
+        put(data);
+        if (data.isPending()) {
+            mPending.add(data);
+            startWorkers(1);
+        }
+    }
+
+    @MainThread
+    private void put(RecordingData data) {
+        final RecordingData old = mByName.put(data.getFileName(), data);
+        if (old != null) {
+            data.id = old.id;
+            mRecordings.set(mRecordings.indexOf(old), data);
+            if (mListener != null) mListener.onReplaced(old, data);
+            return;
+        }
+        mRecordings.add(data);
+        if (mListener != null) mListener.onAdded(data);
+    }
+
+    @MainThread
+    private void remove(String name) {
+        final RecordingData old = mByName.remove(name);
+        if (old == null) return;
+        mRecordings.remove(old);
+        mIndex.remove(name);
+        if (mListener != null) mListener.onRemoved(old);
+    }
+
+    /**
+     * Starts workers for what was just queued, up to {@link #PROBE_THREADS}
+     */
+    @MainThread
+    private void startWorkers(int queued) {
+        while (true) {
+            final int running = mProbing.get();
+            if (running >= Math.min(PROBE_THREADS, queued)) return;
+            if (!mProbing.compareAndSet(running, running + 1)) continue;
+            mProbeExecutor.execute(this::probeLoop);
+        }
+    }
+
+    private void probeLoop() {
+        while (true) {
+            //noinspection StatementWithEmptyBody
+            while (fetchNext());
+            mProbing.decrementAndGet();
+            // something may have been queued right before we stopped
+            if (isQueueEmpty()) break;
+            mProbing.incrementAndGet();
+        }
+        if (mProbing.get() != 0) return;
+        saveIndex();
+        mUiHandler.post(() -> {
+            if (mProbing.get() != 0 || !isQueueEmpty()) return;
+            mUiHandler.removeCallbacks(mPublishRunnable);
+            mPublishRunnable.run();
+            if (mListener != null) mListener.onProbingDone();
+        });
+    }
+
+    /**
+     * Reads and probes the next queued recording, the window's first
+     * @return whether anything was queued
+     */
+    private boolean fetchNext() {
+        RecordingData data = mWindow.poll();
+        if (data == null) data = mPending.poll();
+        final boolean probe = data != null;
+        if (data == null) data = mUnread.poll();
+        if (data == null) return false;
+        boolean fetched = false; // it may have been queued twice
+        if (!data.isRead()) {
+            data.read(mIndex);
+            fetched = true;
+        }
+        if (probe && data.isPending()) {
+            data.probe(mIndex);
+            fetched = true;
+        }
+        if (fetched) schedulePublish();
+        return true;
+    }
+
+    private boolean isQueueEmpty() {
+        return mWindow.isEmpty() && mPending.isEmpty() && mUnread.isEmpty();
+    }
+
+    private final Runnable mPublishRunnable = () -> {
+        mPublishPosted.set(false);
+        if (mListener != null) mListener.onProbed();
+    };
+
+    /**
+     * Coalesces probe results into one report per {@link #PUBLISH_INTERVAL_MS}
+     */
+    private void schedulePublish() {
+        if (!mPublishPosted.compareAndSet(false, true)) return;
+        mUiHandler.postDelayed(mPublishRunnable, PUBLISH_INTERVAL_MS);
+    }
+
+    private void saveIndex() {
+        try {
+            mIndex.save();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -27,21 +27,35 @@ import android.content.SharedPreferences;
 import android.media.AudioAttributes;
 import android.media.AudioDeviceInfo;
 import android.media.AudioFocusRequest;
+import android.media.AudioFormat;
 import android.media.AudioManager;
+import android.media.AudioRecord;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
 import android.media.MediaRecorder;
 import android.os.Binder;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
 import android.os.PowerManager;
+import android.util.Log;
+
+import androidx.preference.PreferenceManager;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
- * Main application service - manages all recording procedure
+ * Main application service - manages all recording procedure.
+ * Every format is captured the same way, PCM is read from an {@link AudioRecord} once
+ * and handed by a {@link CapturePipeline} to the format's {@link PcmSink}
  */
 public class RecordingService extends Service {
     public static final String PREF_STARTED = "service_started";
@@ -49,28 +63,40 @@ public class RecordingService extends Service {
     public static final String MPEG_4_EXT = "m4a";
     public static final String OGG_EXT = "ogg";
     public static final String WAV_EXT = "wav";
+    public static final String FLAC_EXT = "flac";
+    private static final String TAG = "RecordingService";
     private static final String WAKELOCK_TAG = "YASR::RecordingWakelock";
     private static final String NOTIFICATION_CHANNEL = "Recording Service";
     private static final int NOTIFICATION_ID = 0x01;
-    private static final Map<String, Integer> EXT_TO_OUT = new HashMap<>(Map.of(
-            MPEG_4_EXT, MediaRecorder.OutputFormat.MPEG_4,
-            OGG_EXT, MediaRecorder.OutputFormat.OGG
+    private static final int RING_SECONDS = 2; // how much audio the pipeline can hold back
+    private static final Map<String, Integer> EXT_TO_MUXER = new HashMap<>(Map.of(
+            MPEG_4_EXT, MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4,
+            OGG_EXT, MediaMuxer.OutputFormat.MUXER_OUTPUT_OGG
     ));
-    private static final Map<Integer, Integer> OUT_TO_ENCODER = new HashMap<>(Map.of(
-            MediaRecorder.OutputFormat.MPEG_4, MediaRecorder.AudioEncoder.AAC,
-            MediaRecorder.OutputFormat.OGG, MediaRecorder.AudioEncoder.OPUS
+    private static final Map<String, String> EXT_TO_ENCODER = new HashMap<>(Map.of(
+            MPEG_4_EXT, MediaFormat.MIMETYPE_AUDIO_AAC,
+            OGG_EXT, MediaFormat.MIMETYPE_AUDIO_OPUS
     ));
     private final IBinder binder = new LocalBinder();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
     protected RecordOptions mOptions;
-    private MediaRecorder mRecorder;
+    private AudioRecord mRecorder;
+    private CapturePipeline mPipeline;
+    // of every segment, added by the writer thread as segments rotate
+    private final List<TeeSink> mTees = new CopyOnWriteArrayList<>();
+    private SegmentSink mSegments;
+    private PreRollBuffer mPreRoll;
+    private PeakHistory mPeakHistory;
+    private volatile SampleClock mClock;
+    private volatile LevelMeter mMeter;
+    private volatile boolean mWriteFailed = false;
+    private volatile boolean mLimitReached = false;
     private AudioManager mAudioManager;
     private AudioFocusRequest mAudioFocusRequest;
     private SharedPreferences mSharedPreferences;
     private PowerManager.WakeLock mWakeLock;
     protected int mStatus = Status.IDLE;
     private int mStatusExtra = 0;
-    protected Calendar mStartTime;
-    protected long mDuration = 0;
 
     private final List<StatusListener> mListeners = new ArrayList<>();
 
@@ -129,116 +155,257 @@ public class RecordingService extends Service {
         mOptions = options;
     }
 
-    @SuppressWarnings("ConstantConditions")
+    /**
+     * @param preRoll audio to start the next recording with, used only when its format
+     *                matches the capture's. null disables
+     */
+    synchronized void setPreRoll(PreRollBuffer preRoll) {
+        mPreRoll = preRoll;
+    }
+
+    /**
+     * @param history where to keep the waveform of the recording, applies right away
+     *                when already recording. null disables
+     */
+    synchronized void setPeakHistory(PeakHistory history) {
+        mPeakHistory = history;
+        final LevelMeter meter = mMeter;
+        final SampleClock clock = mClock;
+        if (meter == null || clock == null) return;
+        meter.setHistory(history,
+                PeakHistory.getColumnSamples(clock.getSampleRate(), mOptions.getChannels()));
+    }
+
+    @SuppressLint("MissingPermission")
     public synchronized void startRecording() {
         if (mStatus != Status.IDLE) {
             updateListeners(mStatus);
             return;
         }
-        final File recordFile = mOptions.getFile();
-        final int outFormat = EXT_TO_OUT.getOrDefault(getFileExtension(recordFile), -1);
-        mRecorder = new MediaRecorder(this);
-        mRecorder.setAudioSource(MediaRecorder.AudioSource.MIC);
-        mRecorder.setPreferredDevice(mOptions.getSource());
-        mRecorder.setOutputFormat(outFormat);
-        mRecorder.setAudioEncoder(OUT_TO_ENCODER.get(outFormat));
-        mRecorder.setAudioSamplingRate(mOptions.getSamplingRate());
-        mRecorder.setAudioEncodingBitRate(mOptions.getSamplingRate() * mOptions.getEncodingRate());
-        mRecorder.setAudioChannels(mOptions.getChannels());
-        final int[] limit = mOptions.getLimit();
-        if (limit != null) {
-            if (limit[0] == RecordFragment.LIMIT_MODE_TIME) {
-                mRecorder.setMaxDuration(limit[1] * 1000 /* s to ms */);
-            } else if (limit[0] == RecordFragment.LIMIT_MODE_SIZE) {
-                mRecorder.setMaxFileSize(limit[1] * 1000L /* kB to bytes */);
-            }
-        }
-        mRecorder.setOutputFile(mOptions.getFile());
-        mRecorder.setOnInfoListener((mr, what, extra) -> {
-            if (what == MediaRecorder.MEDIA_RECORDER_INFO_MAX_DURATION_REACHED ||
-                    what == MediaRecorder.MEDIA_RECORDER_INFO_MAX_FILESIZE_REACHED) {
-                updateListeners(Status.MAX_REACHED);
-                returnAudioFocus();
-            } else {
-                updateListeners(Status.FAILED, extra);
-                returnAudioFocus();
-            }
-        });
-        mRecorder.setOnErrorListener((mr, what, extra) -> updateListeners(Status.FAILED, extra));
+        requestAudioFocus();
+        final File[] files = getFiles();
+        final String ext = getFileExtension(files[0]);
+        final boolean isEncoded = EXT_TO_ENCODER.containsKey(ext);
+        final boolean isFlac = FLAC_EXT.equals(ext);
+        final int channelCount = mOptions.getChannels();
+        // capture at what the main file takes, copies are converted down when needed
+        final int bits = getSinkBits(ext, mOptions.getEncodingRate());
+        final int[] rate = { mOptions.getSamplingRate() };
+        final PcmSink[] sinks;
         try {
-            requestAudioFocus();
-            mRecorder.prepare();
-            mRecorder.start();
-        } catch (Exception e) {
+            sinks = openSinks(files, rate, bits);
+        } catch (IOException e) {
             e.printStackTrace();
-            updateListeners(Status.FAILED, -1);
             returnAudioFocus();
+            updateListeners(Status.FAILED, -1);
             return;
         }
-        mStartTime = Calendar.getInstance();
-        mDuration = 0;
+        final int sRate = rate[0];
+        int encoding = AudioFormat.ENCODING_PCM_16BIT;
+        if (bits == 32)
+            encoding = AudioFormat.ENCODING_PCM_32BIT;
+        else if (bits == 24)
+            encoding = AudioFormat.ENCODING_PCM_24BIT_PACKED;
+        else if (bits == 8)
+            encoding = AudioFormat.ENCODING_PCM_8BIT;
+        final int channels = channelCount > 1
+                ? AudioFormat.CHANNEL_IN_STEREO : AudioFormat.CHANNEL_IN_MONO;
+        final int bufferSize = AudioRecord.getMinBufferSize(sRate, channels, encoding);
+        final int frameSize = channelCount * bits / 8;
+        final long byteRate = (long) sRate * frameSize;
+        // read & write sizes are user set multiples of the device's minimal buffer
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(this);
+        final float readFactor = Float.parseFloat(
+                prefs.getString(SettingsFragment.CAPTURE_READ_KEY, "0.5"));
+        final int writeFactor = Integer.parseInt(
+                prefs.getString(SettingsFragment.CAPTURE_WRITE_KEY, "4"));
+        final int chunkSize = Math.max(frameSize,
+                (int) (bufferSize * readFactor) / frameSize * frameSize);
+        final int batch = (int) Math.max(1, (long) bufferSize * writeFactor / chunkSize);
+        final int slots = (int) Math.max(batch * 2L, byteRate * RING_SECONDS / chunkSize);
+        try {
+            mRecorder = new AudioRecord.Builder()
+                    .setAudioSource(MediaRecorder.AudioSource.MIC)
+                    .setAudioFormat(new AudioFormat.Builder()
+                            .setSampleRate(sRate)
+                            .setChannelMask(channels)
+                            .setEncoding(encoding).build())
+                    .setBufferSizeInBytes(Math.max(bufferSize, chunkSize * 2))
+                    .build();
+            mRecorder.setPreferredDevice(mOptions.getSource());
+            mRecorder.startRecording();
+            if (mRecorder.getRecordingState() != AudioRecord.RECORDSTATE_RECORDING)
+                throw new IllegalStateException("Capture didn't start, the mic may be busy");
+        } catch (UnsupportedOperationException | IllegalStateException e) {
+            // e.g. the format isn't supported
+            Log.e(TAG, "Couldn't start capturing: " + e.getMessage());
+            abortStart(sinks, files);
+            return;
+        }
+        // taken right as capture starts so it meets the first read
+        ByteBuffer preRoll = null;
+        if (mPreRoll != null && mPreRoll.getSampleRate() == sRate
+                && mPreRoll.getChannels() == channelCount) {
+            preRoll = mPreRoll.snapshot(bits);
+        }
+        mPreRoll = null;
+        mWriteFailed = false;
+        mLimitReached = false;
+        mClock = new SampleClock(sRate, frameSize);
+        mMeter = new LevelMeter(bits);
+        mMeter.setHistory(mPeakHistory, PeakHistory.getColumnSamples(sRate, channelCount));
+        // copies must be able to hold the whole pre-roll as it's written at once
+        final int teeSlots = preRoll == null ? slots : slots + preRoll.remaining() / chunkSize + 1;
+        mTees.clear();
+        PcmSink writer = teeSinks(sinks, files, bits, chunkSize, teeSlots);
+        final int[] limit = mOptions.getLimit();
+        long limitFrames = 0;
+        long limitBytes = 0;
+        if (limit != null && limit[0] == RecordFragment.LIMIT_MODE_TIME) {
+            limitFrames = mClock.framesForSeconds(limit[1]);
+        } else if (limit != null && limit[0] == RecordFragment.LIMIT_MODE_SIZE && !isEncoded
+                && !isFlac) {
+            limitFrames = mClock.framesForBytes(
+                    limit[1] * 1000L /* kB to bytes */ - WavWriter.HEADER_SIZE);
+        } else if (limit != null && limit[0] == RecordFragment.LIMIT_MODE_SIZE) {
+            // compressed size can't be predicted, go by the output's actual size
+            limitBytes = limit[1] * 1000L /* kB to bytes */;
+        }
+        mSegments = null;
+        if (limit != null && mOptions.isSplit()) {
+            // a new set of files every time the limit is reached instead of stopping
+            mSegments = new SegmentSink(writer, segment -> {
+                final File[] segmentFiles = getSegmentFiles(segment);
+                final PcmSink[] segmentSinks = openSinks(segmentFiles, new int[] { sRate }, bits);
+                return teeSinks(segmentSinks, segmentFiles, bits, chunkSize, slots);
+            }, frameSize, limitFrames, limitBytes);
+            writer = mSegments;
+        }
+        mPipeline = new CapturePipeline(mRecorder, writer, mClock, chunkSize, slots, batch,
+                (failed, limitReached) -> {
+            mWriteFailed = failed;
+            mLimitReached = limitReached;
+            // a limit was reached or writing failed, finish up from the main thread
+            // does nothing when we're the ones stopping
+            mMainHandler.post(this::stopRecording);
+        });
+        if (mSegments == null) {
+            mPipeline.setLimit(limitFrames);
+            mPipeline.setSizeLimit(limitBytes);
+        }
+        if (preRoll != null && preRoll.hasRemaining()) mPipeline.setPreRoll(preRoll);
+        mPipeline.setLevelMeter(mMeter);
+        mPipeline.start();
         updateListeners(Status.STARTED);
     }
 
-    public synchronized void eraseRecording() {
+    /**
+     * Undoes a start that failed after the sinks were opened, no files are left behind
+     */
+    private void abortStart(PcmSink[] sinks, File[] files) {
         if (mRecorder != null) {
-            if (mStatus == Status.PAUSED)
-                mRecorder.resume();
-            mRecorder.stop();
             mRecorder.release();
             mRecorder = null;
         }
-        //noinspection ResultOfMethodCallIgnored
-        mOptions.getFile().delete();
+        closeSinks(sinks);
+        for (File file : files) {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+            PeaksFile.delete(file);
+        }
         returnAudioFocus();
-        updateListeners(Status.IDLE);
+        updateListeners(Status.FAILED, -1);
     }
 
-    public synchronized void stopRecording() {
-        if (mRecorder != null) {
-            if (mStatus == Status.PAUSED)
-                mRecorder.resume();
-            mRecorder.stop();
-            mRecorder.release();
-            mRecorder = null;
+    public synchronized void eraseRecording() {
+        finishCapture();
+        final int segments = mSegments != null ? mSegments.getSegmentCount() : 1;
+        for (int i = 0; i < segments; i++) {
+            for (File file : getSegmentFiles(i)) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+                PeaksFile.delete(file);
+            }
         }
         returnAudioFocus();
         updateListeners(Status.IDLE);
     }
 
+    public synchronized void stopRecording() {
+        if (mRecorder == null) return; // already stopped
+        finishCapture();
+        returnAudioFocus();
+        if (mWriteFailed) updateListeners(Status.FAILED, -1);
+        else updateListeners(mLimitReached ? Status.MAX_REACHED : Status.IDLE);
+        stopSelf();
+    }
+
     public synchronized void pauseResumeRecording() {
         if (mStatus == Status.PAUSED) {
-            mStartTime = Calendar.getInstance();
             if (!suspendRecord(false)) return;
             updateListeners(Status.STARTED);
         } else if (mStatus == Status.STARTED) {
-            mDuration += Calendar.getInstance().getTimeInMillis() - mStartTime.getTimeInMillis();
-            mStartTime = null;
             if (!suspendRecord(true)) return;
             updateListeners(Status.PAUSED);
         }
     }
 
     @SuppressWarnings("BooleanMethodIsAlwaysInverted")
-    protected synchronized boolean suspendRecord(boolean suspend) {
-        if (mRecorder == null) return false;
+    private synchronized boolean suspendRecord(boolean suspend) {
+        if (mPipeline == null) return false;
         if (suspend) {
-            mRecorder.pause();
+            // the capture threads block until resumed, no busy looping while paused
+            mPipeline.pause();
             returnAudioFocus();
             return true;
         }
         requestAudioFocus();
-        mRecorder.resume();
+        mPipeline.resume();
         return true;
     }
 
     /**
-     * Get the total duration of the current recording
+     * Get the total duration of the current recording, counted by written frames
      * @return the total duration in milliseconds
      */
-    public synchronized long getDuration() {
-        if (mStartTime == null) return mDuration; // when paused
-        return mDuration + Calendar.getInstance().getTimeInMillis() - mStartTime.getTimeInMillis();
+    public long getDuration() {
+        final SampleClock clock = mClock;
+        return clock != null ? clock.getDurationMs() : 0;
+    }
+
+    /**
+     * The input level of the current recording, so the screen needs no mic of its own
+     * @return the meter of the capture, null if nothing was recorded yet
+     */
+    LevelMeter getLevelMeter() {
+        return mMeter;
+    }
+
+    /**
+     * Stops capturing and waits for the pipeline to finalize the file
+     */
+    private void finishCapture() {
+        if (mPipeline != null) {
+            mPipeline.stop();
+            Log.i(TAG, "Capture finished: max ring fill " + mPipeline.getMaxRingFill()
+                    + "/" + mPipeline.getRingCapacity() + ", overruns " + mPipeline.getOverruns()
+                    + ", max resume latency " + mPipeline.getMaxResumeLatencyMs() + "ms");
+            mPipeline = null;
+        }
+        if (mSegments != null)
+            Log.i(TAG, "Recorded " + mSegments.getSegmentCount() + " segments");
+        for (int segment = 0; segment < mTees.size(); segment++) {
+            final TeeSink tee = mTees.get(segment);
+            for (int i = 0; i < tee.getBranchCount(); i++) {
+                Log.i(TAG, "Copy " + i + " of segment " + segment + ": max backlog "
+                        + tee.getMaxBacklog(i) + "/" + tee.getBacklogCapacity(i) + ", dropped "
+                        + tee.getDropped(i) + " bytes" + (tee.hasFailed(i) ? ", failed" : ""));
+            }
+        }
+        mTees.clear();
+        if (mRecorder == null) return;
+        mRecorder.release();
+        mRecorder = null;
     }
 
     public synchronized int getStatus() {
@@ -324,6 +491,138 @@ public class RecordingService extends Service {
         return mAudioManager;
     }
 
+    /**
+     * @return the main recording file followed by its copies
+     */
+    private File[] getFiles() {
+        final File[] copies = mOptions.getCopies();
+        if (copies == null) return new File[] { mOptions.getFile() };
+        final File[] files = new File[copies.length + 1];
+        files[0] = mOptions.getFile();
+        System.arraycopy(copies, 0, files, 1, copies.length);
+        return files;
+    }
+
+    /**
+     * @param segment the index of the segment, 0 for the first
+     * @return the files of the segment, the first uses the files' names as is
+     * and the rest are numbered after them, e.g. "name_002.wav"
+     */
+    private File[] getSegmentFiles(int segment) {
+        final File[] files = getFiles();
+        if (segment == 0) return files;
+        for (int i = 0; i < files.length; i++) {
+            final String name = files[i].getName();
+            final int dot = name.lastIndexOf(".");
+            files[i] = new File(files[i].getParentFile(), name.substring(0, dot)
+                    + String.format(Locale.ENGLISH, "_%03d", segment + 1) + name.substring(dot));
+        }
+        return files;
+    }
+
+    /**
+     * Combines opened sinks into the one the capture is written to
+     * @param sinks the sinks of the main file followed by its copies, null copies are skipped
+     * @param files the files of the sinks
+     * @param bits the captured bit depth
+     * @param slotSize the largest buffer that will be written, in bytes
+     * @param slots the number of buffers a copy may fall behind by
+     * @return the main sink, or a {@link TeeSink} when there are copies
+     */
+    private PcmSink teeSinks(PcmSink[] sinks, File[] files, int bits, int slotSize, int slots) {
+        TeeSink tee = null;
+        for (int i = 1; i < sinks.length; i++) {
+            if (sinks[i] == null) continue;
+            if (tee == null) tee = new TeeSink(sinks[0], bits);
+            // copies may fall behind by as much as the capture itself
+            tee.addBranch(sinks[i], getSinkBits(getFileExtension(files[i]), bits),
+                    slotSize, slots);
+        }
+        if (tee == null) return sinks[0];
+        mTees.add(tee); // its stats are logged once the capture finishes
+        return tee;
+    }
+
+    /**
+     * Opens the sinks of every file. Encoders are opened first as they may dictate the rate
+     * @param files the main file followed by its copies
+     * @param rate holds the requested sampling rate, set to the rate all sinks were opened with
+     * @param bits the captured bit depth
+     * @return the sinks in the order of the files, null for copies that couldn't be opened
+     * @throws IOException if the main file couldn't be opened, nothing is left open then
+     */
+    private PcmSink[] openSinks(File[] files, int[] rate, int bits) throws IOException {
+        final PcmSink[] sinks = new PcmSink[files.length];
+        final int bitRate = mOptions.getSamplingRate() * mOptions.getEncodingRate();
+        final int channels = mOptions.getChannels();
+        boolean rateSet = false;
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < files.length; i++) {
+                // write straight into the final files, headers are patched when we stop
+                final String ext = getFileExtension(files[i]);
+                final String mime = EXT_TO_ENCODER.get(ext);
+                if ((mime != null) != (pass == 0)) continue;
+                try {
+                    if (mime != null) {
+                        //noinspection ConstantConditions
+                        final EncoderSink encoder = new EncoderSink(files[i], mime,
+                                EXT_TO_MUXER.get(ext), rate[0], channels, bitRate);
+                        sinks[i] = encoder;
+                        if (encoder.getSampleRate() == rate[0]) {
+                            rateSet = true;
+                        } else if (!rateSet) {
+                            rate[0] = encoder.getSampleRate(); // e.g. Opus takes specific rates
+                            rateSet = true;
+                        } else {
+                            throw new IOException("Can't encode " + ext + " at " + rate[0]);
+                        }
+                    } else if (FLAC_EXT.equals(ext)) {
+                        sinks[i] = new FlacWriter(files[i], rate[0], channels,
+                                getSinkBits(ext, bits));
+                    } else {
+                        sinks[i] = new WavWriter(files[i], rate[0], channels, bits);
+                    }
+                } catch (IOException e) {
+                    if (i == 0) {
+                        closeSinks(sinks);
+                        throw e;
+                    }
+                    // a copy failing shouldn't fail the recording
+                    e.printStackTrace();
+                    closeSinks(sinks[i]);
+                    sinks[i] = null;
+                    //noinspection ResultOfMethodCallIgnored
+                    files[i].delete();
+                }
+            }
+        }
+        // the main file gets a peak overview for the library
+        sinks[0] = new PeaksSink(sinks[0], PeaksFile.getFile(files[0]), bits, rate[0], channels);
+        return sinks;
+    }
+
+    private static void closeSinks(PcmSink... sinks) {
+        for (PcmSink sink : sinks) {
+            if (sink == null) continue;
+            try {
+                sink.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * @param ext the extension of the file written by the sink
+     * @param bits the available bit depth
+     * @return the bit depth the sink is written with
+     */
+    private static int getSinkBits(String ext, int bits) {
+        if (EXT_TO_ENCODER.containsKey(ext)) return 16; // what platform encoders take
+        if (FLAC_EXT.equals(ext)) return Math.min(bits, 24); // our encoder tops at 24 bit
+        return bits;
+    }
+
     private static String getFileExtension(final File file) {
         final String name = file.getName();
         return name.substring(name.lastIndexOf(".") + 1);
@@ -358,6 +657,8 @@ public class RecordingService extends Service {
         private final int mEncodingRate;
         private final int mChannels;
         private final int[] mLimit;
+        private final File[] mCopies;
+        private final boolean mSplit;
 
         /**
          * Recording options collection
@@ -368,15 +669,20 @@ public class RecordingService extends Service {
          * @param channels the number of channels to record with
          * @param limit array of { limit mode, limit } where limit is either in seconds or MB
          *              null disables
+         * @param copies more files to write the same recording to, formatted by extension
+         *               null disables
+         * @param split whether to start new files when the limit is reached instead of stopping
          */
         public RecordOptions(File file, AudioDeviceInfo source, int samplingRate, int encodingRate,
-                             int channels, int[] limit) {
+                             int channels, int[] limit, File[] copies, boolean split) {
             mFile = file;
             mSource = source;
             mSamplingRate = samplingRate;
             mEncodingRate = encodingRate;
             mChannels = channels;
             mLimit = limit;
+            mCopies = copies;
+            mSplit = split;
         }
 
         public File getFile() {
@@ -399,6 +705,14 @@ public class RecordingService extends Service {
         public int[] getLimit() {
             return mLimit;
         }
+
+        public File[] getCopies() {
+            return mCopies;
+        }
+
+        public boolean isSplit() {
+            return mSplit;
+        }
     }
 
     public static final class Status {
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2023 Ido Ben-Hur
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.idoybh.yasr;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * What the library knows about its recordings, kept as one column per field and one row
+ * per recording so a large library is a handful of arrays instead of objects for each.
+ * Strings repeating across rows such as directories, extensions and mime types are kept once.
+ * A row is reused once it's freed or the object reading it is collected, so the store only
+ * grows with the recordings that are around. Thread safe
+ */
+final class RecordingStore {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final Map<String, String> mPool = new HashMap<>();
+    private final ReferenceQueue<Object> mCollected = new ReferenceQueue<>();
+    private RowReference[] mOwners = new RowReference[INITIAL_CAPACITY];
+    private int[] mFree = new int[INITIAL_CAPACITY]; // rows to reuse
+    private int mFreeCount = 0;
+    private String[] mDirs = new String[INITIAL_CAPACITY];
+    private String[] mNames = new String[INITIAL_CAPACITY];
+    private String[] mExts = new String[INITIAL_CAPACITY];
+    private String[] mMimes = new String[INITIAL_CAPACITY];
+    private long[] mSizes = new long[INITIAL_CAPACITY];
+    private long[] mModified = new long[INITIAL_CAPACITY]; // epoch millis
+    private long[] mDurations = new long[INITIAL_CAPACITY];
+    private long[] mProgresses = new long[INITIAL_CAPACITY]; // playback position, 0 if none
+    private int mRows = 0;
+
+    private static final class RowReference extends PhantomReference<Object> {
+        final int row;
+
+        RowReference(Object owner, ReferenceQueue<Object> queue, int row) {
+            super(owner, queue);
+            this.row = row;
+        }
+    }
+
+    /**
+     * @param owner the object reading the row, it's freed once that's collected. null if
+     *              it's only freed by {@link #free(int)}
+     * @param name the file name without its extension
+     * @return the new row
+     */
+    synchronized int add(Object owner, String dir, String name, String ext, String mime,
+                         long size, long modified, long duration) {
+        reclaim();
+        final int row;
+        if (mFreeCount > 0) {
+            row = mFree[--mFreeCount];
+        } else {
+            if (mRows == mSizes.length) grow();
+            row = mRows++;
+        }
+        mOwners[row] = owner != null ? new RowReference(owner, mCollected, row) : null;
+        mDirs[row] = pool(dir);
+        mNames[row] = name;
+        mExts[row] = pool(ext);
+        mMimes[row] = pool(mime);
+        mSizes[row] = size;
+        mModified[row] = modified;
+        mDurations[row] = duration;
+        mProgresses[row] = 0;
+        return row;
+    }
+
+    /**
+     * Frees a row for reuse, nothing may read it after
+     */
+    synchronized void free(int row) {
+        mOwners[row] = null; // not freed again once its owner is collected
+        mDirs[row] = null;
+        mNames[row] = null;
+        mExts[row] = null;
+        mMimes[row] = null;
+        if (mFreeCount == mFree.length) mFree = Arrays.copyOf(mFree, mFreeCount * 2);
+        mFree[mFreeCount++] = row;
+    }
+
+    /**
+     * @return the number of rows in use
+     */
+    synchronized int getRows() {
+        reclaim();
+        return mRows - mFreeCount;
+    }
+
+    synchronized String getDir(int row) {
+        return mDirs[row];
+    }
+
+    synchronized String getName(int row) {
+        return mNames[row];
+    }
+
+    synchronized String getExt(int row) {
+        return mExts[row];
+    }
+
+    synchronized String getMime(int row) {
+        return mMimes[row];
+    }
+
+    synchronized long getSize(int row) {
+        return mSizes[row];
+    }
+
+    synchronized long getModified(int row) {
+        return mModified[row];
+    }
+
+    synchronized void setFileInfo(int row, long size, long modified) {
+        mSizes[row] = size;
+        mModified[row] = modified;
+    }
+
+    synchronized long getDuration(int row) {
+        return mDurations[row];
+    }
+
+    synchronized void setDuration(int row, long duration) {
+        mDurations[row] = duration;
+    }
+
+    synchronized long getProgress(int row) {
+        return mProgresses[row];
+    }
+
+    synchronized void setProgress(int row, long progress) {
+        mProgresses[row] = progress;
+    }
+
+    private String pool(String s) {
+        if (s == null) return null;
+        final String pooled = mPool.putIfAbsent(s, s);
+        return pooled != null ? pooled : s;
+    }
+
+    /**
+     * Frees the rows of collected owners
+     */
+    private void reclaim() {
+        Reference<?> reference;
+        while ((reference = mCollected.poll()) != null) {
+            final RowReference owner = (RowReference) reference;
+            if (mOwners[owner.row] == owner) free(owner.row);
+        }
+    }
+
+    private void grow() {
+        final int capacity = mSizes.length * 2;
+        mOwners = Arrays.copyOf(mOwners, capacity);
+        mDirs = Arrays.copyOf(mDirs, capacity);
+        mNames = Arrays.copyOf(mNames, capacity);
+        mExts = Arrays.copyOf(mExts, capacity);
+        mMimes = Arrays.copyOf(mMimes, capacity);
+        mSizes = Arrays.copyOf(mSizes, capacity);
+        mModified = Arrays.copyOf(mModified, capacity);
+        mDurations = Arrays.copyOf(mDurations, capacity);
+        mProgresses = Arrays.copyOf(mProgresses, capacity);
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2023 Ido Ben-Hur
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.idoybh.yasr;
+
+/**
+ * Recording clock driven by the number of PCM frames actually written.
+ * Advanced by a single writer thread, safe to read from any thread without locking or allocating
+ */
+class SampleClock {
+    private final int mSampleRate;
+    private final int mFrameSize;
+    private volatile long mFrames = 0;
+
+    /**
+     * @param sampleRate the sampling rate per second
+     * @param frameSize the size of a single frame (a sample of every channel) in bytes
+     */
+    SampleClock(int sampleRate, int frameSize) {
+        mSampleRate = sampleRate;
+        mFrameSize = frameSize;
+    }
+
+    int getSampleRate() {
+        return mSampleRate;
+    }
+
+    int getFrameSize() {
+        return mFrameSize;
+    }
+
+    /**
+     * Writer side - account for written frames
+     * @param frames number of frames written
+     */
+    void advance(long frames) {
+        //noinspection NonAtomicOperationOnVolatileField single writer
+        mFrames += frames;
+    }
+
+    /**
+     * @return the number of frames written so far
+     */
+    long getFrames() {
+        return mFrames;
+    }
+
+    /**
+     * @return the number of PCM bytes written so far
+     */
+    long getBytes() {
+        return mFrames * mFrameSize;
+    }
+
+    /**
+     * @return the written duration in milliseconds
+     */
+    long getDurationMs() {
+        return mFrames * 1000 / mSampleRate;
+    }
+
+    /**
+     * @param seconds a duration in seconds
+     * @return the number of frames in the given duration
+     */
+    long framesForSeconds(long seconds) {
+        return seconds * mSampleRate;
+    }
+
+    /**
+     * @param bytes an amount of PCM bytes
+     * @return the number of whole frames that fit in the given amount
+     */
+    long framesForBytes(long bytes) {
+        return Math.max(0, bytes / mFrameSize);
+    }
+}
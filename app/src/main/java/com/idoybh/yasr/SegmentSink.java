@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2023 Ido Ben-Hur
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.idoybh.yasr;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splits a continuous capture into consecutive, independently playable segments.
+ * The next segment is opened before the current one is handed off so no frame is lost,
+ * and finished segments are closed in the background to not delay the capture
+ */
+class SegmentSink implements PcmSink {
+    private static final long CLOSE_TIMEOUT_SEC = 30;
+
+    private final Factory mFactory;
+    private final int mFrameSize;
+    private final long mSegmentFrames;
+    private final long mSegmentBytes;
+    private final ExecutorService mCloser = Executors.newSingleThreadExecutor(
+            runnable -> new Thread(runnable, "SegmentCloserThread"));
+    private PcmSink mSink;
+    private long mFrames = 0; // in the current segment
+    private long mClosedSize = 0;
+    private volatile int mSegments = 1;
+    private volatile IOException mCloseError;
+
+    interface Factory {
+        /**
+         * Called on the writer thread when a segment is due
+         * @param segment the index of the segment to open, starting at 1 for the second one
+         * @return the sink to write the segment to
+         * @throws IOException if the segment can't be opened, fails the capture
+         */
+        PcmSink open(int segment) throws IOException;
+    }
+
+    /**
+     * @param first the sink of the first segment
+     * @param factory opens the sinks of the following segments
+     * @param frameSize the size of a single frame in bytes
+     * @param segmentFrames the exact number of frames in every segment, 0 to split by size
+     * @param segmentBytes the size of the sink after which to start a new segment,
+     *                     checked after every write. 0 to split by frames
+     */
+    SegmentSink(PcmSink first, Factory factory, int frameSize, long segmentFrames,
+                long segmentBytes) {
+        mSink = first;
+        mFactory = factory;
+        mFrameSize = frameSize;
+        mSegmentFrames = segmentFrames;
+        mSegmentBytes = segmentBytes;
+    }
+
+    /**
+     * @return the number of segments started so far
+     */
+    int getSegmentCount() {
+        return mSegments;
+    }
+
+    @Override
+    public void write(ByteBuffer[] buffers, int offset, int length) throws IOException {
+        if (mSegmentFrames <= 0) {
+            mSink.write(buffers, offset, length);
+            if (mSegmentBytes > 0 && mSink.getSize() >= mSegmentBytes) rotate();
+            return;
+        }
+        int start = offset;
+        final int end = offset + length;
+        long bytes = 0;
+        for (int i = offset; i < end; i++) {
+            final ByteBuffer buffer = buffers[i];
+            final long left = (mSegmentFrames - mFrames) * mFrameSize - bytes;
+            if (buffer.remaining() <= left) {
+                bytes += buffer.remaining();
+                continue;
+            }
+            // the segment ends inside this buffer, hand off at the exact frame
+            final int limit = buffer.limit();
+            buffer.limit(buffer.position() + (int) left);
+            mSink.write(buffers, start, i - start + 1);
+            buffer.limit(limit);
+            rotate();
+            start = i;
+            bytes = 0;
+            i--; // the rest of the buffer may span more segments
+        }
+        if (start < end) {
+            mSink.write(buffers, start, end - start);
+            mFrames += bytes / mFrameSize;
+        }
+    }
+
+    /**
+     * @return the size of all segments so far
+     */
+    @Override
+    public long getSize() {
+        return mClosedSize + mSink.getSize();
+    }
+
+    /**
+     * Closes the current segment and waits for the previous ones to be finalized
+     * @throws IOException if any segment failed closing
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            mSink.close();
+        } finally {
+            mCloser.shutdown();
+            try {
+                if (!mCloser.awaitTermination(CLOSE_TIMEOUT_SEC, TimeUnit.SECONDS))
+                    mCloseError = new IOException("Segments didn't finish closing in time");
+            } catch (InterruptedException e) {
+                mCloseError = new IOException(e);
+            }
+        }
+        if (mCloseError != null) throw mCloseError;
+    }
+
+    private void rotate() throws IOException {
+        final PcmSink next = mFactory.open(mSegments);
+        final PcmSink done = mSink;
+        mClosedSize += done.getSize();
+        mSink = next;
+        mFrames = 0;
+        //noinspection NonAtomicOperationOnVolatileField single writer
+        mSegments++;
+        mCloser.execute(() -> {
+            try {
+                done.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+                mCloseError = e;
+            }
+        });
+    }
+}
@@ -54,6 +54,13 @@ public class SettingsFragment extends PreferenceFragmentCompat
     private static final String THEME_KEY = "ui_mode";
     public static final String SORT_KEY = "sort_mode";
     private static final String LANG_KEY = "lang_pref";
+    public static final String CAPTURE_READ_KEY = "capture_read_size";
+    public static final String CAPTURE_WRITE_KEY = "capture_write_batch";
+    public static final String LOSSLESS_COPY_KEY = "lossless_copy";
+    public static final String LOSSLESS_COPY_NONE = "none";
+    public static final String LIMIT_ACTION_KEY = "limit_action";
+    public static final String LIMIT_ACTION_SPLIT = "split";
+    public static final String PRE_ROLL_KEY = "pre_roll_seconds";
     private static final String ANALYTICS_KEY = "analytics";
     private static final String ANALYTICS_RESET_KEY = "analytics_reset";
 
@@ -68,6 +75,11 @@ public class SettingsFragment extends PreferenceFragmentCompat
 
     private ListPreference mThemeListPref;
     private ListPreference mSortListPref;
+    private ListPreference mCaptureReadPref;
+    private ListPreference mCaptureWritePref;
+    private ListPreference mLosslessCopyPref;
+    private ListPreference mLimitActionPref;
+    private ListPreference mPreRollPref;
     private Preference mLangPref;
     private SwitchPreferenceCompat mAnalyticsPref;
     private Preference mAnalyticsResetPref;
@@ -146,6 +158,26 @@ public class SettingsFragment extends PreferenceFragmentCompat
         mSortListPref.setSummary(mSortListPref.getEntries()[sortValue]);
         mSortListPref.setOnPreferenceChangeListener(this);
 
+        mCaptureReadPref = findPreference(CAPTURE_READ_KEY);
+        mCaptureReadPref.setSummary(mCaptureReadPref.getEntry());
+        mCaptureReadPref.setOnPreferenceChangeListener(this);
+
+        mCaptureWritePref = findPreference(CAPTURE_WRITE_KEY);
+        mCaptureWritePref.setSummary(mCaptureWritePref.getEntry());
+        mCaptureWritePref.setOnPreferenceChangeListener(this);
+
+        mLosslessCopyPref = findPreference(LOSSLESS_COPY_KEY);
+        mLosslessCopyPref.setSummary(mLosslessCopyPref.getEntry());
+        mLosslessCopyPref.setOnPreferenceChangeListener(this);
+
+        mLimitActionPref = findPreference(LIMIT_ACTION_KEY);
+        mLimitActionPref.setSummary(mLimitActionPref.getEntry());
+        mLimitActionPref.setOnPreferenceChangeListener(this);
+
+        mPreRollPref = findPreference(PRE_ROLL_KEY);
+        mPreRollPref.setSummary(mPreRollPref.getEntry());
+        mPreRollPref.setOnPreferenceChangeListener(this);
+
         mLangPref = findPreference(LANG_KEY);
         mLangPref.setOnPreferenceClickListener(this);
 
@@ -184,6 +216,13 @@ public class SettingsFragment extends PreferenceFragmentCompat
             final int value = Integer.parseInt((String) newValue);
             mSortListPref.setSummary(mSortListPref.getEntries()[value]);
             return true;
+        } else if (preference == mCaptureReadPref || preference == mCaptureWritePref
+                || preference == mLosslessCopyPref || preference == mLimitActionPref
+                || preference == mPreRollPref) {
+            final ListPreference listPref = (ListPreference) preference;
+            final int index = listPref.findIndexOfValue((String) newValue);
+            listPref.setSummary(listPref.getEntries()[index]);
+            return true;
         } else if (preference == mAnalyticsPref) {
             final boolean checked = (Boolean) newValue;
             mAnalytics.setAnalyticsCollectionEnabled(checked);
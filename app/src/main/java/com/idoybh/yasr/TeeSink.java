@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2023 Ido Ben-Hur
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.idoybh.yasr;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Fans the captured PCM out to a main sink and any number of branch sinks.
+ * The main sink is written inline, every branch is written by its own thread
+ * from a fixed pool of buffers. When a branch falls behind and its pool runs dry
+ * the audio is dropped for that branch only, so a slow encoder never stalls the main file
+ */
+class TeeSink implements PcmSink {
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    private final PcmSink mMain;
+    private final int mBits;
+    private final List<Branch> mBranches = new ArrayList<>();
+
+    /**
+     * @param main the sink all limits apply to, written on the calling thread
+     * @param bits the bit depth of the PCM written to this sink
+     */
+    TeeSink(PcmSink main, int bits) {
+        mMain = main;
+        mBits = bits;
+    }
+
+    /**
+     * Adds a branch and starts its writer thread. Must be called before the first write
+     * @param sink the sink to write to, closed with this one
+     * @param bits the bit depth the sink takes, samples are narrowed or widened to it
+     * @param slotSize the largest buffer that will be written to this sink, in bytes
+     * @param slots the number of buffers the branch may fall behind by
+     */
+    void addBranch(PcmSink sink, int bits, int slotSize, int slots) {
+        // holds as many samples as the largest buffer, wider ones take more bytes
+        final int samples = (slotSize + mBits / 8 - 1) / (mBits / 8);
+        final Branch branch = new Branch(sink, bits, samples * (bits / 8), slots,
+                mBranches.size());
+        mBranches.add(branch);
+        branch.mThread.start();
+    }
+
+    int getBranchCount() {
+        return mBranches.size();
+    }
+
+    /**
+     * @return the highest number of buffers the branch was behind by at once
+     */
+    int getMaxBacklog(int branch) {
+        return mBranches.get(branch).mMaxBacklog;
+    }
+
+    /**
+     * @return the number of buffers the branch is currently behind by
+     */
+    int getBacklog(int branch) {
+        return mBranches.get(branch).mFilled.size();
+    }
+
+    int getBacklogCapacity(int branch) {
+        return mBranches.get(branch).mSlots;
+    }
+
+    /**
+     * @return the number of source bytes the branch dropped since it couldn't keep up
+     */
+    long getDropped(int branch) {
+        return mBranches.get(branch).mDropped;
+    }
+
+    /**
+     * @return whether writing the branch failed, it's skipped from then on
+     */
+    boolean hasFailed(int branch) {
+        return mBranches.get(branch).mFailed;
+    }
+
+    @Override
+    public void write(ByteBuffer[] buffers, int offset, int length) throws IOException {
+        // the main sink consumes the buffers, hand out copies first
+        for (Branch branch : mBranches) {
+            for (int i = offset; i < offset + length; i++)
+                branch.offer(buffers[i]);
+        }
+        mMain.write(buffers, offset, length);
+    }
+
+    /**
+     * @return the size of the main sink
+     */
+    @Override
+    public long getSize() {
+        return mMain.getSize();
+    }
+
+    /**
+     * Waits for every branch to drain and closes all sinks
+     * @throws IOException if the main sink failed closing, branch failures are only reported
+     * by {@link #hasFailed(int)}
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            for (Branch branch : mBranches) branch.finish();
+        } finally {
+            mMain.close();
+        }
+    }
+
+    /**
+     * Copies PCM while converting its bit depth by dropping (or adding) least significant bits
+     * @param src signed little-endian PCM, 8 bit is unsigned. Its remaining bytes are consumed
+     * @param dst where to put the converted samples
+     * @param srcBits the bit depth of the source
+     * @param dstBits the bit depth to convert to
+     */
+    static void convert(ByteBuffer src, ByteBuffer dst, int srcBits, int dstBits) {
+        if (srcBits == dstBits) {
+            dst.put(src);
+            return;
+        }
+        final int srcBytes = srcBits / 8;
+        int pos = src.position();
+        for (final int limit = src.limit(); pos + srcBytes <= limit; pos += srcBytes) {
+            // left align to 32 bit
+            final int sample = switch (srcBits) {
+                case 8 -> (src.get(pos) - 128) << 24;
+                case 16 -> (src.get(pos) & 0xFF) << 16 | src.get(pos + 1) << 24;
+                case 24 -> (src.get(pos) & 0xFF) << 8 | (src.get(pos + 1) & 0xFF) << 16
+                        | src.get(pos + 2) << 24;
+                default -> src.getInt(pos);
+            };
+            switch (dstBits) {
+                case 8 -> dst.put((byte) ((sample >> 24) + 128));
+                case 16 -> dst.putShort((short) (sample >> 16));
+                case 24 -> {
+                    dst.put((byte) (sample >> 8));
+                    dst.put((byte) (sample >> 16));
+                    dst.put((byte) (sample >> 24));
+                }
+                default -> dst.putInt(sample);
+            }
+        }
+        src.position(pos);
+    }
+
+    private class Branch {
+        private final PcmSink mSink;
+        private final int mBranchBits;
+        private final int mSlots;
+        private final BlockingQueue<ByteBuffer> mFree;
+        private final BlockingQueue<ByteBuffer> mFilled;
+        private final ByteBuffer[] mGather = new ByteBuffer[1];
+        private final Thread mThread;
+        private volatile int mMaxBacklog = 0;
+        private volatile long mDropped = 0;
+        private volatile boolean mFailed = false;
+
+        Branch(PcmSink sink, int bits, int slotSize, int slots, int index) {
+            mSink = sink;
+            mBranchBits = bits;
+            mSlots = slots;
+            mFree = new ArrayBlockingQueue<>(slots);
+            mFilled = new ArrayBlockingQueue<>(slots + 1); // room for END
+            final ByteBuffer block = ByteBuffer.allocateDirect(slotSize * slots);
+            for (int i = 0; i < slots; i++) {
+                block.limit((i + 1) * slotSize);
+                block.position(i * slotSize);
+                mFree.add(block.slice().order(ByteOrder.LITTLE_ENDIAN));
+            }
+            mThread = new Thread(this::writeLoop, "TeeBranchThread" + index);
+        }
+
+        /**
+         * Called on the main writer thread, never blocks
+         */
+        void offer(ByteBuffer source) {
+            if (mFailed) return;
+            final ByteBuffer buffer = mFree.poll();
+            if (buffer == null) {
+                //noinspection NonAtomicOperationOnVolatileField single writer
+                mDropped += source.remaining();
+                return;
+            }
+            final ByteBuffer copy = source.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            convert(copy, buffer, mBits, mBranchBits);
+            buffer.flip();
+            mFilled.add(buffer);
+            final int backlog = mFilled.size();
+            if (backlog > mMaxBacklog) mMaxBacklog = backlog;
+        }
+
+        void finish() {
+            mFilled.add(END);
+            try {
+                mThread.join();
+                mSink.close();
+            } catch (InterruptedException | IOException e) {
+                e.printStackTrace();
+                mFailed = true;
+            }
+        }
+
+        private void writeLoop() {
+            while (true) {
+                final ByteBuffer buffer;
+                try {
+                    buffer = mFilled.take();
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                    continue;
+                }
+                if (buffer == END) break;
+                if (!mFailed) {
+                    try {
+                        mGather[0] = buffer;
+                        mSink.write(mGather, 0, 1);
+                    } catch (IOException e) {
+                        // the main file is what matters, keep it going
+                        e.printStackTrace();
+                        mFailed = true;
+                    }
+                }
+                buffer.clear();
+                mFree.add(buffer);
+            }
+        }
+    }
+}
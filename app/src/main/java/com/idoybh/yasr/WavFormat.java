@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2023 Ido Ben-Hur
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.idoybh.yasr;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * The format and PCM location of a RIFF or RF64 WAV file, found by walking its chunks
+ * with a few small positioned reads, see {@link WavWriter#writeHeader}
+ */
+final class WavFormat {
+    private static final int RIFF = 0x46464952; // "RIFF"
+    private static final int RF64 = 0x34364652; // "RF64"
+    private static final int WAVE = 0x45564157; // "WAVE"
+    private static final int DS64 = 0x34367364; // "ds64"
+    private static final int FMT = 0x20746D66; // "fmt "
+    private static final int DATA = 0x61746164; // "data"
+    private static final int FORMAT_PCM = 1;
+    private static final int FORMAT_EXTENSIBLE = 0xFFFE;
+    private static final int MAX_CHUNKS = 64; // don't walk garbage forever
+
+    final int sampleRate;
+    final int channels;
+    final int bits;
+    final long dataOffset;
+    final long dataSize;
+
+    private WavFormat(int sampleRate, int channels, int bits, long dataOffset, long dataSize) {
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.bits = bits;
+        this.dataOffset = dataOffset;
+        this.dataSize = dataSize;
+    }
+
+    int getFrameSize() {
+        return channels * bits / 8;
+    }
+
+    /**
+     * @return the duration of the PCM in milliseconds
+     */
+    long getDurationMs() {
+        return dataSize / getFrameSize() * 1000 / sampleRate;
+    }
+
+    /**
+     * @param channel the file to read, its position is left untouched
+     * @return the format of integer PCM WAV files
+     * @throws IOException if the file isn't one
+     */
+    static WavFormat read(FileChannel channel) throws IOException {
+        final long length = channel.size();
+        final ByteBuffer buffer = ByteBuffer.allocate(28).order(ByteOrder.LITTLE_ENDIAN);
+        read(channel, buffer, 0, 12);
+        final int riff = buffer.getInt();
+        buffer.getInt(); // RIFF size, not needed
+        if ((riff != RIFF && riff != RF64) || buffer.getInt() != WAVE)
+            throw new IOException("Not a WAV file");
+        long pos = 12;
+        long ds64DataSize = -1;
+        int format = 0, channels = 0, sampleRate = 0, bits = 0;
+        for (int i = 0; i < MAX_CHUNKS && pos + 8 <= length; i++) {
+            read(channel, buffer, pos, 8);
+            final int id = buffer.getInt();
+            final long size = buffer.getInt() & 0xFFFFFFFFL;
+            pos += 8;
+            if (id == DS64 && size >= 16) {
+                read(channel, buffer, pos, 16);
+                buffer.getLong(); // RIFF size
+                ds64DataSize = buffer.getLong();
+            } else if (id == FMT && size >= 16) {
+                read(channel, buffer, pos, 16);
+                format = buffer.getShort() & 0xFFFF;
+                channels = buffer.getShort() & 0xFFFF;
+                sampleRate = buffer.getInt();
+                buffer.getInt(); // byte rate
+                buffer.getShort(); // block align
+                bits = buffer.getShort() & 0xFFFF;
+            } else if (id == DATA) {
+                if (sampleRate <= 0 || channels <= 0
+                        || (format != FORMAT_PCM && format != FORMAT_EXTENSIBLE)
+                        || (bits != 8 && bits != 16 && bits != 24 && bits != 32))
+                    throw new IOException("Unsupported WAV format");
+                long dataSize = size == 0xFFFFFFFFL && riff == RF64 ? ds64DataSize : size;
+                // a recording that never got its header patched still holds its audio
+                if (dataSize <= 0 || pos + dataSize > length) dataSize = length - pos;
+                final int frameSize = channels * bits / 8;
+                return new WavFormat(sampleRate, channels, bits, pos,
+                        dataSize / frameSize * frameSize);
+            }
+            pos += size + (size & 1); // chunks are word aligned
+        }
+        throw new IOException("No WAV data");
+    }
+
+    private static void read(FileChannel channel, ByteBuffer buffer, long pos, int count)
+            throws IOException {
+        buffer.clear().limit(count);
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, pos + buffer.position());
+            if (read < 0) throw new IOException("Truncated WAV file");
+        }
+        buffer.flip();
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2023 Ido Ben-Hur
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.idoybh.yasr;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Streams raw PCM data straight into a WAVE file.
+ * The header is reserved up front and its sizes are patched in place on {@link #close()}
+ * so finishing a recording takes the same time regardless of its length.
+ * A JUNK chunk holds the place of a ds64 chunk, so recordings past 4GB are promoted to RF64
+ * see: https://tech.ebu.ch/docs/tech/tech3306v1_1.pdf
+ */
+class WavWriter implements PcmSink {
+    static final int HEADER_SIZE = 80;
+    static final long MAX_RIFF_SIZE = 0xFFFFFFFFL;
+    private static final int DS64_SIZE = 28;
+
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+    private final int mSampleRate;
+    private final int mChannels;
+    private final int mBitsPerSample;
+    private long mDataSize = 0;
+
+    /**
+     * Creates (or truncates) the target file and reserves its header
+     * @param file the WAVE file to write to
+     * @param sampleRate the sampling rate per second
+     * @param channels the number of interleaved channels
+     * @param bitsPerSample the bit depth of a single sample
+     * @throws IOException if the file can't be opened or written
+     */
+    WavWriter(File file, int sampleRate, int channels, int bitsPerSample) throws IOException {
+        mSampleRate = sampleRate;
+        mChannels = channels;
+        mBitsPerSample = bitsPerSample;
+        mFile = new RandomAccessFile(file, "rw");
+        mFile.setLength(0);
+        mChannel = mFile.getChannel();
+        writeHeader(mChannel, 0, mSampleRate, mChannels, mBitsPerSample); // patched on close
+        mChannel.position(HEADER_SIZE);
+    }
+
+    /**
+     * Appends PCM data after whatever was written so far with a single gathering write
+     */
+    @Override
+    public void write(ByteBuffer[] buffers, int offset, int length) throws IOException {
+        long remaining = 0;
+        for (int i = offset; i < offset + length; i++)
+            remaining += buffers[i].remaining();
+        while (remaining > 0) {
+            final long written = mChannel.write(buffers, offset, length);
+            remaining -= written;
+            mDataSize += written;
+        }
+    }
+
+    @Override
+    public long getSize() {
+        return HEADER_SIZE + mDataSize;
+    }
+
+    /**
+     * Patches the header with the final sizes and closes the file
+     * @throws IOException on any write error
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            writeHeader(mChannel, mDataSize, mSampleRate, mChannels, mBitsPerSample);
+        } finally {
+            mFile.close();
+        }
+    }
+
+    /**
+     * Writes a whole header at the start of the file with a single write
+     * @param channel the file to write to
+     * @param dataSize the size of the PCM data following the header,
+     *                 RF64 is used when the RIFF size can't fit 32 bit
+     * see: https://android.googlesource.com/platform/frameworks/base/+/android-4.4_r1/core/java/android/speech/srec/WaveHeader.java
+     */
+    static void writeHeader(FileChannel channel, long dataSize, int sampleRate, int channels,
+                            int bitsPerSample) throws IOException {
+        final int blockAlign = channels * bitsPerSample / 8;
+        final long riffSize = HEADER_SIZE - 8 + dataSize;
+        final boolean isRf64 = riffSize > MAX_RIFF_SIZE;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        /* RIFF header */
+        if (isRf64) {
+            header.put(new byte[] { 'R', 'F', '6', '4' });
+            header.putInt(-1); // see ds64
+        } else {
+            header.put(new byte[] { 'R', 'I', 'F', 'F' });
+            header.putInt((int) riffSize);
+        }
+        header.put(new byte[] { 'W', 'A', 'V', 'E' });
+        /* ds64 chunk, or JUNK reserving its place */
+        if (isRf64) {
+            header.put(new byte[] { 'd', 's', '6', '4' });
+            header.putInt(DS64_SIZE);
+            header.putLong(riffSize);
+            header.putLong(dataSize);
+            header.putLong(dataSize / blockAlign); // sample count
+            header.putInt(0); // no table
+        } else {
+            header.put(new byte[] { 'J', 'U', 'N', 'K' });
+            header.putInt(DS64_SIZE);
+            header.put(new byte[DS64_SIZE]);
+        }
+        /* fmt chunk */
+        header.put(new byte[] { 'f', 'm', 't', ' ' });
+        header.putInt(16);
+        header.putShort((short) 1); // PCM
+        header.putShort((short) channels);
+        header.putInt(sampleRate);
+        header.putInt(sampleRate * blockAlign); // byte rate
+        header.putShort((short) blockAlign);
+        header.putShort((short) bitsPerSample);
+        /* data chunk */
+        header.put(new byte[] { 'd', 'a', 't', 'a' });
+        header.putInt(isRf64 ? -1 : (int) dataSize);
+        header.flip();
+        long pos = 0;
+        while (header.hasRemaining())
+            pos += channel.write(header, pos);
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2023 Ido Ben-Hur
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.idoybh.yasr;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import androidx.annotation.MainThread;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Waveform thumbnails of recordings for the library rows.
+ * Drawn from the recording's {@link PeaksFile}, decoded once with {@link PeaksDecoder}
+ * when it has none, into small alpha masks the row tints.
+ * Bitmaps are kept in an LRU cache bounded by bytes so binding a seen row is a lookup,
+ * loads for rows that were recycled meanwhile are cancelled
+ */
+class WaveformThumbnails {
+    private static final int WIDTH = 256; // stretched to the row
+    private static final int THREADS = 2; // decoding is heavy, keep cores for the UI
+
+    private final Handler mUiHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService mExecutor = Executors.newFixedThreadPool(THREADS);
+    private final Map<ImageView, Request> mRequests = new HashMap<>();
+    private final Set<String> mFailed = new HashSet<>();
+    private final LruCache<String, Bitmap> mCache;
+    private final int mHeight;
+
+    /**
+     * @param height the height of the thumbnails in pixels
+     */
+    WaveformThumbnails(int height) {
+        mHeight = height;
+        mCache = new LruCache<>((int) Math.min(Integer.MAX_VALUE,
+                Runtime.getRuntime().maxMemory() / 32)) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getAllocationByteCount();
+            }
+        };
+    }
+
+    /**
+     * Shows the thumbnail of a recording, right away when cached
+     * @param view the view to show it in, any previous load for it is cancelled
+     */
+    @MainThread
+    void load(File recording, ImageView view) {
+        cancel(view);
+        final String key = recording.getPath() + ":" + recording.lastModified();
+        final Bitmap cached = mCache.get(key);
+        view.setImageBitmap(cached);
+        if (cached != null || mFailed.contains(key)) return;
+        final Request request = new Request();
+        mRequests.put(view, request);
+        request.future = mExecutor.submit(() -> {
+            final Bitmap bitmap = render(recording);
+            if (Thread.currentThread().isInterrupted()) return;
+            mUiHandler.post(() -> {
+                if (mExecutor.isShutdown()) return;
+                if (bitmap == null) mFailed.add(key);
+                else mCache.put(key, bitmap);
+                if (mRequests.get(view) != request) return;
+                mRequests.remove(view);
+                view.setImageBitmap(bitmap);
+            });
+        });
+    }
+
+    /**
+     * Stops loading into a view, e.g. when its row is recycled
+     */
+    @MainThread
+    void cancel(ImageView view) {
+        final Request request = mRequests.remove(view);
+        if (request != null) request.future.cancel(true);
+    }
+
+    /**
+     * Stops all loads and drops the cache
+     */
+    @MainThread
+    void release() {
+        mExecutor.shutdownNow();
+        mRequests.clear();
+        mCache.evictAll();
+    }
+
+    /**
+     * @return the thumbnail, null if the recording can't be decoded
+     */
+    private Bitmap render(File recording) {
+        PeaksFile peaks = null;
+        final File peaksFile = PeaksFile.getFile(recording);
+        if (peaksFile.lastModified() >= recording.lastModified()) {
+            try {
+                peaks = PeaksFile.read(peaksFile);
+            } catch (IOException ignored) {
+                // decoded again below
+            }
+        }
+        try {
+            if (peaks == null) peaks = PeaksDecoder.decode(recording);
+        } catch (IOException e) {
+            if (!Thread.currentThread().isInterrupted()) e.printStackTrace();
+            return null;
+        }
+        final byte[] level = peaks.getLevel(WIDTH);
+        final int buckets = level.length / 2;
+        if (buckets == 0) return null;
+        final int width = Math.min(WIDTH, buckets);
+        final Bitmap bitmap = Bitmap.createBitmap(width, mHeight, Bitmap.Config.ALPHA_8);
+        final Canvas canvas = new Canvas(bitmap);
+        final Paint paint = new Paint(); // opaque
+        final float center = mHeight / 2f;
+        for (int x = 0; x < width; x++) {
+            // every column covers a whole range of buckets
+            final int from = (int) ((long) x * buckets / width);
+            final int to = Math.max(from + 1, (int) ((long) (x + 1) * buckets / width));
+            int min = Byte.MAX_VALUE, max = Byte.MIN_VALUE;
+            for (int b = from; b < to; b++) {
+                min = Math.min(min, level[b * 2]);
+                max = Math.max(max, level[b * 2 + 1]);
+            }
+            final float top = center - (max + 1) * center / 128f;
+            final float bottom = center - min * center / 128f;
+            canvas.drawRect(x, top, x + 1, Math.max(bottom, top + 1), paint);
+        }
+        return bitmap;
+    }
+
+    private static class Request {
+        Future<?> future;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2023 Ido Ben-Hur
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.idoybh.yasr;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
+import android.util.AttributeSet;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.material.color.MaterialColors;
+
+/**
+ * Scrolling waveform of a {@link PeakHistory}.
+ * Every column is rendered once into a circular bitmap as it arrives,
+ * drawing only blits the bitmap unrolled in two parts, so nothing is allocated per frame
+ */
+public class WaveformView extends View {
+    private final Paint mColumnPaint = new Paint(); // opaque
+    private final Paint mClearPaint = new Paint();
+    private final Paint mBitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Rect mSrc = new Rect();
+    private final Rect mDst = new Rect();
+    private PeakHistory mHistory;
+    private Bitmap mBitmap;
+    private Canvas mCanvas;
+    private long mRendered = 0; // columns rendered into the bitmap so far
+
+    public WaveformView(Context context) {
+        this(context, null);
+    }
+
+    public WaveformView(Context context, @Nullable AttributeSet attrs) {
+        super(context, attrs);
+        // the bitmap is an alpha mask, tinted when drawn
+        mBitmapPaint.setColor(MaterialColors.getColor(this,
+                com.google.android.material.R.attr.colorPrimary));
+        mClearPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.CLEAR));
+    }
+
+    /**
+     * @param history the history to show, null clears
+     */
+    void setHistory(PeakHistory history) {
+        mHistory = history;
+        createBitmap(getWidth(), getHeight());
+        invalidate();
+    }
+
+    /**
+     * Renders the columns that arrived since the last call, call once per frame
+     */
+    void update() {
+        final PeakHistory history = mHistory;
+        if (history == null || mCanvas == null) return;
+        final long count = history.getCount();
+        if (count == mRendered) return;
+        final int capacity = history.getCapacity();
+        final float center = mBitmap.getHeight() / 2f;
+        // older columns were already overwritten
+        for (long column = Math.max(mRendered, count - capacity); column < count; column++) {
+            final int x = (int) (column % capacity);
+            mCanvas.drawRect(x, 0, x + 1, mBitmap.getHeight(), mClearPaint);
+            final float top = center - history.getMax(column) * center / LevelMeter.MAX;
+            final float bottom = center - history.getMin(column) * center / LevelMeter.MAX;
+            mCanvas.drawRect(x, top, x + 1, Math.max(bottom, top + 1), mColumnPaint);
+        }
+        mRendered = count;
+        invalidate();
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        createBitmap(w, h);
+    }
+
+    @Override
+    protected void onDraw(@NonNull Canvas canvas) {
+        super.onDraw(canvas);
+        final PeakHistory history = mHistory;
+        if (history == null || mBitmap == null || mRendered == 0) return;
+        final int capacity = history.getCapacity();
+        final int width = getWidth();
+        final int height = getHeight();
+        // the newest column is at the right edge, the oldest wraps around to the left
+        final int split = (int) (mRendered % capacity);
+        if (mRendered >= capacity) {
+            final int oldWidth = capacity - split;
+            mSrc.set(split, 0, capacity, height);
+            mDst.set(0, 0, (int) ((long) oldWidth * width / capacity), height);
+            canvas.drawBitmap(mBitmap, mSrc, mDst, mBitmapPaint);
+        }
+        if (split == 0) return;
+        mSrc.set(0, 0, split, height);
+        mDst.set(width - (int) ((long) split * width / capacity), 0, width, height);
+        canvas.drawBitmap(mBitmap, mSrc, mDst, mBitmapPaint);
+    }
+
+    /**
+     * Only when the size or the history change, everything kept is rendered again
+     */
+    private void createBitmap(int width, int height) {
+        if (mBitmap != null) mBitmap.recycle();
+        mBitmap = null;
+        mCanvas = null;
+        mRendered = 0;
+        if (mHistory == null || width == 0 || height == 0) return;
+        // a column per pixel, stretched to the view's width when drawn
+        mBitmap = Bitmap.createBitmap(mHistory.getCapacity(), height, Bitmap.Config.ALPHA_8);
+        mCanvas = new Canvas(mBitmap);
+        update();
+    }
+}
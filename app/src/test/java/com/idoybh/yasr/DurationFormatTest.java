@@ -0,0 +1,32 @@
+package com.idoybh.yasr;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DurationFormatTest {
+    @Test
+    public void format_clockText() {
+        assertEquals("00:00", format(0));
+        assertEquals("00:45", format(45));
+        assertEquals("05:00", format(300));
+        assertEquals("59:59", format(3599));
+        assertEquals("01:00:00", format(3600));
+        assertEquals("27:46:39", format(99999));
+        assertEquals("999:59:59", format(Long.MAX_VALUE / 2));
+    }
+
+    @Test
+    public void format_atOffset() {
+        final char[] text = new char[DurationFormat.MAX_LENGTH * 2 + 1];
+        int end = DurationFormat.format(61, text, 0);
+        text[end++] = '/';
+        end = DurationFormat.format(300, text, end);
+        assertEquals("01:01/05:00", new String(text, 0, end));
+    }
+
+    private static String format(long seconds) {
+        final char[] text = new char[DurationFormat.MAX_LENGTH];
+        return new String(text, 0, DurationFormat.format(seconds, text, 0));
+    }
+}
@@ -0,0 +1,169 @@
+package com.idoybh.yasr;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * Durations {@link DurationParser} reads from the headers of every format we record
+ */
+public class DurationParserTest {
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void wav() throws Exception {
+        assertEquals(1500, DurationParser.parse(wav(44100, 2, 16, 1.5)));
+    }
+
+    @Test
+    public void rf64() throws Exception {
+        final long dataSize = 96000L * 6 * 3 * 3600; // 3 hours of 96k / 24 bit stereo
+        final File file = mFolder.newFile("long.wav");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(WavWriter.HEADER_SIZE + dataSize);
+            WavWriter.writeHeader(raf.getChannel(), dataSize, 96000, 2, 24);
+        }
+        assertEquals(3 * 3600_000L, DurationParser.parse(file));
+    }
+
+    @Test
+    public void flac() throws Exception {
+        final File file = mFolder.newFile("a.flac");
+        try (FlacWriter writer = new FlacWriter(file, 48000, 1, 16)) {
+            writer.write(new ByteBuffer[] { ByteBuffer.allocate(48000 * 2 * 2) }, 0, 1);
+        }
+        assertEquals(2000, DurationParser.parse(file));
+    }
+
+    @Test
+    public void opus_lastGranuleLessPreSkip() throws Exception {
+        final ByteBuffer opusHead = ByteBuffer.allocate(19).order(ByteOrder.LITTLE_ENDIAN);
+        opusHead.put(ascii("OpusHead")).put((byte) 1).put((byte) 2).putShort((short) 312)
+                .putInt(48000).putShort((short) 0).put((byte) 0);
+        // 3.5s plus the pre-skip
+        final File file = ogg(opusHead.array(), 48000L * 7 / 2 + 312, 5000);
+        assertEquals(3500, DurationParser.parse(file));
+    }
+
+    @Test
+    public void vorbis_atItsRate() throws Exception {
+        final ByteBuffer vorbisHead = ByteBuffer.allocate(30).order(ByteOrder.LITTLE_ENDIAN);
+        vorbisHead.put((byte) 1).put(ascii("vorbis")).putInt(0).put((byte) 2).putInt(22050);
+        assertEquals(10_000, DurationParser.parse(ogg(vorbisHead.array(), 220500, 100)));
+    }
+
+    @Test
+    public void mp4_mvhd() throws Exception {
+        final byte[] mvhd = box("mvhd", fullHeader(0, 1000, 61_234));
+        final File file = mp4(box("moov", mvhd));
+        assertEquals(61_234, DurationParser.parse(file));
+    }
+
+    @Test
+    public void mp4_version1AfterMdat() throws Exception {
+        // moov at the end like MediaMuxer writes it, 64 bit times
+        final byte[] mvhd = box("mvhd", fullHeader(1, 44100, 44100L * 7200));
+        final File file = mp4(box("mdat", new byte[5000]), box("moov", mvhd));
+        assertEquals(7200_000, DurationParser.parse(file));
+    }
+
+    @Test
+    public void mp4_mdhdWhenNoMovieDuration() throws Exception {
+        final byte[] mvhd = box("mvhd", fullHeader(0, 1000, 0));
+        final byte[] trak = box("trak", box("tkhd", new byte[84]),
+                box("mdia", box("mdhd", fullHeader(0, 16000, 16000 * 42))));
+        final File file = mp4(box("moov", mvhd, trak));
+        assertEquals(42_000, DurationParser.parse(file));
+    }
+
+    @Test
+    public void unknown() throws Exception {
+        final File file = mFolder.newFile("a.3gp");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.write(new byte[100]);
+        }
+        assertEquals(DurationParser.UNKNOWN, DurationParser.parse(file));
+        assertEquals(DurationParser.UNKNOWN, DurationParser.parse(mFolder.newFile("empty.wav")));
+        assertEquals(DurationParser.UNKNOWN,
+                DurationParser.parse(new File(mFolder.getRoot(), "missing.m4a")));
+    }
+
+    private File wav(int rate, int channels, int bits, double seconds) throws IOException {
+        final File file = mFolder.newFile();
+        try (WavWriter writer = new WavWriter(file, rate, channels, bits)) {
+            final int size = (int) (rate * seconds) * channels * bits / 8;
+            writer.write(new ByteBuffer[] { ByteBuffer.allocate(size) }, 0, 1);
+        }
+        return file;
+    }
+
+    /**
+     * An identification page, some audio pages and a last page with the final granule
+     */
+    private File ogg(byte[] idHeader, long lastGranule, int audioBytes) throws IOException {
+        final File file = mFolder.newFile();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.write(page(0, idHeader));
+            long granule = 0;
+            for (int written = 0; written < audioBytes; written += 250) {
+                granule += 960;
+                raf.write(page(granule, new byte[250]));
+            }
+            raf.write(page(-1, new byte[250])); // a packet spanning past the page
+            raf.write(page(lastGranule, new byte[100]));
+        }
+        return file;
+    }
+
+    private static byte[] page(long granule, byte[] packet) {
+        final ByteBuffer page = ByteBuffer.allocate(28 + packet.length)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        page.put(ascii("OggS")).put((byte) 0).put((byte) 0).putLong(granule)
+                .putInt(1).putInt(0).putInt(0).put((byte) 1).put((byte) packet.length)
+                .put(packet);
+        return page.array();
+    }
+
+    private File mp4(byte[]... boxes) throws IOException {
+        final File file = mFolder.newFile();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.write(box("ftyp", ascii("M4A "), new byte[4]));
+            for (byte[] box : boxes) raf.write(box);
+        }
+        return file;
+    }
+
+    private static byte[] fullHeader(int version, int timescale, long duration) {
+        final ByteBuffer header = ByteBuffer.allocate(version == 1 ? 32 : 20);
+        header.put((byte) version).put(new byte[3]);
+        if (version == 1) {
+            header.putLong(0).putLong(0).putInt(timescale).putLong(duration);
+        } else {
+            header.putInt(0).putInt(0).putInt(timescale).putInt((int) duration);
+        }
+        return header.array();
+    }
+
+    private static byte[] box(String type, byte[]... content) {
+        int size = 8;
+        for (byte[] c : content) size += c.length;
+        final ByteBuffer box = ByteBuffer.allocate(size);
+        box.putInt(size).put(ascii(type));
+        for (byte[] c : content) box.put(c);
+        return box.array();
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
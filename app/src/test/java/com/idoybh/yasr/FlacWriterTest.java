@@ -0,0 +1,350 @@
+package com.idoybh.yasr;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Round trips {@link FlacWriter} output through a minimal reference decoder
+ */
+public class FlacWriterTest {
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void stereo24_roundTrip() throws Exception {
+        assertRoundTrip(48000, 2, 24, 48000 * 3 + 123);
+    }
+
+    @Test
+    public void stereo16_roundTrip() throws Exception {
+        assertRoundTrip(44100, 2, 16, 44100 * 2 + 7);
+    }
+
+    @Test
+    public void mono8_roundTrip() throws Exception {
+        assertRoundTrip(8000, 1, 8, 8000 + 1);
+    }
+
+    @Test
+    public void shortStream_roundTrip() throws Exception {
+        assertRoundTrip(22050, 1, 16, 5);
+    }
+
+    @Test
+    public void empty_isValid() throws Exception {
+        final File file = mFolder.newFile("empty.flac");
+        new FlacWriter(file, 48000, 2, 16).close();
+        final Decoded decoded = Decoded.decode(Files.readAllBytes(file.toPath()));
+        assertEquals(0, decoded.totalSamples);
+        assertEquals(0, decoded.frames);
+    }
+
+    @Test
+    public void seekTable_pointsAtFrames() throws Exception {
+        final byte[] pcm = signal(16000, 1, 16, 16000 * 30);
+        final File file = encode(pcm, 16000, 1, 16, 997);
+        final byte[] flac = Files.readAllBytes(file.toPath());
+        final Decoded decoded = Decoded.decode(flac);
+        assertTrue(decoded.seekPoints >= 3);
+        for (int i = 0; i < decoded.seekPoints; i++) {
+            final int frame = decoded.firstFrame + (int) decoded.seekOffsets[i];
+            assertEquals(0xFF, flac[frame] & 0xFF);
+            assertEquals(0xF8, flac[frame + 1] & 0xFF);
+            assertEquals(0, decoded.seekSamples[i] % FlacWriter.BLOCK_SIZE);
+        }
+    }
+
+    private void assertRoundTrip(int rate, int channels, int bits, int frames) throws Exception {
+        final byte[] pcm = signal(rate, channels, bits, frames);
+        // odd chunk sizes split frames across buffers
+        final File file = encode(pcm, rate, channels, bits, 1001);
+        final Decoded decoded = Decoded.decode(Files.readAllBytes(file.toPath()));
+        assertEquals(rate, decoded.sampleRate);
+        assertEquals(channels, decoded.channels);
+        assertEquals(bits, decoded.bits);
+        assertEquals(frames, decoded.totalSamples);
+        assertArrayEquals(toSigned(pcm, bits), decoded.pcm());
+        assertArrayEquals(MessageDigest.getInstance("MD5").digest(toSigned(pcm, bits)),
+                decoded.md5);
+    }
+
+    private File encode(byte[] pcm, int rate, int channels, int bits, int chunk)
+            throws IOException {
+        final File file = mFolder.newFile();
+        encode(pcm, rate, channels, bits, chunk, file);
+        return file;
+    }
+
+    private static void encode(byte[] pcm, int rate, int channels, int bits, int chunk, File file)
+            throws IOException {
+        try (FlacWriter writer = new FlacWriter(file, rate, channels, bits)) {
+            final ByteBuffer[] buffers = new ByteBuffer[4];
+            for (int pos = 0; pos < pcm.length; ) {
+                int count = 0;
+                for (; count < buffers.length && pos < pcm.length; count++) {
+                    final int len = Math.min(chunk, pcm.length - pos);
+                    final ByteBuffer buffer = ByteBuffer.allocateDirect(len)
+                            .order(ByteOrder.LITTLE_ENDIAN);
+                    buffer.put(pcm, pos, len).flip();
+                    buffers[count] = buffer;
+                    pos += len;
+                }
+                writer.write(buffers, 0, count);
+            }
+        }
+    }
+
+    /**
+     * Tones, noise and silence so every subframe type and stereo mode is exercised
+     */
+    private static byte[] signal(int rate, int channels, int bits, int frames) {
+        final Random random = new Random(42);
+        final int bytes = bits / 8;
+        final long max = (1L << (bits - 1)) - 1;
+        final ByteBuffer out = ByteBuffer.allocate(frames * channels * bytes)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < frames; i++) {
+            final int section = i / 5000 % 4;
+            final double t = (double) i / rate;
+            for (int ch = 0; ch < channels; ch++) {
+                double v = switch (section) {
+                    case 0 -> 0.5 * Math.sin(2 * Math.PI * 440 * t);
+                    case 1 -> random.nextGaussian() * 0.2;
+                    case 2 -> 0;
+                    default -> 0.3 * Math.sin(2 * Math.PI * (220 + ch * 3) * t)
+                            + random.nextGaussian() * 0.001;
+                };
+                long sample = Math.max(-max - 1, Math.min(max, Math.round(v * max)));
+                if (i % 9973 == 0) sample = ch == 0 ? max : -max - 1; // extremes
+                if (bits == 8) out.put((byte) (sample + 128));
+                else if (bits == 16) out.putShort((short) sample);
+                else out.put((byte) sample).put((byte) (sample >> 8)).put((byte) (sample >> 16));
+            }
+        }
+        return out.array();
+    }
+
+    private static byte[] toSigned(byte[] pcm, int bits) {
+        if (bits != 8) return pcm;
+        final byte[] signed = new byte[pcm.length];
+        for (int i = 0; i < pcm.length; i++) signed[i] = (byte) (pcm[i] - 128);
+        return signed;
+    }
+
+    /**
+     * Just enough of a FLAC decoder to check what the writer produces, verifies every CRC
+     */
+    private static class Decoded {
+        int sampleRate;
+        int channels;
+        int bits;
+        long totalSamples;
+        byte[] md5;
+        int frames;
+        int firstFrame;
+        int seekPoints;
+        long[] seekSamples = new long[0];
+        long[] seekOffsets = new long[0];
+        int[][] samples;
+
+        static Decoded decode(byte[] data) {
+            final Decoded d = new Decoded();
+            assertArrayEquals(new byte[] { 'f', 'L', 'a', 'C' }, Arrays.copyOf(data, 4));
+            int pos = 4;
+            boolean last = false;
+            while (!last) {
+                last = (data[pos] & 0x80) != 0;
+                final int type = data[pos] & 0x7F;
+                final int length = (data[pos + 1] & 0xFF) << 16 | (data[pos + 2] & 0xFF) << 8
+                        | data[pos + 3] & 0xFF;
+                pos += 4;
+                final ByteBuffer block = ByteBuffer.wrap(data, pos, length);
+                if (type == 0) {
+                    block.getInt(); // block sizes
+                    block.position(block.position() + 6); // frame sizes
+                    final long packed = block.getLong();
+                    d.sampleRate = (int) (packed >>> 44);
+                    d.channels = (int) (packed >>> 41 & 7) + 1;
+                    d.bits = (int) (packed >>> 36 & 31) + 1;
+                    d.totalSamples = packed & 0xFFFFFFFFFL;
+                    d.md5 = new byte[16];
+                    block.get(d.md5);
+                } else if (type == 3) {
+                    final int count = length / 18;
+                    d.seekSamples = new long[count];
+                    d.seekOffsets = new long[count];
+                    for (int i = 0; i < count; i++) {
+                        final long sample = block.getLong();
+                        final long offset = block.getLong();
+                        block.getShort();
+                        if (sample == -1L) continue;
+                        d.seekSamples[d.seekPoints] = sample;
+                        d.seekOffsets[d.seekPoints++] = offset;
+                    }
+                }
+                pos += length;
+            }
+            d.firstFrame = pos;
+            d.samples = new int[d.channels][(int) d.totalSamples];
+            int decoded = 0;
+            while (pos < data.length) {
+                final BitReader in = new BitReader(data, pos);
+                decoded += d.decodeFrame(in, decoded);
+                in.align();
+                final int end = in.bytePos();
+                final int crc = (data[end] & 0xFF) << 8 | data[end + 1] & 0xFF;
+                assertEquals("frame crc", FlacWriter.Crc.crc16(data, pos, end - pos), crc);
+                pos = end + 2;
+                d.frames++;
+            }
+            assertEquals(d.totalSamples, decoded);
+            return d;
+        }
+
+        int decodeFrame(BitReader in, int offset) {
+            final int start = in.bytePos();
+            assertEquals(0xFFF8, in.read(16));
+            final int blockCode = in.read(4);
+            in.read(4); // rate
+            final int assignment = in.read(4);
+            in.read(3); // size
+            assertEquals(0, in.read(1));
+            int lead = in.read(8);
+            long number = lead;
+            int extra = 0;
+            while ((lead & 0x80 >> extra) != 0 && extra < 7) extra++;
+            if (extra > 0) number = lead & (0xFF >> (extra + 1));
+            for (int i = 1; i < extra; i++) number = number << 6 | in.read(8) & 0x3F;
+            assertEquals(frames, number);
+            final int n = blockCode == 12 ? 4096 : blockCode == 7 ? in.read(16) + 1 : -1;
+            assertTrue(n > 0);
+            final int headerEnd = in.bytePos();
+            assertEquals("header crc", FlacWriter.Crc.crc8(in.data, start, headerEnd - start),
+                    in.read(8));
+            final int[][] sub = new int[channels][];
+            for (int ch = 0; ch < channels; ch++) {
+                final boolean side = assignment == 8 && ch == 1 || assignment == 9 && ch == 0
+                        || assignment == 10 && ch == 1;
+                sub[ch] = decodeSubframe(in, n, bits + (side ? 1 : 0));
+            }
+            for (int i = 0; i < n; i++) {
+                int l = sub[0][i];
+                int r = channels > 1 ? sub[1][i] : 0;
+                switch (assignment) {
+                    case 8 -> r = l - r;
+                    case 9 -> l = l + r;
+                    case 10 -> {
+                        final int mid = l << 1 | (r & 1);
+                        l = (mid + r) >> 1;
+                        r = (mid - r) >> 1;
+                    }
+                }
+                samples[0][offset + i] = l;
+                if (channels > 1) samples[1][offset + i] = r;
+            }
+            return n;
+        }
+
+        static int[] decodeSubframe(BitReader in, int n, int bps) {
+            assertEquals(0, in.read(1));
+            final int type = in.read(6);
+            assertEquals(0, in.read(1)); // wasted bits
+            final int[] x = new int[n];
+            if (type == 0) {
+                Arrays.fill(x, in.readSigned(bps));
+                return x;
+            }
+            if (type == 1) {
+                for (int i = 0; i < n; i++) x[i] = in.readSigned(bps);
+                return x;
+            }
+            assertEquals(8, type & 0x38);
+            final int order = type & 7;
+            for (int i = 0; i < order; i++) x[i] = in.readSigned(bps);
+            final int method = in.read(2);
+            final int partitionOrder = in.read(4);
+            final int paramBits = method == 1 ? 5 : 4;
+            final int size = n >> partitionOrder;
+            int i = order;
+            for (int p = 0; p < 1 << partitionOrder; p++) {
+                final int k = in.read(paramBits);
+                assertNotEquals("escaped partition", (1 << paramBits) - 1, k);
+                for (final int end = (p + 1) * size; i < end; i++) {
+                    int q = 0;
+                    while (in.read(1) == 0) q++;
+                    final long folded = (long) q << k | in.readLong(k);
+                    final int residual = (int) (folded >>> 1 ^ -(folded & 1));
+                    x[i] = residual + switch (order) {
+                        case 0 -> 0;
+                        case 1 -> x[i - 1];
+                        case 2 -> 2 * x[i - 1] - x[i - 2];
+                        case 3 -> 3 * x[i - 1] - 3 * x[i - 2] + x[i - 3];
+                        default -> 4 * x[i - 1] - 6 * x[i - 2] + 4 * x[i - 3] - x[i - 4];
+                    };
+                }
+            }
+            return x;
+        }
+
+        /**
+         * @return the decoded samples as interleaved signed little-endian PCM
+         */
+        byte[] pcm() {
+            final int bytes = bits / 8;
+            final ByteBuffer out = ByteBuffer.allocate((int) totalSamples * channels * bytes);
+            for (int i = 0; i < totalSamples; i++) {
+                for (int ch = 0; ch < channels; ch++) {
+                    final int v = samples[ch][i];
+                    for (int b = 0; b < bytes; b++) out.put((byte) (v >> (8 * b)));
+                }
+            }
+            return out.array();
+        }
+    }
+
+    private static class BitReader {
+        final byte[] data;
+        private long mBitPos;
+
+        BitReader(byte[] data, int offset) {
+            this.data = data;
+            mBitPos = offset * 8L;
+        }
+
+        int read(int count) {
+            return (int) readLong(count);
+        }
+
+        long readLong(int count) {
+            long value = 0;
+            for (int i = 0; i < count; i++, mBitPos++)
+                value = value << 1 | (data[(int) (mBitPos >> 3)] >> (7 - (mBitPos & 7))) & 1;
+            return value;
+        }
+
+        int readSigned(int count) {
+            final long value = readLong(count);
+            return (int) (value << (64 - count) >> (64 - count));
+        }
+
+        void align() {
+            mBitPos = (mBitPos + 7) & ~7L;
+        }
+
+        int bytePos() {
+            return (int) (mBitPos >> 3);
+        }
+    }
+}
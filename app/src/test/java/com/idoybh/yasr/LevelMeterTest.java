@@ -0,0 +1,72 @@
+package com.idoybh.yasr;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks {@link LevelMeter} readings for every capture bit depth
+ */
+public class LevelMeterTest {
+    @Test
+    public void bits16_peakAndRms() {
+        final LevelMeter meter = new LevelMeter(16);
+        final ByteBuffer pcm = pcm(16, 1000, -1000, 1000, -1000);
+        meter.measure(pcm);
+        assertEquals(0, pcm.position());
+        assertEquals(1000, meter.getPeak());
+        assertEquals(1000, meter.getRms());
+    }
+
+    @Test
+    public void fullScaleNegative_isMax() {
+        final LevelMeter meter = new LevelMeter(16);
+        meter.measure(pcm(16, 100, Short.MIN_VALUE, 3));
+        assertEquals(LevelMeter.MAX, meter.getPeak());
+    }
+
+    @Test
+    public void otherBits_sameScale() {
+        for (int bits : new int[] { 8, 24, 32 }) {
+            final LevelMeter meter = new LevelMeter(bits);
+            meter.measure(pcm(bits, 0x4000, -0x4000));
+            assertEquals("bits " + bits, 0x4000, meter.getPeak());
+            assertEquals("bits " + bits, 0x4000, meter.getRms());
+        }
+    }
+
+    @Test
+    public void accumulatesUntilTaken() {
+        final LevelMeter meter = new LevelMeter(16);
+        meter.measure(pcm(16, 3000));
+        meter.measure(pcm(16, 0, 0, 0));
+        assertEquals(3000, meter.getPeak());
+        assertEquals(1500, meter.getRms());
+        meter.take();
+        assertEquals(0, meter.getPeak());
+        assertEquals(0, meter.getRms());
+        meter.measure(pcm(16, 200));
+        assertEquals(200, meter.getPeak());
+        assertEquals(200, meter.getRms());
+    }
+
+    /**
+     * @param samples values on a 16 bit scale
+     */
+    private static ByteBuffer pcm(int bits, int... samples) {
+        final ByteBuffer pcm = ByteBuffer.allocate(samples.length * bits / 8)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        for (int sample : samples) {
+            switch (bits) {
+                case 8 -> pcm.put((byte) ((sample >> 8) + 128));
+                case 16 -> pcm.putShort((short) sample);
+                case 24 -> pcm.put((byte) 0).putShort((short) sample);
+                default -> pcm.putInt(sample << 16);
+            }
+        }
+        return pcm.flip();
+    }
+}
@@ -0,0 +1,75 @@
+package com.idoybh.yasr;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Persistence and invalidation of {@link LibraryIndex}
+ */
+public class LibraryIndexTest {
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void saved_loadsBack() throws Exception {
+        final File file = new File(mFolder.getRoot(), LibraryIndex.FILE_NAME);
+        final LibraryIndex index = new LibraryIndex(file);
+        index.load();
+        index.put("a.wav", 100, 5000, 1234);
+        index.put("b.m4a", 200, 6000, 99);
+        index.save();
+
+        final LibraryIndex loaded = new LibraryIndex(file);
+        loaded.load();
+        assertEquals(2, loaded.size());
+        final LibraryIndex.Entry entry = loaded.get("a.wav", 100, 5000);
+        assertNotNull(entry);
+        assertEquals(1234, entry.duration);
+    }
+
+    @Test
+    public void changedFile_isUnknown() {
+        final LibraryIndex index = new LibraryIndex(new File(mFolder.getRoot(), "x"));
+        index.put("a.wav", 100, 5000, 1234);
+        assertNull(index.get("a.wav", 101, 5000));
+        assertNull(index.get("a.wav", 100, 5001));
+        assertNull(index.get("c.wav", 100, 5000));
+    }
+
+    @Test
+    public void renameRetainRemove() {
+        final LibraryIndex index = new LibraryIndex(new File(mFolder.getRoot(), "x"));
+        index.put("a.wav", 1, 1, 1);
+        index.put("b.wav", 2, 2, 2);
+        index.put("c.wav", 3, 3, 3);
+        index.rename("a.wav", "d.wav");
+        assertNull(index.get("a.wav", 1, 1));
+        assertNotNull(index.get("d.wav", 1, 1));
+        index.remove("b.wav");
+        index.retain(Set.of("d.wav"));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void corrupt_startsEmpty() throws Exception {
+        final File file = new File(mFolder.getRoot(), LibraryIndex.FILE_NAME);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[] { 1, 2, 3 });
+        }
+        final LibraryIndex index = new LibraryIndex(file);
+        index.load();
+        assertEquals(0, index.size());
+        index.save(); // replaced with a valid one
+        final LibraryIndex again = new LibraryIndex(file);
+        again.load();
+        assertEquals(0, again.size());
+        assertTrue(file.length() > 3);
+    }
+}
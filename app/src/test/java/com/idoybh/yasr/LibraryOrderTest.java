@@ -0,0 +1,115 @@
+package com.idoybh.yasr;
+
+import org.junit.Test;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Sorting, caching and keeping sorted of {@link LibraryOrder}
+ */
+public class LibraryOrderTest {
+    private static final int BY_SIZE = 0;
+    private static final int BY_NAME = 1;
+    private static final Collator COLLATOR = Collator.getInstance(Locale.ENGLISH);
+
+    private static final class Item {
+        final String name;
+        final CollationKey nameKey;
+        long size;
+
+        Item(String name, long size) {
+            this.name = name;
+            this.size = size;
+            nameKey = COLLATOR.getCollationKey(name);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private static LibraryOrder<Item> order(List<Item> items) {
+        final LibraryOrder<Item> order = new LibraryOrder<>();
+        order.addLongMode(BY_SIZE, item -> item.size);
+        order.addMode(BY_NAME, item -> item.nameKey);
+        for (Item item : items) order.add(item);
+        return order;
+    }
+
+    private static void sort(LibraryOrder<Item> order, int mode) {
+        final int version = order.getVersion();
+        assertTrue(order.put(mode, order.sort(mode, order.getItems()), version));
+    }
+
+    @Test
+    public void sortsByKeys_stable() {
+        final Item a = new Item("apple", 3), b = new Item("Banana", 1), c = new Item("cherry", 3);
+        final LibraryOrder<Item> order = order(List.of(c, a, b));
+        assertNull(order.get(BY_SIZE, false));
+        sort(order, BY_SIZE);
+        sort(order, BY_NAME);
+        assertEquals(List.of(b, c, a), order.get(BY_SIZE, false));
+        // collation puts "Banana" between the lower case names
+        assertEquals(List.of(a, b, c), order.get(BY_NAME, false));
+        assertEquals(List.of(c, b, a), order.get(BY_NAME, true));
+    }
+
+    @Test
+    public void reverseIsAView() {
+        final Item a = new Item("a", 1), b = new Item("b", 2);
+        final LibraryOrder<Item> order = order(List.of(b, a));
+        sort(order, BY_SIZE);
+        final List<Item> reversed = order.get(BY_SIZE, true);
+        assertSame(reversed, order.get(BY_SIZE, true));
+        final Item c = new Item("c", 3);
+        order.add(c);
+        assertEquals(List.of(c, b, a), reversed);
+    }
+
+    @Test
+    public void keptSortedAsItemsComeAndGo() {
+        final Random random = new Random(1);
+        final List<Item> items = new ArrayList<>();
+        for (int i = 0; i < 200; i++)
+            items.add(new Item("n" + random.nextInt(1000), random.nextInt(50)));
+        final LibraryOrder<Item> order = order(items);
+        sort(order, BY_SIZE);
+        sort(order, BY_NAME);
+        for (int i = 0; i < 100; i++) {
+            order.remove(items.remove(random.nextInt(items.size())));
+            final Item item = new Item("n" + random.nextInt(1000), random.nextInt(50));
+            items.add(item);
+            order.add(item);
+        }
+        final List<Item> bySize = order.get(BY_SIZE, false);
+        final List<Item> byName = order.get(BY_NAME, false);
+        assertEquals(items.size(), bySize.size());
+        assertEquals(items.size(), byName.size());
+        for (int i = 1; i < items.size(); i++) {
+            assertTrue(bySize.get(i - 1).size <= bySize.get(i).size);
+            assertTrue(byName.get(i - 1).nameKey.compareTo(byName.get(i).nameKey) <= 0);
+        }
+    }
+
+    @Test
+    public void staleSort_isDropped_changedKeys_invalidate() {
+        final Item a = new Item("a", 1);
+        final LibraryOrder<Item> order = order(List.of(a));
+        final int version = order.getVersion();
+        final List<Item> sorted = order.sort(BY_SIZE, new ArrayList<>(order.getItems()));
+        order.add(new Item("b", 0));
+        assertFalse(order.put(BY_SIZE, sorted, version));
+        assertNull(order.get(BY_SIZE, false));
+        sort(order, BY_SIZE);
+        order.invalidate(BY_SIZE);
+        assertNull(order.get(BY_SIZE, true));
+    }
+}
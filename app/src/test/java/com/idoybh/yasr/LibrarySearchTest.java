@@ -0,0 +1,67 @@
+package com.idoybh.yasr;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Results and their order from {@link LibrarySearch} as a query is typed and edited
+ */
+public class LibrarySearchTest {
+    @Test
+    public void foldsCaseAndAccents() {
+        final LibrarySearch<String> search = new LibrarySearch<>();
+        final List<String> order = List.of("Caf\u00e9 Meeting", "CAFE", "tea");
+        for (String name : order) search.add(name, name);
+        assertEquals(List.of("Caf\u00e9 Meeting", "CAFE"),
+                search.search(LibrarySearch.fold("Cafe"), order));
+        assertEquals(List.of("Caf\u00e9 Meeting", "CAFE"),
+                search.search(LibrarySearch.fold("CAF\u00c9"), order));
+        assertEquals(order, search.search(null, order));
+    }
+
+    @Test
+    public void typingNarrows_deletingRestores() {
+        final LibrarySearch<String> search = new LibrarySearch<>();
+        final List<String> order = List.of("lecture 2", "lecture 1", "lab 3", "salad");
+        for (String name : order) search.add(name, name);
+        assertEquals(List.of("lecture 2", "lecture 1", "lab 3", "salad"), search.search("l", order));
+        assertEquals(List.of("lab 3", "salad"), search.search("la", order));
+        assertEquals(List.of("lab 3"), search.search("lab", order));
+        final List<String> la = search.search("la", order);
+        assertEquals(List.of("lab 3", "salad"), la);
+        assertSame(la, search.search("la", order));
+        assertEquals(List.of("lecture 1"), search.search("e 1", order));
+    }
+
+    @Test
+    public void followsTheGivenOrder() {
+        final LibrarySearch<String> search = new LibrarySearch<>();
+        final List<String> order = new ArrayList<>(List.of("b rec", "a rec", "c memo"));
+        for (String name : order) search.add(name, name);
+        assertEquals(List.of("b rec", "a rec"), search.search("rec", order));
+        final List<String> reversed = new ArrayList<>(order);
+        java.util.Collections.reverse(reversed);
+        assertEquals(List.of("a rec", "b rec"), search.search("rec", reversed));
+        assertEquals(List.of("a rec", "b rec"), search.search("rec", reversed));
+    }
+
+    @Test
+    public void addAndRemove() {
+        final LibrarySearch<String> search = new LibrarySearch<>();
+        final List<String> order = new ArrayList<>(List.of("interview", "review"));
+        for (String name : order) search.add(name, name);
+        assertEquals(order, search.search("view", order));
+        search.remove("interview");
+        order.remove("interview");
+        search.add("preview", "preview");
+        order.add("preview");
+        assertEquals(List.of("review", "preview"), search.search("view", order));
+        assertTrue(search.matches("preview", "pre"));
+        assertFalse(search.matches("interview", "view"));
+        assertEquals(List.of(), search.search("xyz", order));
+    }
+}
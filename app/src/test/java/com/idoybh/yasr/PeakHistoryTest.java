@@ -0,0 +1,62 @@
+package com.idoybh.yasr;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks {@link PeakHistory} columns as fed by {@link LevelMeter}
+ */
+public class PeakHistoryTest {
+    @Test
+    public void push_wrapsKeepingNewest() {
+        final PeakHistory history = new PeakHistory(1);
+        final int capacity = history.getCapacity();
+        for (int i = 0; i < capacity * 2 + 3; i++) history.push(-i, i);
+        assertEquals(capacity * 2L + 3, history.getCount());
+        for (long column = history.getCount() - capacity; column < history.getCount(); column++) {
+            assertEquals(-column, history.getMin(column));
+            assertEquals(column, history.getMax(column));
+        }
+    }
+
+    @Test
+    public void push_clampsTo16Bit() {
+        final PeakHistory history = new PeakHistory(1);
+        history.push(-40000, 40000);
+        assertEquals(Short.MIN_VALUE, history.getMin(0));
+        assertEquals(Short.MAX_VALUE, history.getMax(0));
+    }
+
+    @Test
+    public void meter_columnsSpanReads() {
+        final int rate = 8000;
+        final PeakHistory history = new PeakHistory(2);
+        final LevelMeter meter = new LevelMeter(16);
+        final int columnSamples = PeakHistory.getColumnSamples(rate, 2);
+        meter.setHistory(history, columnSamples);
+        // a second of stereo in reads that don't line up with columns
+        final int reads = 7;
+        final int samples = rate * 2;
+        int written = 0;
+        for (int r = 0; r < reads; r++) {
+            final int end = samples * (r + 1) / reads;
+            final ByteBuffer pcm = ByteBuffer.allocate((end - written) * 2)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            for (; written < end; written++) {
+                final int column = written / columnSamples;
+                // every column swings between its own bounds
+                pcm.putShort((short) (written % 2 == 0 ? -column * 10 : column * 100));
+            }
+            meter.measure(pcm.flip());
+        }
+        assertEquals(PeakHistory.COLUMNS_PER_SECOND, history.getCount());
+        for (int column = 0; column < history.getCount(); column++) {
+            assertEquals(-column * 10, history.getMin(column));
+            assertEquals(column * 100, history.getMax(column));
+        }
+    }
+}
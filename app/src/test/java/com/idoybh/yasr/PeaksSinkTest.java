@@ -0,0 +1,139 @@
+package com.idoybh.yasr;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the overview {@link PeaksSink} measures and the {@link PeaksFile} it writes
+ */
+public class PeaksSinkTest {
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void roundTrip_keepsStatsAndPassesEverything() throws Exception {
+        final File recording = new File(mFolder.getRoot(), "rec.wav");
+        final CountingSink inner = new CountingSink();
+        final PeaksSink sink = new PeaksSink(inner, PeaksFile.getFile(recording), 16, 8000, 2);
+        final ByteBuffer pcm = pcm(1000, -1000, Short.MAX_VALUE, Short.MIN_VALUE);
+        sink.write(new ByteBuffer[] { pcm }, 0, 1);
+        assertEquals(8, inner.mBytes);
+        assertFalse(pcm.hasRemaining());
+        sink.close();
+        assertTrue(inner.mClosed);
+
+        final PeaksFile peaks = PeaksFile.read(PeaksFile.getFile(recording));
+        assertEquals(8000, peaks.sampleRate);
+        assertEquals(2, peaks.channels);
+        assertEquals(2, peaks.frames);
+        assertEquals(32768, peaks.peak);
+        assertEquals(2, peaks.clips);
+        assertEquals(1, peaks.levels.length);
+        assertEquals(Byte.MIN_VALUE, peaks.levels[0][0]);
+        assertEquals(Byte.MAX_VALUE, peaks.levels[0][1]);
+    }
+
+    @Test
+    public void buckets_followTheSignal() throws Exception {
+        final PeaksSink sink = new PeaksSink(new CountingSink(), null, 16, 8000, 1);
+        final short[] samples = new short[64];
+        for (int i = 32; i < 48; i++) samples[i] = 0x4000; // the third 16 frame bucket
+        sink.write(new ByteBuffer[] { pcm(samples) }, 0, 1);
+        final PeaksFile peaks = sink.finish();
+        assertEquals(16, peaks.bucketFrames);
+        final byte[] level = peaks.levels[0];
+        assertEquals(8, level.length);
+        assertEquals(0, level[3]);
+        assertEquals(0x40, level[5]);
+        assertEquals(0, level[7]);
+        assertEquals(0x4000, peaks.rms * 2, 1);
+    }
+
+    @Test
+    public void hourLong_staysSmall() throws Exception {
+        final File recording = new File(mFolder.getRoot(), "long.wav");
+        final PeaksSink sink = new PeaksSink(new CountingSink(), PeaksFile.getFile(recording),
+                16, 8000, 1);
+        final short[] samples = new short[8000];
+        for (int i = 0; i < samples.length; i++) samples[i] = (short) (i % 2 == 0 ? 100 : -100);
+        final ByteBuffer second = pcm(samples);
+        final ByteBuffer[] buffers = { second };
+        for (int s = 0; s < 3600; s++) {
+            second.rewind();
+            sink.write(buffers, 0, 1);
+        }
+        sink.close();
+        final File file = PeaksFile.getFile(recording);
+        assertTrue(file.length() < 16 * 1024);
+        final PeaksFile peaks = PeaksFile.read(file);
+        assertEquals(3600L * 8000, peaks.frames);
+        assertEquals(3600_000, peaks.getDurationMs());
+        assertTrue(peaks.levels[0].length / 2 <= PeaksSink.MAX_BUCKETS);
+        assertEquals(peaks.frames, (peaks.levels[0].length / 2 - 1) * peaks.bucketFrames,
+                peaks.bucketFrames);
+        // levels halve down to a handful of buckets
+        final byte[] coarse = peaks.levels[peaks.levels.length - 1];
+        assertTrue(coarse.length / 2 <= 16);
+        assertSame(coarse, peaks.getLevel(1));
+        assertSame(peaks.levels[0], peaks.getLevel(100_000));
+        assertEquals(100, peaks.peak);
+    }
+
+    @Test
+    public void renameAndDelete_followTheRecording() throws Exception {
+        final File from = new File(mFolder.getRoot(), "a.wav");
+        final File to = new File(mFolder.getRoot(), "b.wav");
+        final PeaksSink sink = new PeaksSink(new CountingSink(), PeaksFile.getFile(from),
+                16, 8000, 1);
+        sink.write(new ByteBuffer[] { pcm(1, 2, 3) }, 0, 1);
+        sink.close();
+        PeaksFile.rename(from, to);
+        assertFalse(PeaksFile.getFile(from).exists());
+        assertTrue(PeaksFile.getFile(to).exists());
+        PeaksFile.delete(to);
+        assertFalse(PeaksFile.getFile(to).exists());
+    }
+
+    private static ByteBuffer pcm(int... samples) {
+        final ByteBuffer pcm = ByteBuffer.allocate(samples.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        for (int sample : samples) pcm.putShort((short) sample);
+        pcm.flip();
+        return pcm;
+    }
+
+    private static ByteBuffer pcm(short[] samples) {
+        final ByteBuffer pcm = ByteBuffer.allocate(samples.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        pcm.asShortBuffer().put(samples);
+        return pcm;
+    }
+
+    private static class CountingSink implements PcmSink {
+        long mBytes = 0;
+        boolean mClosed = false;
+
+        @Override
+        public void write(ByteBuffer[] buffers, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                mBytes += buffers[i].remaining();
+                buffers[i].position(buffers[i].limit());
+            }
+        }
+
+        @Override
+        public long getSize() {
+            return mBytes;
+        }
+
+        @Override
+        public void close() {
+            mClosed = true;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.idoybh.yasr;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks {@link PreRollBuffer} keeps the newest audio in order without allocating while monitoring
+ */
+public class PreRollBufferTest {
+    private static final int RATE = 48000;
+    private static final int CHANNELS = 2;
+    private static final int CHUNK_FRAMES = 960; // 20ms
+
+    @Test
+    public void partial_keepsAllInOrder() {
+        final PreRollBuffer preRoll = new PreRollBuffer(1, RATE, CHANNELS);
+        final ByteBuffer chunk = chunk();
+        for (int i = 0; i < 10; i++) write(preRoll, chunk, i);
+        assertEquals(10L * CHUNK_FRAMES, preRoll.getFrames());
+        assertSequence(preRoll.snapshot(16), 0, 10 * CHUNK_FRAMES * CHANNELS);
+    }
+
+    @Test
+    public void wrapped_keepsNewest() {
+        final PreRollBuffer preRoll = new PreRollBuffer(1, RATE, CHANNELS);
+        final ByteBuffer chunk = chunk();
+        final int chunks = 123; // a couple of wraps, not on a chunk boundary
+        for (int i = 0; i < chunks; i++) write(preRoll, chunk, i);
+        assertEquals(RATE, preRoll.getFrames());
+        final int samples = RATE * CHANNELS;
+        assertSequence(preRoll.snapshot(16), chunks * CHUNK_FRAMES * CHANNELS - samples, samples);
+    }
+
+    @Test
+    public void oversizedChunk_keepsItsEnd() {
+        final PreRollBuffer preRoll = new PreRollBuffer(1, 1000, 1);
+        final ByteBuffer pcm = ByteBuffer.allocateDirect(3000 * 2).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < 3000; i++) pcm.putShort((short) i);
+        pcm.flip();
+        preRoll.write(pcm);
+        assertFalse(pcm.hasRemaining());
+        assertSequence(preRoll.snapshot(16), 2000, 1000);
+    }
+
+    @Test
+    public void snapshot_convertsBitDepth() {
+        final PreRollBuffer preRoll = new PreRollBuffer(1, 1000, 1);
+        final ByteBuffer pcm = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        pcm.putShort((short) 0x1234).putShort((short) -2).flip();
+        preRoll.write(pcm);
+        final ByteBuffer out = preRoll.snapshot(24);
+        assertEquals(6, out.remaining());
+        assertEquals(0, out.get(0));
+        assertEquals(0x1234, out.get(1) & 0xFF | out.get(2) << 8);
+        assertEquals(-2, out.get(4) & 0xFF | out.get(5) << 8);
+    }
+
+    @Test
+    public void disabled_keepsNothing() {
+        final PreRollBuffer preRoll = new PreRollBuffer(0, 1000, 1);
+        final ByteBuffer pcm = ByteBuffer.allocate(6).order(ByteOrder.LITTLE_ENDIAN);
+        pcm.putShort((short) 100).putShort(Short.MIN_VALUE).putShort((short) 3).flip();
+        preRoll.write(pcm);
+        assertFalse(pcm.hasRemaining());
+        assertEquals(0, preRoll.getFrames());
+    }
+
+    @Test
+    public void clear_dropsEverything() {
+        final PreRollBuffer preRoll = new PreRollBuffer(1, RATE, CHANNELS);
+        write(preRoll, chunk(), 0);
+        preRoll.clear();
+        assertEquals(0, preRoll.getFrames());
+        assertEquals(0, preRoll.snapshot(16).remaining());
+    }
+
+    /**
+     * A monitoring cycle is one read worth of PCM measured and kept, as {@link MicMonitor} does
+     */
+    @Test
+    public void monitorCycle_allocatesNothing() {
+        final com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long thread = Thread.currentThread().getId();
+        final PreRollBuffer preRoll = new PreRollBuffer(10, RATE, CHANNELS);
+        final LevelMeter meter = new LevelMeter(PreRollBuffer.BITS);
+        final ByteBuffer chunk = chunk();
+        write(preRoll, chunk, 1);
+        final int limit = chunk.limit();
+        for (int i = 0; i < 20000; i++) { // warm up
+            chunk.limit(limit).position(0);
+            meter.measure(chunk);
+            preRoll.write(chunk);
+        }
+        int peak = 0;
+        final int cycles = 100000;
+        final long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < cycles; i++) {
+            chunk.limit(limit).position(0);
+            meter.measure(chunk);
+            preRoll.write(chunk);
+            if (i % 4 == 0) { // the UI polls every few reads
+                peak |= meter.getPeak() | meter.getRms();
+                meter.take();
+            }
+        }
+        final long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        assertTrue(peak > 0);
+        // the allocation counter itself may account a few bytes, never per cycle
+        assertTrue("monitoring allocated " + allocated + " bytes", allocated < cycles);
+    }
+
+    private static ByteBuffer chunk() {
+        return ByteBuffer.allocateDirect(CHUNK_FRAMES * CHANNELS * 2)
+                .order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Fills the chunk with a running sample counter and writes it
+     */
+    private static void write(PreRollBuffer preRoll, ByteBuffer chunk, int index) {
+        chunk.clear();
+        final int samples = CHUNK_FRAMES * CHANNELS;
+        for (int i = 0; i < samples; i++) chunk.putShort((short) (index * samples + i));
+        chunk.flip();
+        preRoll.write(chunk);
+    }
+
+    private static void assertSequence(ByteBuffer pcm, int first, int count) {
+        assertEquals(count * 2, pcm.remaining());
+        for (int i = 0; i < count; i++)
+            assertEquals("sample " + i, (short) (first + i), pcm.getShort());
+    }
+}
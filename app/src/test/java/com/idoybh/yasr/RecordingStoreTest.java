@@ -0,0 +1,88 @@
+package com.idoybh.yasr;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Columns of {@link RecordingStore} and reuse of its rows
+ */
+public class RecordingStoreTest {
+    private static final String DIR = "/data/user/0/com.idoybh.yasr/files";
+
+    @Test
+    public void readsWhatWasAdded() {
+        final RecordingStore store = new RecordingStore();
+        final int a = store.add(null, DIR, "a", "m4a", "audio/mp4", 10, 1000, -1);
+        final int b = store.add(null, DIR, "b", "wav", null, 20, 2000, 5000);
+        assertEquals(2, store.getRows());
+        assertEquals("a", store.getName(a));
+        assertEquals("m4a", store.getExt(a));
+        assertNull(store.getMime(b));
+        assertEquals(20, store.getSize(b));
+        assertEquals(1000, store.getModified(a));
+        assertEquals(5000, store.getDuration(b));
+        store.setDuration(a, 3000);
+        store.setProgress(b, 1500);
+        assertEquals(3000, store.getDuration(a));
+        assertEquals(0, store.getProgress(a));
+        assertEquals(1500, store.getProgress(b));
+        // read later
+        final int c = store.add(null, DIR, "c", "m4a", null, -1, -1, -1);
+        store.setFileInfo(c, 30, 3000);
+        assertEquals(30, store.getSize(c));
+        assertEquals(3000, store.getModified(c));
+        assertEquals(-1, store.getDuration(c));
+    }
+
+    @Test
+    public void keepsRepeatedStringsOnce() {
+        final RecordingStore store = new RecordingStore();
+        final int a = store.add(null, new String(DIR), "a", new String("m4a"), new String("audio/mp4"), 0, 0, 0);
+        final int b = store.add(null, new String(DIR), "b", new String("m4a"), new String("audio/mp4"), 0, 0, 0);
+        assertSame(store.getDir(a), store.getDir(b));
+        assertSame(store.getExt(a), store.getExt(b));
+        assertSame(store.getMime(a), store.getMime(b));
+    }
+
+    @Test
+    public void grows() {
+        final RecordingStore store = new RecordingStore();
+        for (int i = 0; i < 1000; i++) assertEquals(i, store.add(null, DIR, "r" + i, "m4a", null, i, i, i));
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("r" + i, store.getName(i));
+            assertEquals(i, store.getSize(i));
+        }
+    }
+
+    @Test
+    public void freedRowsAreReused() {
+        final RecordingStore store = new RecordingStore();
+        final int a = store.add(null, DIR, "a", "m4a", null, 10, 1000, 2000);
+        store.setProgress(a, 500);
+        store.free(a);
+        assertEquals(0, store.getRows());
+        final int b = store.add(null, DIR, "b", "wav", null, 20, 3000, 4000);
+        assertEquals(a, b);
+        assertEquals(1, store.getRows());
+        assertEquals("b", store.getName(b));
+        assertEquals(0, store.getProgress(b));
+    }
+
+    @Test
+    public void rowsOfCollectedOwnersAreReused() throws Exception {
+        final RecordingStore store = new RecordingStore();
+        Object owner = new Object();
+        final int row = store.add(owner, DIR, "a", "m4a", null, 0, 0, 0);
+        store.add(new Object() /* kept by nothing */, DIR, "b", "m4a", null, 0, 0, 0);
+        //noinspection UnusedAssignment
+        owner = null;
+        for (int i = 0; i < 50 && store.getRows() > 0; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertEquals(0, store.getRows());
+        final int reused = store.add(null, DIR, "c", "m4a", null, 0, 0, 0);
+        assertTrue(reused == row || reused == row + 1); // both rows were freed
+    }
+}
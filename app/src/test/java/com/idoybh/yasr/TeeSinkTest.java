@@ -0,0 +1,69 @@
+package com.idoybh.yasr;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Copies {@link TeeSink} hands its branches, converted to their bit depth
+ */
+public class TeeSinkTest {
+    @Test
+    public void widens8To16_fullBuffers() throws Exception {
+        final CollectingSink main = new CollectingSink();
+        final CollectingSink branch = new CollectingSink();
+        final TeeSink tee = new TeeSink(main, 8);
+        final int slotSize = 4;
+        tee.addBranch(branch, 16, slotSize, 2);
+        // as large as a slot of the capture, twice that once widened
+        tee.write(new ByteBuffer[] { ByteBuffer.wrap(new byte[] {
+                (byte) 0x80, (byte) 0xFF, 0x00, (byte) 0xC0 }) }, 0, 1);
+        tee.close();
+        assertFalse(tee.hasFailed(0));
+        assertEquals(0, tee.getDropped(0));
+        assertEquals(4, main.mOut.size());
+        final ByteBuffer out = ByteBuffer.wrap(branch.mOut.toByteArray())
+                .order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(8, out.remaining());
+        assertEquals(0, out.getShort());
+        assertEquals(0x7F00, out.getShort());
+        assertEquals(-0x8000, out.getShort());
+        assertEquals(0x4000, out.getShort());
+    }
+
+    @Test
+    public void narrows16To8() throws Exception {
+        final CollectingSink branch = new CollectingSink();
+        final TeeSink tee = new TeeSink(new CollectingSink(), 16);
+        tee.addBranch(branch, 8, 4, 2);
+        final ByteBuffer pcm = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        pcm.putShort((short) 0).putShort(Short.MIN_VALUE).flip();
+        tee.write(new ByteBuffer[] { pcm }, 0, 1);
+        tee.close();
+        assertArrayEquals(new byte[] { (byte) 0x80, 0x00 }, branch.mOut.toByteArray());
+    }
+
+    private static class CollectingSink implements PcmSink {
+        final ByteArrayOutputStream mOut = new ByteArrayOutputStream();
+
+        @Override
+        public void write(ByteBuffer[] buffers, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                while (buffers[i].hasRemaining()) mOut.write(buffers[i].get());
+            }
+        }
+
+        @Override
+        public long getSize() {
+            return mOut.size();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.idoybh.yasr;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.*;
+
+/**
+ * Reads back what {@link WavWriter} writes, and what other writers might
+ */
+public class WavFormatTest {
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void riff_ownHeader() throws Exception {
+        final File file = mFolder.newFile("a.wav");
+        try (WavWriter writer = new WavWriter(file, 48000, 2, 16)) {
+            writer.write(new ByteBuffer[] { ByteBuffer.allocate(48000 * 4) }, 0, 1);
+        }
+        final WavFormat format = read(file);
+        assertEquals(48000, format.sampleRate);
+        assertEquals(2, format.channels);
+        assertEquals(16, format.bits);
+        assertEquals(WavWriter.HEADER_SIZE, format.dataOffset);
+        assertEquals(48000 * 4, format.dataSize);
+        assertEquals(1000, format.getDurationMs());
+    }
+
+    @Test
+    public void rf64_takesDs64Size() throws Exception {
+        final long dataSize = 192000L * 8 * 7200; // 2 hours, over 4GB
+        final File file = mFolder.newFile("b.wav");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(WavWriter.HEADER_SIZE + dataSize);
+            WavWriter.writeHeader(raf.getChannel(), dataSize, 192000, 2, 32);
+        }
+        final WavFormat format = read(file);
+        assertEquals(dataSize, format.dataSize);
+        assertEquals(7200_000, format.getDurationMs());
+    }
+
+    @Test
+    public void unpatchedHeader_usesFileLength() throws Exception {
+        final File file = mFolder.newFile("c.wav");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(WavWriter.HEADER_SIZE + 8001); // a partial frame at the end
+            WavWriter.writeHeader(raf.getChannel(), 0, 8000, 1, 16);
+        }
+        assertEquals(8000, read(file).dataSize);
+    }
+
+    @Test
+    public void plainHeader_otherChunksSkipped() throws Exception {
+        // minimal 44 byte header with a LIST chunk of odd size before the data
+        final ByteBuffer header = ByteBuffer.allocate(58).order(ByteOrder.LITTLE_ENDIAN);
+        header.put("RIFF".getBytes()).putInt(0).put("WAVE".getBytes());
+        header.put("fmt ".getBytes()).putInt(16).putShort((short) 1).putShort((short) 1)
+                .putInt(44100).putInt(88200).putShort((short) 2).putShort((short) 16);
+        header.put("LIST".getBytes()).putInt(5).put(new byte[6]);
+        header.put("data".getBytes()).putInt(100);
+        header.flip();
+        final File file = mFolder.newFile("d.wav");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.getChannel().write(header);
+            raf.setLength(58 + 100);
+        }
+        final WavFormat format = read(file);
+        assertEquals(44100, format.sampleRate);
+        assertEquals(58, format.dataOffset);
+        assertEquals(100, format.dataSize);
+    }
+
+    @Test
+    public void notWav_throws() throws Exception {
+        final File file = mFolder.newFile("e.wav");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.write(new byte[64]);
+        }
+        try {
+            read(file);
+            fail();
+        } catch (IOException expected) {
+            // not a RIFF header
+        }
+    }
+
+    private static WavFormat read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return WavFormat.read(channel);
+        }
+    }
+}
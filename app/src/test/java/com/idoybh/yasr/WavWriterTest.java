@@ -0,0 +1,124 @@
+package com.idoybh.yasr;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * Header layout of {@link WavWriter}, large recordings are faked with sparse files
+ */
+public class WavWriterTest {
+    private static final long GB = 1L << 30;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void small_isRiffWithJunk() throws Exception {
+        final File file = mFolder.newFile("small.wav");
+        final byte[] pcm = new byte[4000];
+        for (int i = 0; i < pcm.length; i++) pcm[i] = (byte) i;
+        try (WavWriter writer = new WavWriter(file, 48000, 2, 16)) {
+            final ByteBuffer buffer = ByteBuffer.wrap(pcm);
+            writer.write(new ByteBuffer[] { buffer }, 0, 1);
+            assertEquals(WavWriter.HEADER_SIZE + pcm.length, writer.getSize());
+        }
+        final ByteBuffer header = readHeader(file);
+        assertEquals("RIFF", tag(header, 0));
+        assertEquals(WavWriter.HEADER_SIZE - 8 + pcm.length, header.getInt(4));
+        assertEquals("WAVE", tag(header, 8));
+        assertEquals("JUNK", tag(header, 12));
+        assertEquals(28, header.getInt(16));
+        assertFormat(header, 48000, 2, 16);
+        assertEquals("data", tag(header, 72));
+        assertEquals(pcm.length, header.getInt(76));
+        assertEquals(WavWriter.HEADER_SIZE + pcm.length, file.length());
+    }
+
+    @Test
+    public void over4GB_isRf64() throws Exception {
+        // 192 kHz / 32 bit stereo for 2 hours
+        final long dataSize = 192000L * 8 * 7200;
+        assertTrue(dataSize > 4 * GB);
+        final File file = sparseRecording(dataSize, 192000, 2, 32);
+        final ByteBuffer header = readHeader(file);
+        assertEquals("RF64", tag(header, 0));
+        assertEquals(-1, header.getInt(4));
+        assertEquals("WAVE", tag(header, 8));
+        assertEquals("ds64", tag(header, 12));
+        assertEquals(28, header.getInt(16));
+        assertEquals(WavWriter.HEADER_SIZE - 8 + dataSize, header.getLong(20));
+        assertEquals(dataSize, header.getLong(28));
+        assertEquals(dataSize / 8, header.getLong(36));
+        assertEquals(0, header.getInt(44));
+        assertFormat(header, 192000, 2, 32);
+        assertEquals("data", tag(header, 72));
+        assertEquals(-1, header.getInt(76));
+        assertEquals(WavWriter.HEADER_SIZE + dataSize, file.length());
+    }
+
+    @Test
+    public void riffLimit_boundary() throws Exception {
+        final long maxData = WavWriter.MAX_RIFF_SIZE - (WavWriter.HEADER_SIZE - 8);
+        ByteBuffer header = readHeader(sparseRecording(maxData, 44100, 1, 8));
+        assertEquals("RIFF", tag(header, 0));
+        assertEquals(WavWriter.MAX_RIFF_SIZE, header.getInt(4) & 0xFFFFFFFFL);
+        assertEquals(maxData, header.getInt(76) & 0xFFFFFFFFL);
+
+        header = readHeader(sparseRecording(maxData + 1, 44100, 1, 8));
+        assertEquals("RF64", tag(header, 0));
+        assertEquals(maxData + 1, header.getLong(28));
+    }
+
+    /**
+     * Writes a little real PCM at the end of a sparse data chunk
+     */
+    private File sparseRecording(long dataSize, int rate, int channels, int bits)
+            throws IOException {
+        final File file = mFolder.newFile();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            final FileChannel channel = raf.getChannel();
+            raf.setLength(WavWriter.HEADER_SIZE + dataSize);
+            channel.write(ByteBuffer.wrap(new byte[] { 1, 2, 3, 4 }),
+                    WavWriter.HEADER_SIZE + dataSize - 4);
+            WavWriter.writeHeader(channel, dataSize, rate, channels, bits);
+        }
+        return file;
+    }
+
+    private static void assertFormat(ByteBuffer header, int rate, int channels, int bits) {
+        assertEquals("fmt ", tag(header, 48));
+        assertEquals(16, header.getInt(52));
+        assertEquals(1, header.getShort(56));
+        assertEquals(channels, header.getShort(58));
+        assertEquals(rate, header.getInt(60));
+        assertEquals(rate * channels * bits / 8, header.getInt(64));
+        assertEquals(channels * bits / 8, header.getShort(68));
+        assertEquals(bits, header.getShort(70));
+    }
+
+    private static ByteBuffer readHeader(File file) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(WavWriter.HEADER_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.getChannel().read(header, 0);
+        }
+        return header;
+    }
+
+    private static String tag(ByteBuffer header, int offset) {
+        final byte[] tag = new byte[4];
+        for (int i = 0; i < 4; i++) tag[i] = header.get(offset + i);
+        return new String(tag, StandardCharsets.US_ASCII);
+    }
+}